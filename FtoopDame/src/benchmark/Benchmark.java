@@ -0,0 +1,321 @@
+package benchmark;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+
+import gui.Board;
+import gui.Game;
+import gui.Stone;
+import javafx.embed.swing.JFXPanel;
+import logic.Bot;
+import logic.Fen;
+import logic.GameState;
+import logic.Move;
+import logic.Repetitions;
+import logic.Simulation;
+import settings.Player;
+
+/**
+ * Measures time and allocated bytes of the engine hot paths on a middlegame
+ * and an endgame position, or on the positions given (see {@link Fen}).
+ *
+ * It drives the board and its players, so it is kept apart from the headless
+ * engine in the logic package.
+ *
+ * The results can be saved as reference and later runs compared against it:
+ * the run fails (exit code 1) if an operation allocates more bytes than the
+ * reference allows with the margin. Allocated bytes are the same on every
+ * machine, times only on the one the reference was saved on, so they are
+ * only compared with -times. The reference in benchmark/benchmark.txt was
+ * taken with the default options.
+ *
+ * Usage: Benchmark [-time ms] [-position fen]... [-save file] [-compare file]
+ * [-times] [-margin p]
+ */
+public class Benchmark {
+
+	/**
+	 * Time to measure every operation in milliseconds (warm up takes half of it)
+	 */
+	private static long time = 2000;
+	/**
+	 * Nanoseconds and bytes per operation measured, by position and operation
+	 */
+	private static final Map<String, double[]> results = new LinkedHashMap<>();
+	/**
+	 * Name of the position being measured
+	 */
+	private static String current;
+	/**
+	 * Bytes an operation may allocate more than the reference besides the margin
+	 * (allocations of the JIT and of lazy initialization)
+	 */
+	private static final double SLACK = 64;
+
+	/**
+	 * @param args command line arguments
+	 * @throws IOException if the reference can't be read or saved
+	 */
+	public static void main(String[] args) throws IOException {
+		List<String> positions = new ArrayList<>();
+		File save = null;
+		File compare = null;
+		boolean times = false;
+		double margin = 0.25;
+		for (int i = 0; i < args.length; i++) {
+			switch (args[i]) {
+			case "-time":
+				time = Long.parseLong(args[++i]);
+				break;
+			case "-position":
+				positions.add(args[++i]);
+				break;
+			case "-save":
+				save = new File(args[++i]);
+				break;
+			case "-compare":
+				compare = new File(args[++i]);
+				break;
+			case "-times":
+				times = true;
+				break;
+			case "-margin":
+				margin = Double.parseDouble(args[++i]);
+				break;
+			default:
+				throw new IllegalArgumentException("Unknown option " + args[i]);
+			}
+		}
+		// Read before measuring, so a missing reference fails fast
+		Map<String, double[]> reference = compare != null ? read(compare) : null;
+
+		// Moves update the stones on the JavaFX thread
+		new JFXPanel();
+
+		Game game = new Game();
+		game.setSetting("players", 2);
+		game.setSetting("color", 0);
+		game.setSetting("difficulty", 1);
+		// Small table, it gets cleared before every search
+		game.setSetting("hash", 1);
+
+		if (!positions.isEmpty()) {
+			for (String fen : positions) {
+				benchmark(fen, position(game, fen));
+			}
+		} else {
+			benchmark("middlegame", position(game, 20));
+			benchmark("endgame", position(game, 8));
+		}
+
+		if (save != null) {
+			write(save);
+		}
+		if (reference != null && !compare(reference, margin, times)) {
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * Compare the results with a reference
+	 * @param reference nanoseconds and bytes per operation of the reference
+	 * @param margin part an operation may be slower or allocate more
+	 * @param times if times are compared too, the reference has to be from this machine
+	 * @return if no operation got worse than the margin allows
+	 */
+	static boolean compare(Map<String, double[]> reference, double margin, boolean times) {
+		int regressions = 0;
+		int compared = 0;
+		for (Map.Entry<String, double[]> result : results.entrySet()) {
+			double[] base = reference.get(result.getKey());
+			if (base == null) {
+				continue;
+			}
+			compared++;
+			double[] now = result.getValue();
+			boolean slower = times && now[0] > base[0] * (1 + margin);
+			boolean larger = now[1] > base[1] * (1 + margin) + SLACK;
+			if (slower || larger) {
+				regressions++;
+				System.out.printf("REGRESSION %s: %.1f ns/op (reference %.1f), %.0f B/op (reference %.0f)%n",
+						result.getKey(), now[0], base[0], now[1], base[1]);
+			}
+		}
+		System.out.println(compared + " operations compared, " + regressions + " regressions");
+		return regressions == 0;
+	}
+
+	/**
+	 * Read a reference: lines with the operation, nanoseconds and bytes per
+	 * operation separated by tabs, lines starting with # are comments
+	 * @param file reference file
+	 * @return nanoseconds and bytes per operation by position and operation
+	 * @throws IOException if the file can't be read
+	 */
+	static Map<String, double[]> read(File file) throws IOException {
+		Map<String, double[]> reference = new LinkedHashMap<>();
+		try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				if (line.trim().isEmpty() || line.startsWith("#")) {
+					continue;
+				}
+				String[] parts = line.split("\t");
+				if (parts.length != 3) {
+					throw new IOException(file + ": line has to be operation, ns/op and B/op: " + line);
+				}
+				reference.put(parts[0], new double[] { Double.parseDouble(parts[1]), Double.parseDouble(parts[2]) });
+			}
+		}
+		return reference;
+	}
+
+	/**
+	 * Save the results as reference
+	 * @param file reference file
+	 * @throws IOException if the file can't be written
+	 */
+	private static void write(File file) throws IOException {
+		try (PrintWriter writer = new PrintWriter(new FileWriter(file))) {
+			writer.println("# Benchmark reference: operation, ns/op and B/op (Benchmark -save)");
+			for (Map.Entry<String, double[]> result : results.entrySet()) {
+				writer.printf(Locale.ROOT, "%s\t%.1f\t%.0f%n", result.getKey(), result.getValue()[0], result.getValue()[1]);
+			}
+		}
+	}
+
+	/**
+	 * @param game game with the settings
+	 * @param fen position
+	 * @return board with the position
+	 */
+	private static Board position(Game game, String fen) {
+		game.setSetting("pattern", Fen.parse(fen).getPattern());
+		game.setSetting("fen", fen);
+		Board board = new Board(game);
+		board.createFields();
+		board.createPlayers();
+		game.setSetting("fen", null);
+		return board;
+	}
+
+	/**
+	 * Play random moves from the start position until only some stones are left
+	 * @param game game with the settings
+	 * @param stones stones left on the board
+	 * @return board with the position
+	 */
+	private static Board position(Game game, int stones) {
+		for (long seed = 0;; seed++) {
+			Random random = new Random(seed);
+			Board board = new Board(game);
+			board.createFields();
+			board.createPlayers();
+
+			GameState state = board.getState();
+			while (board.isRunning()) {
+				int left = state.count(GameState.BLACK, false) + state.count(GameState.BLACK, true)
+						+ state.count(GameState.WHITE, false) + state.count(GameState.WHITE, true);
+				if (left <= stones && state.getMovedSquare() < 0 && board.getPlaying().getMoveList().size() > 1) {
+					return board;
+				}
+
+				List<Move> moves = board.getPlaying().getMoves();
+				if (moves.isEmpty()) {
+					break;
+				}
+				moves.get(random.nextInt(moves.size())).run();
+			}
+		}
+	}
+
+	/**
+	 * Measure all operations on a position
+	 * @param name name of the position
+	 * @param board board with the position
+	 */
+	private static void benchmark(String name, Board board) {
+		Player player = board.getPlaying();
+		List<Move> moves = player.getMoves();
+		GameState state = board.getState();
+
+		System.out.println(name + " (" + moves.size() + " moves)");
+		current = name;
+
+		measure("Move(player, stone, field)", () -> {
+			for (Move move : moves) {
+				new Move(player, move.getStone(), move.getField());
+			}
+		});
+		measure("Stone.getMoves()", () -> {
+			for (Stone stone : player.getStones()) {
+				stone.getMoves();
+			}
+		});
+		measure("Player.getMoves()", () -> player.getMoves());
+		measure("Player.getMoveList()", () -> player.getMoveList());
+		measure("Simulation.simulate()", () -> {
+			for (Move move : moves) {
+				new Simulation(player).simulate(move);
+			}
+		});
+		// Board.getSituation() got replaced by counting the state hash
+		Repetitions repetitions = new Repetitions();
+		measure("Repetitions.add()", () -> repetitions.add(state.getHash()));
+
+		Bot bot = new Bot(player);
+		for (int difficulty = 1; difficulty <= bot.getMaxDifficulty(); difficulty++) {
+			bot.setDifficulty(difficulty);
+			measure("Bot.getMoves() difficulty " + difficulty, () -> {
+				bot.clearTable();
+				bot.getMoves();
+			});
+		}
+	}
+
+	/**
+	 * Run an operation repeatedly and print its time and allocated bytes
+	 * @param name name of the operation
+	 * @param operation operation to measure
+	 */
+	private static void measure(String name, Runnable operation) {
+		long end = System.nanoTime() + time * 500000;
+		do {
+			operation.run();
+		} while (System.nanoTime() < end);
+
+		long operations = 0;
+		long bytes = allocated();
+		long start = System.nanoTime();
+		end = start + time * 1000000;
+		do {
+			operation.run();
+			operations++;
+		} while (System.nanoTime() < end);
+		long nanos = System.nanoTime() - start;
+		bytes = allocated() - bytes;
+
+		System.out.printf("  %-32s %14.1f ns/op %12d B/op %10.1f MB/s%n", name, (double) nanos / operations,
+				bytes / operations, bytes * 1000.0 / nanos);
+		results.put(current + "/" + name, new double[] { (double) nanos / operations, bytes / operations });
+	}
+
+	/**
+	 * @return bytes allocated by the current thread so far
+	 */
+	private static long allocated() {
+		return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+				.getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+}
@@ -1,13 +1,16 @@
 package controllers;
 
+import java.io.File;
 import java.net.URL;
 import java.util.ResourceBundle;
 
 import javafx.event.ActionEvent;
 import javafx.fxml.FXML;
 import javafx.fxml.Initializable;
+import javafx.scene.control.CheckBox;
 import javafx.scene.control.ChoiceBox;
 import javafx.scene.control.Slider;
+import logic.Variant;
 
 /**
  * fxml controller for the intro screen
@@ -24,11 +27,26 @@ public class IntroController extends BaseController {
 	 */
 	@FXML
 	ChoiceBox<String> arrangement;
+	/**
+	 * Used to define the board size
+	 */
+	@FXML
+	ChoiceBox<String> size;
+	/**
+	 * Used to define the rules
+	 */
+	@FXML
+	ChoiceBox<String> rules;
 	/**
 	 * Use to define the difficulty
 	 */
 	@FXML
 	Slider difficulty;
+	/**
+	 * Used to add finished games to the archive in the home directory
+	 */
+	@FXML
+	CheckBox archive;
 
 	/**
 	 * Set all needed settings and start the game
@@ -38,7 +56,11 @@ public class IntroController extends BaseController {
 	private void initGame(ActionEvent event) {
 		game.setSetting("players", mode.getSelectionModel().getSelectedIndex());
 		game.setSetting("color", arrangement.getSelectionModel().getSelectedIndex());
+		game.setSetting("pattern", 8 + 2 * size.getSelectionModel().getSelectedIndex());
+		game.setSetting("variant", Variant.values()[rules.getSelectionModel().getSelectedIndex()]);
 		game.setSetting("difficulty", ((Double) (difficulty.getValue())).intValue());
+		game.setSetting("archive",
+				archive.isSelected() ? new File(System.getProperty("user.home"), "dame.pdn").getPath() : null);
 		game.startGame();
 	}
 }
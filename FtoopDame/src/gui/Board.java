@@ -5,13 +5,16 @@
 package gui;
 
 import java.awt.Desktop;
+import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.net.URI;
 import java.net.URISyntaxException;
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
-
+import java.nio.charset.StandardCharsets;
+import java.util.Timer;
+import java.util.TimerTask;
 import javafx.application.Platform;
 import javafx.scene.Group;
 import javafx.scene.Scene;
@@ -24,7 +27,16 @@ import javafx.scene.layout.Priority;
 import javafx.scene.layout.Region;
 import javafx.scene.layout.StackPane;
 import javafx.scene.layout.VBox;
+import javafx.stage.FileChooser;
+import logic.Clock;
+import logic.Fen;
+import logic.GameRecord;
+import logic.GameState;
+import logic.Match;
 import logic.Move;
+import logic.Repetitions;
+import logic.Step;
+import logic.Variant;
 import settings.Player;
 import settings.Position;
 import settings.Theme;
@@ -39,6 +51,11 @@ public class Board {
 	 * Define the pattern for the fields 8x8 = 64 fields
 	 */
 	public int pattern = 8;
+
+	/**
+	 * Rules of the game
+	 */
+	private Variant variant = Variant.STANDARD;
 	
 	/**
 	 * The size of the board
@@ -63,10 +80,10 @@ public class Board {
 	protected Field[][] fields;
 
 	/**
-	 * Create lock object for threads in this board
+	 * Headless game state, the board only displays it
 	 */
-	public Object LOCK = new Object();
-	
+	private GameState state;
+
 	/**
 	 * Used in threads to check if game is still running
 	 */
@@ -82,11 +99,6 @@ public class Board {
 	 */
 	private Game game;
 	private Scene scene;
-	
-	/**
-	 * Used to check if the board is run in a simulation or not
-	 */
-	protected boolean simulation = false;
 
 	/**
 	 * Those are used to check for a tie
@@ -95,9 +107,26 @@ public class Board {
 	private int movesSinceTransformation = 0;
 
 	/**
-	 * Create ArrayList for every situation on the board
+	 * Occurrences of every situation since the last kill or transformation
 	 */
-	private List<String> situations = new ArrayList<>();
+	private Repetitions situations = new Repetitions();
+
+	/**
+	 * Clock of both players, null if the game has no time control
+	 */
+	private Clock clock;
+	/**
+	 * Record of the game, saved as PDN
+	 */
+	private GameRecord record;
+	/**
+	 * Timer checking if the time of the playing player is over
+	 */
+	private Timer timer;
+	/**
+	 * Task ending the game when the time of the playing player is over, null if none
+	 */
+	private TimerTask timeout;
 
 	/**
 	 * Board constructor
@@ -105,6 +134,19 @@ public class Board {
 	 */
 	public Board(Game game) {
 		this.game = game;
+
+		// Board size from settings (default 8x8)
+		Object pattern = game.getSetting("pattern");
+		if (pattern != null) {
+			this.pattern = (int) pattern;
+		}
+
+		// The other variants are played on their own board size
+		Object variant = game.getSetting("variant");
+		if (variant != null && variant != Variant.STANDARD) {
+			this.variant = (Variant) variant;
+			this.pattern = this.variant.getPattern();
+		}
 	}
 
 	/**
@@ -167,7 +209,19 @@ public class Board {
 			game.getWindow().close();
 		});
 
-		menuGame.getItems().addAll(newGame, restartGame, endGame);
+		MenuItem saveGame = new MenuItem("Speichern");
+		saveGame.setOnAction(e -> {
+			FileChooser chooser = new FileChooser();
+			chooser.setTitle("Spiel speichern");
+			chooser.setInitialFileName("dame.pdn");
+			chooser.getExtensionFilters().add(new FileChooser.ExtensionFilter("PDN", "*.pdn"));
+			File file = chooser.showSaveDialog(game.getWindow());
+			if (file != null) {
+				save(file, false);
+			}
+		});
+
+		menuGame.getItems().addAll(newGame, restartGame, saveGame, endGame);
 
 		// --- Menu Help
 		Menu menuHelp = new Menu("Hilfe");
@@ -264,30 +318,94 @@ public class Board {
 		players[0].setOpponent(players[1]);
 		players[1].setOpponent(players[0]);
 
+		state = new GameState(pattern, variant);
+
+		// Position from the settings instead of the start fields
+		Object fen = game.getSetting("fen");
+		GameState position = fen != null ? Fen.parse((String) fen, pattern, variant) : null;
+
 		for (Player player : players) {
 
+			state.setDirection(player.getIndex(), player.getPosition().getDir());
+
+			if (position != null) {
+				int color = player.getColor() == Theme.BLACK ? GameState.BLACK : GameState.WHITE;
+				if (position.getPlaying() == color) {
+					playing = player;
+					state.setPlaying(player.getIndex());
+				}
+
+				// Black is on the top rows in the position, turn it if black plays from the bottom
+				boolean rotated = player.getPosition().getDir() != position.getDirection(color);
+				int last = state.getSquares() - 1;
+				for (int square = 0; square <= last; square++) {
+					byte piece = position.getPiece(square);
+					if (piece != GameState.EMPTY && GameState.colorOf(piece) == color) {
+						int target = rotated ? last - square : square;
+						placeStone(player, state.getX(target), state.getY(target), GameState.isQueen(piece));
+					}
+				}
+				continue;
+			}
+
 			// Loop through start fields
 			boolean[][] positionFields = player.getStartFields();
 
 			// Black player starts
-			if (player.getColor() == Theme.BLACK)
+			if (player.getColor() == Theme.BLACK) {
 				playing = player;
+				state.setPlaying(player.getIndex());
+			}
 
 			for (int y = 0; y < positionFields.length; y++) {
 				for (int x = 0; x < positionFields.length; x++) {
 					// check if field is equals to true
 					if (positionFields[y][x]) {
-						// place stone
-						Stone stone = new Stone(player, x, y);
-						player.addStone(stone);
-						fields[y][x].setStone(stone);
-						stone.setField(fields[y][x]);
-						stoneGroup.getChildren().add(stone);
+						placeStone(player, x, y, false);
 					}
 				}
 			}
 		}
 
+		// Record the game with the black player on top like PDN
+		Player black = players[0].getColor() == Theme.BLACK ? players[0] : players[1];
+		record = GameRecord.of(state, black.getIndex());
+		record.setTag("Black", black.isBot() ? "Computer" : "Spieler");
+		record.setTag("White", black.getOpponent().isBot() ? "Computer" : "Spieler");
+
+		// Time control from settings: base time and increment or a fixed time per move (milliseconds)
+		Object time = game.getSetting("time");
+		Object increment = game.getSetting("increment");
+		Object moveTime = game.getSetting("movetime");
+		if (moveTime != null) {
+			clock = Clock.perMove(((Number) moveTime).longValue());
+		} else if (time != null) {
+			clock = new Clock(((Number) time).longValue(), increment != null ? ((Number) increment).longValue() : 0);
+		}
+		if (clock != null) {
+			clock.start(playing.getIndex());
+			watchClock(playing);
+		}
+
+	}
+
+	/**
+	 * Place a stone of a player on the board and the game state
+	 * @param player owner of the stone
+	 * @param x position on the board
+	 * @param y position on the board
+	 * @param queen if the stone is a queen
+	 */
+	private void placeStone(Player player, int x, int y, boolean queen) {
+		Stone stone = new Stone(player, x, y);
+		player.addStone(stone);
+		fields[y][x].setStone(stone);
+		stone.setField(fields[y][x]);
+		stoneGroup.getChildren().add(stone);
+		state.setPiece(state.square(x, y), GameState.piece(player.getIndex(), queen));
+		if (queen) {
+			stone.transform();
+		}
 	}
 
 	/**
@@ -306,6 +424,13 @@ public class Board {
 		return fields;
 	}
 
+	/**
+	 * @return headless game state of the board
+	 */
+	public GameState getState() {
+		return state;
+	}
+
 	/**
 	 * @return all playing player
 	 */
@@ -313,21 +438,93 @@ public class Board {
 		return players;
 	}
 
+	/**
+	 * @return clock of both players, null if the game has no time control
+	 */
+	public Clock getClock() {
+		return clock;
+	}
+
+	/**
+	 * End the game if the player is still playing when his time is over
+	 * @param player playing player
+	 */
+	private void watchClock(Player player) {
+		if (timer == null) {
+			timer = new Timer("Clock", true);
+		}
+
+		// Only the turn running now can run out of time
+		if (timeout != null) {
+			timeout.cancel();
+		}
+		timer.purge();
+
+		long remaining = clock.getRemaining(player.getIndex());
+		timeout = new TimerTask() {
+			public void run() {
+				Platform.runLater(() -> {
+					if (running && playing == player && clock.isOver(player.getIndex())) {
+						done(player.getOpponent());
+					}
+				});
+			}
+		};
+		timer.schedule(timeout, Math.max(0, remaining) + 1);
+	}
+
 	/**
 	 * Stop game and run endscreen
 	 * @param winner set winner
 	 */
 	public void done(Player winner) {
+		boolean finished = !running;
 		stop();
-		// Call finish if this isn't a simulation
-		if (!simulation) {
-			Platform.runLater(() -> {
-				try {
-					new Finish(game, winner);
-				} catch (IOException e) {
-					e.printStackTrace();
-				}
-			});
+
+		// Archive the finished game once
+		Object archive = game.getSetting("archive");
+		if (!finished) {
+			record.setWinner(winner == null ? Match.DRAW
+					: winner.getColor() == Theme.BLACK ? GameState.BLACK : GameState.WHITE);
+			if (archive != null) {
+				save(new File((String) archive), true);
+			}
+		}
+
+		Platform.runLater(() -> {
+			try {
+				new Finish(game, winner);
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		});
+	}
+
+	/**
+	 * Add a step played to the record of the game
+	 * @param step step on the game state, before it is run
+	 */
+	public void record(Step step) {
+		record.add(step.pack());
+	}
+
+	/**
+	 * @return record of the game so far
+	 */
+	public GameRecord getRecord() {
+		return record;
+	}
+
+	/**
+	 * Write the game so far as PDN
+	 * @param file destination
+	 * @param append add the game at the end of the file
+	 */
+	public void save(File file, boolean append) {
+		try (Writer writer = new OutputStreamWriter(new FileOutputStream(file, append), StandardCharsets.UTF_8)) {
+			record.write(writer);
+		} catch (IOException e) {
+			e.printStackTrace();
 		}
 	}
 
@@ -336,91 +533,55 @@ public class Board {
 	 */
 	public void setPlaying(Player player) {
 		// if provied player hasnt any moves left, end game
-		if (player.getMoves().size() == 0) {
+		if (player.getMoveList().size() == 0) {
 			playing = player;
 			done(playing.getOpponent());
 		} else {
 
 			// Check if player is changing
 			if (playing != player) {
-				
-				// occurrences of current game situation
-				int occurrences = 0;
-
-				// only check moves and situation if it isn't a simulation
-				if (!simulation) {
-
-					// Add current situation to situations
-					String situation = getSituation();
-					situations.add(situation);
 
-					// Get amount of occurences
-					occurrences = Collections.frequency(situations, situation);
-
-					if (playing.getLastMove() == null || playing.getLastMove().getType() != Move.Type.KILL) {
-						movesSinceKill++;
-					} else {
-						movesSinceKill = 0;
-					}
-
-					if (playing.getLastMove() == null || !playing.getLastMove().hasTransformed()) {
-						movesSinceTransformation++;
-					} else {
-						movesSinceTransformation = 0;
+				// The player loses if his time was over before the move
+				if (clock != null) {
+					if (clock.isOver(playing.getIndex())) {
+						done(player);
+						return;
 					}
+					clock.press();
+					watchClock(player);
 				}
 
-				int threshhold = 50;
+				if (playing.getLastMove() == null || playing.getLastMove().getType() != Move.Type.KILL) {
+					movesSinceKill++;
+				} else {
+					movesSinceKill = 0;
+					situations.reset();
+				}
 
-				// if any of the following conditions is true finish the game without a winner
-				if (movesSinceKill > threshhold || movesSinceTransformation > threshhold || occurrences >= 4) {
-					done(null);
+				if (playing.getLastMove() == null || !playing.getLastMove().hasTransformed()) {
+					movesSinceTransformation++;
 				} else {
-					synchronized (LOCK) {
-						// if player is a computer check if he's already started
-						// and notify or start him
-						if (player.isBot()) {
-							if (player.getBot().isAlive()) {
-								LOCK.notify();
-							} else {
-								player.getBot().start();
-							}
-						}
-					}
+					movesSinceTransformation = 0;
+					situations.reset();
 				}
 
-				playing = player;
-			}
+				// Add current situation and get amount of occurences
+				int occurrences = situations.add(state.getHash());
 
-		}
-	}
+				int threshhold = 50;
 
-	/**
-	 * Generate Base-3 string out of current situation
-	 * @return return base-3 string
-	 */
-	private String getSituation() {
-		String situation = "";
+				playing = player;
 
-		for (Field[] row : fields) {
-			for (Field field : row) {
-				/*
-				 * If field has a stone set 2 for white 1 for black else 0 for none
-				 */
-				if (field.hasStone()) {
-					Theme color = field.getStone().getColor();
-					if (color == Theme.WHITE) {
-						situation += "2";
-					} else {
-						situation += "1";
-					}
-				} else {
-					situation += "0";
+				// if any of the following conditions is true finish the game without a winner
+				if (movesSinceKill > threshhold || movesSinceTransformation > threshhold || occurrences >= 4) {
+					done(null);
+				} else if (player.isBot()) {
+					// if player is a computer let him think about his move
+					player.getBot().play();
 				}
 			}
-		}
 
-		return situation;
+		}
 	}
 
 	/**
@@ -482,10 +643,16 @@ public class Board {
 	 */
 	public void stop() {
 		running = false;
-		// Interrupt every bot thread
+		if (clock != null) {
+			clock.stop();
+		}
+		if (timer != null) {
+			timer.cancel();
+		}
+		// Stop every thinking bot
 		for (Player player : players) {
 			if (player.isBot()) {
-				player.getBot().interrupt();
+				player.getBot().stop();
 			}
 		}
 	}
@@ -29,7 +29,7 @@ public class Game extends Application {
 	/**
 	 * Settings for the game
 	 */
-	private static Map<String, Object> settings = new HashMap<>();
+	private Map<String, Object> settings = new HashMap<>();
 	/**
 	 * The current board set
 	 */
@@ -85,7 +85,7 @@ public class Game extends Application {
 
 		// If the first player is a bot, make it start
 		if (board.getPlaying().isBot()) {
-			board.getPlaying().getBot().start();
+			board.getPlaying().getBot().play();
 		}
 	}
 
@@ -8,7 +8,9 @@ import javafx.application.Platform;
 import javafx.scene.layout.StackPane;
 import javafx.scene.paint.Color;
 import javafx.scene.shape.Circle;
+import logic.GameState;
 import logic.Move;
+import logic.Step;
 import settings.Player;
 import settings.Theme;
 
@@ -107,18 +109,16 @@ public class Stone extends StackPane {
 			});
 
 			setOnMouseReleased(e -> {
-				synchronized (player.getBoard().LOCK) {
-					if (player.canPlay()) {
-						// Get location on the board from x-,y-cordinations
-						int newX = player.getBoard().onBoard(getLayoutX());
-						int newY = player.getBoard().onBoard(getLayoutY());
-
-						Field newField = player.getBoard().getFields()[newY][newX];
-						
-						// Run the move
-						Move move = new Move(player, this, newField);
-						move.run();
-					}
+				if (player.canPlay()) {
+					// Get location on the board from x-,y-cordinations
+					int newX = player.getBoard().onBoard(getLayoutX());
+					int newY = player.getBoard().onBoard(getLayoutY());
+
+					Field newField = player.getBoard().getFields()[newY][newX];
+					
+					// Run the move
+					Move move = new Move(player, this, newField);
+					move.run();
 				}
 			});
 		}
@@ -131,13 +131,12 @@ public class Stone extends StackPane {
 	public List<Move> getMoves() {
 		List<Move> moves = new ArrayList<>();
 
-		for (Field[] row : player.getBoard().getFields()) {
-			for (Field field : row) {
-				Move move = new Move(player, this, field);
-				if (move.getType() != Move.Type.NONE) {
-					moves.add(move);
-				}
-			}
+		GameState state = player.getBoard().getState();
+		List<Step> steps = new ArrayList<>();
+		state.addSteps(state.square(getX(), getY()), steps);
+
+		for (Step step : steps) {
+			moves.add(new Move(player, step));
 		}
 
 		return moves;
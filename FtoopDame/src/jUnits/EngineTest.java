@@ -0,0 +1,254 @@
+package jUnits;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Test;
+import logic.BookBuilder;
+import logic.Clock;
+import logic.GameState;
+import logic.Match;
+import logic.MoveList;
+import logic.OpeningBook;
+import logic.Path;
+import logic.Step;
+import logic.Tablebase;
+import logic.TablebaseGenerator;
+import logic.Variant;
+
+public class EngineTest {
+
+	@Test
+	public void clockTest() {
+
+		// A thirtieth of the time left and most of the increment, 50 ms kept back
+		Clock clock = new Clock(60000, 1000);
+		assertEquals(59950 / 30 + 750, clock.allocate(GameState.BLACK, 8));
+		// Twice the time with many steps, half of it with few
+		assertEquals(2 * (59950 / 30 + 750), clock.allocate(GameState.BLACK, 32));
+		assertEquals((59950 / 30 + 750) / 2, clock.allocate(GameState.BLACK, 2));
+		// No time for a single step
+		assertEquals(1, clock.allocate(GameState.BLACK, 1));
+
+		// Never more than a quarter of the time left, even with a large increment
+		clock = new Clock(1000, 10000);
+		assertEquals(950 / 4, clock.allocate(GameState.WHITE, 8));
+
+		// The increment is added when the turn ends
+		clock = new Clock(60000, 1000);
+		clock.start(GameState.BLACK);
+		clock.press();
+		long black = clock.getRemaining(GameState.BLACK);
+		assertTrue(black > 60000 && black <= 61000);
+		assertEquals(60000, clock.getRemaining(GameState.WHITE), 1000);
+		clock.stop();
+		assertFalse(clock.isOver(GameState.WHITE));
+
+		// A fixed time for every turn is used completely
+		clock = Clock.perMove(500);
+		assertEquals(450, clock.allocate(GameState.WHITE, 8));
+		assertEquals(1, clock.allocate(GameState.WHITE, 1));
+
+	}
+
+	@Test
+	public void openingBookTest() throws IOException {
+
+		// First steps 9-13 won, 11-15 drawn and 10-14 lost by black
+		BookBuilder builder = new BookBuilder(8, 10);
+		builder.add(history(Step.pack(8, 12, -1)), GameState.BLACK);
+		builder.add(history(Step.pack(10, 14, -1)), Match.DRAW);
+		builder.add(history(Step.pack(9, 13, -1)), GameState.WHITE);
+		assertEquals(2, builder.size());
+
+		File file = File.createTempFile("book", ".bin");
+		file.deleteOnExit();
+		builder.write(file);
+		assertEquals(12 + 2 * 16, file.length());
+		OpeningBook book = OpeningBook.open(file);
+		assertEquals(2, book.size());
+
+		// Black moving down, the won step is chosen twice as often as the drawn one
+		GameState down = GameState.start(8);
+		int[] chosen = probe(book, down);
+		assertEquals(0, chosen[1]);
+		assertTrue(chosen[0] > chosen[2] && chosen[2] > 0);
+
+		// Black moving up on the turned board gets the same steps turned
+		GameState up = new GameState(8);
+		up.setDirection(GameState.BLACK, -1);
+		up.setDirection(GameState.WHITE, 1);
+		int last = up.getSquares() - 1;
+		for (int square = 0; square <= last; square++) {
+			up.setPiece(last - square, down.getPiece(square));
+		}
+		MoveList allowed = new MoveList();
+		up.generate(allowed);
+		Random random = new Random(18);
+		for (int i = 0; i < 100; i++) {
+			int step = book.probe(up, allowed, random);
+			int from = last - Step.from(step);
+			int to = last - Step.to(step);
+			assertTrue(from == 8 && to == 12 || from == 10 && to == 14);
+		}
+
+		// Unknown positions and other boards aren't in the book
+		down.make(Step.pack(8, 12, -1));
+		down.generate(allowed);
+		assertEquals(0, book.probe(down, allowed, random));
+		GameState large = GameState.start(10);
+		large.generate(allowed);
+		assertEquals(0, book.probe(large, allowed, random));
+
+	}
+
+	@Test
+	public void tablebaseTest() throws IOException {
+
+		File directory = File.createTempFile("tablebase", "");
+		directory.delete();
+		new TablebaseGenerator(8, new ForkJoinPool(1)).generateAll(3, directory, null);
+		Tablebase tablebase;
+		try {
+			tablebase = Tablebase.open(directory);
+		} finally {
+			for (File file : directory.listFiles()) {
+				file.delete();
+			}
+			directory.delete();
+		}
+		assertEquals(3, tablebase.getPieces());
+
+		// Killing the last stone wins with the turn
+		GameState state = new GameState(8);
+		state.setPiece(state.square(1, 0), GameState.BLACK_QUEEN);
+		state.setPiece(state.square(4, 3), GameState.WHITE_MAN);
+		assertEquals(2, tablebase.probe(state));
+		assertEquals(-1, tablebase.probe(after(state, tablebase.best(state))));
+
+		// A blocked stone loses right away
+		state = new GameState(8);
+		state.setPiece(state.square(0, 5), GameState.BLACK_MAN);
+		state.setPiece(state.square(1, 6), GameState.WHITE_MAN);
+		state.setPiece(state.square(2, 7), GameState.WHITE_MAN);
+		assertEquals(-1, tablebase.probe(state));
+
+		// Other variants and larger materials aren't known
+		assertEquals(Tablebase.UNKNOWN, tablebase.probe(GameState.start(8)));
+		assertEquals(Tablebase.UNKNOWN, tablebase.probe(GameState.start(8, Variant.RUSSIAN)));
+
+		// Every value follows from the values after the turns
+		Random random = new Random(19);
+		byte[] pieces = { GameState.BLACK_MAN, GameState.BLACK_QUEEN, GameState.WHITE_MAN, GameState.WHITE_QUEEN };
+		int[] results = new int[3];
+		for (int i = 0; i < 5000; i++) {
+			state = new GameState(8);
+			int stones = 2 + random.nextInt(2);
+			int black = 1 + random.nextInt(stones - 1);
+			for (int stone = 0; stone < stones; stone++) {
+				int color = stone < black ? GameState.BLACK : GameState.WHITE;
+				byte piece = pieces[2 * color + random.nextInt(2)];
+				int square;
+				do {
+					square = random.nextInt(state.getSquares());
+				} while (state.getPiece(square) != GameState.EMPTY
+						|| piece == GameState.BLACK_MAN && state.getY(square) == 7
+						|| piece == GameState.WHITE_MAN && state.getY(square) == 0);
+				state.setPiece(square, piece);
+			}
+			state.setPlaying(random.nextInt(2));
+
+			int value = tablebase.probe(state);
+			assertEquals(expected(tablebase, state), value);
+			assertTrue(Math.abs(value) <= Tablebase.LONGEST);
+			results[Integer.signum(value) + 1]++;
+		}
+		// Wins, draws and losses are all checked
+		for (int count : results) {
+			assertTrue(count > 0);
+		}
+
+	}
+
+	/**
+	 * @param steps packed steps
+	 * @return list of the steps
+	 */
+	private static MoveList history(int... steps) {
+		MoveList list = new MoveList();
+		for (int step : steps) {
+			list.add(step);
+		}
+		return list;
+	}
+
+	/**
+	 * @param state game state
+	 * @param path turn
+	 * @return new state after the turn
+	 */
+	private static GameState after(GameState state, Path path) {
+		GameState copy = new GameState(state);
+		for (int i = 0; i < path.length(); i++) {
+			copy.make(path.get(i));
+		}
+		return copy;
+	}
+
+	/**
+	 * Value of a position from the values after its turns: the fastest win, a
+	 * draw or the slowest loss, a draw if the game takes too long
+	 * @param tablebase tablebase
+	 * @param state game state
+	 * @return expected tablebase value
+	 */
+	private static int expected(Tablebase tablebase, GameState state) {
+		List<Path> paths = state.getPaths();
+		if (paths.isEmpty()) {
+			return -1;
+		}
+		int fastestWin = Integer.MAX_VALUE;
+		int longestLoss = 0;
+		boolean draw = false;
+		for (Path path : paths) {
+			int value = tablebase.probe(after(state, path));
+			assertNotEquals(Tablebase.UNKNOWN, value);
+			if (value < 0) {
+				fastestWin = Math.min(fastestWin, 1 - value);
+			} else if (value > 0) {
+				longestLoss = Math.max(longestLoss, value + 1);
+			} else {
+				draw = true;
+			}
+		}
+		if (fastestWin <= Tablebase.LONGEST) {
+			return fastestWin;
+		} else if (fastestWin == Integer.MAX_VALUE && !draw && longestLoss <= Tablebase.LONGEST) {
+			return -longestLoss;
+		}
+		return 0;
+	}
+
+	/**
+	 * @param book opening book
+	 * @param state start position with black moving down
+	 * @return how often 9-13, 10-14 and 11-15 are chosen in 300 probes
+	 */
+	private static int[] probe(OpeningBook book, GameState state) {
+		MoveList allowed = new MoveList();
+		state.generate(allowed);
+		Random random = new Random(18);
+		int[] chosen = new int[3];
+		for (int i = 0; i < 300; i++) {
+			int step = book.probe(state, allowed, random);
+			assertEquals(Step.from(step) + 4, Step.to(step));
+			chosen[Step.from(step) - 8]++;
+		}
+		return chosen;
+	}
+}
@@ -0,0 +1,187 @@
+package jUnits;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Test;
+import logic.GameState;
+import logic.MoveList;
+import logic.Repetitions;
+import logic.Step;
+import logic.TranspositionTable;
+import logic.Variant;
+
+public class HashTest {
+
+	@Test
+	public void tableTest() {
+
+		TranspositionTable table = new TranspositionTable(1);
+		long hash = 0x123456789ABCDEFL;
+		int step = Step.pack(9, 13, -1);
+
+		// Every bound type, a negative score and the deepest depth come back unchanged
+		int[] bounds = { TranspositionTable.EXACT, TranspositionTable.LOWER, TranspositionTable.UPPER };
+		int[] scores = { 42, -99999, 99999 };
+		int[] depths = { 1, 255, 17 };
+		for (int i = 0; i < bounds.length; i++) {
+			table.store(hash, step, depths[i], bounds[i], scores[i]);
+			long data = table.probe(hash);
+			assertEquals(step, TranspositionTable.step(data));
+			assertEquals(depths[i], TranspositionTable.depth(data));
+			assertEquals(bounds[i], TranspositionTable.bound(data));
+			assertEquals(scores[i], TranspositionTable.score(data));
+		}
+		assertEquals(0, table.probe(hash + 1));
+
+		// A new result without a step keeps the step of the same position
+		table.store(hash, 0, 3, TranspositionTable.LOWER, 7);
+		assertEquals(step, TranspositionTable.step(table.probe(hash)));
+
+	}
+
+	@Test
+	public void replacementTest() {
+
+		TranspositionTable table = new TranspositionTable(1);
+		long buckets = table.getSize() / 32;
+		long deep = 5;
+		long shallow = deep + buckets;
+		long other = deep + 2 * buckets;
+		long newer = deep + 3 * buckets;
+
+		// The deeper entry stays first, the shallow one takes the second entry
+		table.store(deep, 1, 10, TranspositionTable.EXACT, 1);
+		table.store(shallow, 2, 4, TranspositionTable.EXACT, 2);
+		assertEquals(10, TranspositionTable.depth(table.probe(deep)));
+		assertEquals(4, TranspositionTable.depth(table.probe(shallow)));
+
+		// The second entry is always replaced
+		table.store(other, 3, 2, TranspositionTable.EXACT, 3);
+		assertEquals(0, table.probe(shallow));
+		assertEquals(10, TranspositionTable.depth(table.probe(deep)));
+		assertEquals(2, TranspositionTable.depth(table.probe(other)));
+
+		// Entries of an older search are replaced even by less deep ones
+		table.newSearch();
+		table.store(newer, 4, 1, TranspositionTable.EXACT, 4);
+		assertEquals(0, table.probe(deep));
+		assertEquals(1, TranspositionTable.depth(table.probe(newer)));
+		assertEquals(2, TranspositionTable.depth(table.probe(other)));
+
+	}
+
+	@Test
+	public void zobristTest() {
+
+		Random random = new Random(4);
+		MoveList steps = new MoveList();
+		for (Variant variant : new Variant[] { Variant.STANDARD, Variant.RUSSIAN, Variant.INTERNATIONAL }) {
+			for (int game = 0; game < 20; game++) {
+				GameState state = GameState.start(variant.getPattern(), variant);
+				long start = state.getHash();
+				long[] undos = new long[200];
+				int made = 0;
+
+				// The hash after a turn is the one of a new state with the same stones
+				while (made < undos.length) {
+					state.generate(steps);
+					if (steps.size() == 0) {
+						break;
+					}
+					undos[made++] = state.make(steps.get(random.nextInt(steps.size())));
+					if (state.getMovedSquare() < 0) {
+						assertEquals(copy(state).getHash(), state.getHash());
+					}
+				}
+
+				// Taking all steps back gives the start hash again
+				while (made > 0) {
+					state.unmake(undos[--made]);
+					if (state.getMovedSquare() < 0) {
+						assertEquals(copy(state).getHash(), state.getHash());
+					}
+				}
+				assertEquals(start, state.getHash());
+			}
+		}
+
+	}
+
+	@Test
+	public void repetitionsTest() {
+
+		Repetitions repetitions = new Repetitions();
+		assertEquals(1, repetitions.add(42));
+		assertEquals(2, repetitions.add(42));
+		assertEquals(2, repetitions.count(42));
+		assertEquals(0, repetitions.count(43));
+
+		// Hashes of the last slot wrap around to the first ones
+		long[] run = { 127, 255, 383, 511 };
+		for (long hash : run) {
+			assertEquals(1, repetitions.add(hash));
+		}
+		for (long hash : run) {
+			assertEquals(1, repetitions.count(hash));
+		}
+		assertEquals(0, repetitions.count(639));
+		assertEquals(5, repetitions.size());
+
+		// The table grows and keeps all counts
+		for (long hash = 1000; hash < 1300; hash++) {
+			repetitions.add(hash);
+			repetitions.add(hash);
+		}
+		assertEquals(305, repetitions.size());
+		for (long hash = 1000; hash < 1300; hash++) {
+			assertEquals(2, repetitions.count(hash));
+		}
+		assertEquals(1, repetitions.count(511));
+		assertEquals(2, repetitions.count(42));
+		repetitions.reset();
+		assertEquals(0, repetitions.size());
+		assertEquals(0, repetitions.count(1000));
+
+		// Positions of a game are counted like the board counts them
+		Random random = new Random(5);
+		MoveList steps = new MoveList();
+		GameState state = GameState.start(8);
+		long[] hashes = new long[60];
+		int made = 0;
+		for (; made < hashes.length; made++) {
+			state.generate(steps);
+			if (steps.size() == 0) {
+				break;
+			}
+			state.make(steps.get(random.nextInt(steps.size())));
+			hashes[made] = state.getHash();
+			repetitions.add(hashes[made]);
+		}
+		for (int i = 0; i < made; i++) {
+			int occurrences = 0;
+			for (int j = 0; j < made; j++) {
+				occurrences += hashes[j] == hashes[i] ? 1 : 0;
+			}
+			assertEquals(occurrences, repetitions.count(hashes[i]));
+		}
+
+	}
+
+	/**
+	 * @param state game state
+	 * @return new state with the stones and the color playing of the state
+	 */
+	static GameState copy(GameState state) {
+		GameState copy = new GameState(state.getPattern(), state.getVariant());
+		for (int color = GameState.BLACK; color <= GameState.WHITE; color++) {
+			copy.setDirection(color, state.getDirection(color));
+		}
+		for (int square = 0; square < state.getSquares(); square++) {
+			copy.setPiece(square, state.getPiece(square));
+		}
+		copy.setPlaying(state.getPlaying());
+		return copy;
+	}
+}
@@ -0,0 +1,105 @@
+package jUnits;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import org.junit.Test;
+import logic.Agent;
+import logic.GameHost;
+import logic.GameState;
+import logic.Match;
+import logic.MoveList;
+import logic.Tournament;
+import logic.Variant;
+
+public class MatchTest {
+
+	@Test
+	public void hostTest() {
+
+		// Matches played turn by turn on the host end like matches played alone
+		GameHost host = new GameHost(2);
+		List<CompletableFuture<Match>> futures = new ArrayList<>();
+		for (int i = 0; i < 30; i++) {
+			futures.add(host.submit(new Match(GameState.start(8), Agent.random(2 * i), Agent.random(2 * i + 1))));
+		}
+
+		for (int i = 0; i < futures.size(); i++) {
+			Match match = futures.get(i).join();
+			assertTrue(match.isFinished());
+
+			Match alone = new Match(GameState.start(8), Agent.random(2 * i), Agent.random(2 * i + 1));
+			assertEquals(alone.play(), match.getWinner());
+			assertEquals(alone.getTurns(), match.getTurns());
+			assertEquals(alone.getHistory().size(), match.getHistory().size());
+
+			// The history leads to the final state
+			GameState state = GameState.start(8);
+			MoveList history = match.getHistory();
+			for (int j = 0; j < history.size(); j++) {
+				state.make(history.get(j));
+			}
+			assertEquals(match.getState().getHash(), state.getHash());
+		}
+		host.shutdown();
+
+	}
+
+	@Test
+	public void tournamentTest() throws IOException {
+
+		// Black games of every engine
+		AtomicIntegerArray black = new AtomicIntegerArray(2);
+		Tournament tournament = new Tournament();
+		tournament.add(counting("shallow", "depth=1", 0, black));
+		tournament.add(counting("deep", "depth=4", 1, black));
+		tournament.play(false, 12, 2, 8, Variant.STANDARD, 2, 20);
+
+		// Every game gives one point and every engine is black in half of them
+		assertEquals(12, tournament.getGames(0, 1));
+		assertEquals(12, tournament.getGames(1, 0));
+		assertEquals(12, tournament.getPoints(0, 1) + tournament.getPoints(1, 0), 1e-9);
+		assertEquals(6, black.get(0));
+		assertEquals(6, black.get(1));
+
+		// The ratings average 0 and the deeper search is rated higher
+		double[] elo = tournament.elo();
+		assertEquals(0, elo[0] + elo[1], 1e-6);
+		assertTrue(elo[1] > elo[0]);
+
+	}
+
+	/**
+	 * @param name name of the engine
+	 * @param options options of the engine
+	 * @param index index of the engine
+	 * @param black counts the games every engine plays as black
+	 * @return engine counting its games as black
+	 * @throws IOException never, no files are opened
+	 */
+	private static Tournament.Engine counting(String name, String options, int index, AtomicIntegerArray black)
+			throws IOException {
+		Tournament.Engine engine = Tournament.Engine.parse(name + ";" + options);
+		return new Tournament.Engine(name) {
+			@Override
+			public Agent create(long seed) {
+				Agent agent = engine.create(seed);
+				boolean[] counted = new boolean[1];
+				return state -> {
+					if (!counted[0]) {
+						counted[0] = true;
+						if (state.getPlaying() == GameState.BLACK) {
+							black.incrementAndGet(index);
+						}
+					}
+					return agent.choose(state);
+				};
+			}
+		};
+	}
+}
@@ -0,0 +1,198 @@
+package jUnits;
+
+import static org.junit.Assert.*;
+
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import logic.GameState;
+import logic.Path;
+import logic.Perft;
+import logic.Variant;
+
+public class PerftTest {
+
+	private GameState start;
+	private GameState queen;
+
+	@Before
+	public void setUp() {
+
+		start = GameState.start(8);
+
+		// Black queen with a kill chain over three stones in two orders
+		queen = new GameState(8);
+		queen.setPiece(13, GameState.BLACK_QUEEN);
+		queen.setPiece(1, GameState.BLACK_MAN);
+		queen.setPiece(6, GameState.BLACK_MAN);
+		queen.setPiece(9, GameState.WHITE_MAN);
+		queen.setPiece(17, GameState.WHITE_MAN);
+		queen.setPiece(18, GameState.WHITE_MAN);
+		queen.setPiece(25, GameState.WHITE_MAN);
+		queen.setPiece(27, GameState.WHITE_QUEEN);
+
+	}
+
+	@Test
+	public void startTest() {
+
+		// Same as english checkers until the first queens appear
+		long[] expected = { 7, 49, 302, 1469, 7361, 36768, 179740 };
+		for (int depth = 1; depth <= expected.length; depth++) {
+			assertEquals(expected[depth - 1], Perft.perft(start, depth));
+		}
+
+	}
+
+	@Test
+	public void largeBoardTest() {
+
+		long[] expected = { 9, 81, 658, 4265, 26875 };
+		GameState state = GameState.start(10);
+		for (int depth = 1; depth <= expected.length; depth++) {
+			assertEquals(expected[depth - 1], Perft.perft(state, depth));
+		}
+
+	}
+
+	@Test
+	public void hugeBoardTest() {
+
+		long[] expected = { 11, 121, 1222, 10053, 78629 };
+		GameState state = GameState.start(12);
+		for (int depth = 1; depth <= expected.length; depth++) {
+			assertEquals(expected[depth - 1], Perft.perft(state, depth));
+		}
+
+	}
+
+	@Test
+	public void queenTest() {
+
+		List<Path> paths = queen.getPaths();
+		assertEquals(2, paths.size());
+		assertEquals(3, paths.get(0).getKilled().length);
+
+		long[] expected = { 2, 2, 19, 172, 1302 };
+		for (int depth = 1; depth <= expected.length; depth++) {
+			assertEquals(expected[depth - 1], Perft.perft(queen, depth));
+		}
+
+	}
+
+	@Test
+	public void variantTest() {
+
+		// Published perft results of the variants
+		long[] international = { 9, 81, 658, 4265, 27117, 167140 };
+		GameState state = GameState.start(10, Variant.INTERNATIONAL);
+		for (int depth = 1; depth <= international.length; depth++) {
+			assertEquals(international[depth - 1], Perft.perft(state, depth));
+		}
+
+		long[] russian = { 7, 49, 302, 1469, 7482, 37986 };
+		state = GameState.start(8, Variant.RUSSIAN);
+		for (int depth = 1; depth <= russian.length; depth++) {
+			assertEquals(russian[depth - 1], Perft.perft(state, depth));
+		}
+
+		long[] brazilian = { 7, 49, 302, 1469, 7473, 37628, 187302 };
+		state = GameState.start(8, Variant.BRAZILIAN);
+		for (int depth = 1; depth <= brazilian.length; depth++) {
+			assertEquals(brazilian[depth - 1], Perft.perft(state, depth));
+		}
+
+		long[] pool = { 7, 49, 302, 1469, 7482, 37986, 190146 };
+		state = GameState.start(8, Variant.POOL);
+		for (int depth = 1; depth <= pool.length; depth++) {
+			assertEquals(pool[depth - 1], Perft.perft(state, depth));
+		}
+
+		// Same as english checkers up to depth 5, the kill priorities show from depth 6 on
+		long[] italian = { 7, 49, 302, 1469, 7361, 36473, 177532 };
+		state = GameState.start(8, Variant.ITALIAN);
+		for (int depth = 1; depth <= italian.length; depth++) {
+			assertEquals(italian[depth - 1], Perft.perft(state, depth));
+		}
+
+	}
+
+	@Test
+	public void italianTest() {
+
+		// Regular stones can't kill queens
+		GameState state = new GameState(8, Variant.ITALIAN);
+		state.setPiece(state.square(3, 2), GameState.BLACK_MAN);
+		state.setPiece(state.square(4, 3), GameState.WHITE_QUEEN);
+		List<Path> paths = state.getPaths();
+		assertEquals(1, paths.size());
+		assertEquals(0, paths.get(0).getKilled().length);
+
+		// Between kills of the same amount the queen has to kill
+		state = new GameState(8, Variant.ITALIAN);
+		state.setPiece(state.square(1, 2), GameState.BLACK_MAN);
+		state.setPiece(state.square(2, 3), GameState.WHITE_MAN);
+		state.setPiece(state.square(5, 2), GameState.BLACK_QUEEN);
+		state.setPiece(state.square(6, 3), GameState.WHITE_MAN);
+		paths = state.getPaths();
+		assertEquals(1, paths.size());
+		assertEquals(state.square(5, 2), paths.get(0).getFrom());
+
+		// Then the queen has to be killed instead of the regular stone
+		state = new GameState(8, Variant.ITALIAN);
+		state.setPiece(state.square(3, 2), GameState.BLACK_QUEEN);
+		state.setPiece(state.square(4, 3), GameState.WHITE_MAN);
+		state.setPiece(state.square(2, 3), GameState.WHITE_QUEEN);
+		paths = state.getPaths();
+		assertEquals(1, paths.size());
+		assertEquals(state.square(1, 4), paths.get(0).getTo());
+
+	}
+
+	@Test
+	public void majorityTest() {
+
+		// The chain over two stones has to be taken, not the single kill
+		GameState state = new GameState(10, Variant.INTERNATIONAL);
+		state.setPiece(state.square(3, 2), GameState.BLACK_MAN);
+		state.setPiece(state.square(7, 2), GameState.BLACK_MAN);
+		state.setPiece(state.square(4, 3), GameState.WHITE_MAN);
+		state.setPiece(state.square(6, 5), GameState.WHITE_MAN);
+		state.setPiece(state.square(8, 3), GameState.WHITE_MAN);
+
+		List<Path> paths = state.getPaths();
+		assertEquals(1, paths.size());
+		assertEquals(state.square(3, 2), paths.get(0).getFrom());
+		assertEquals(state.square(7, 6), paths.get(0).getTo());
+		assertEquals(2, paths.get(0).getKilled().length);
+
+	}
+
+	@Test
+	public void chainPromotionTest() {
+
+		// Russian men become queens on the last row and kill on backwards as queen
+		GameState state = new GameState(8, Variant.RUSSIAN);
+		state.setPiece(state.square(2, 5), GameState.BLACK_MAN);
+		state.setPiece(state.square(3, 6), GameState.WHITE_MAN);
+		state.setPiece(state.square(5, 6), GameState.WHITE_MAN);
+
+		List<Path> paths = state.getPaths();
+		assertEquals(2, paths.size());
+		for (Path path : paths) {
+			assertEquals(2, path.length());
+			assertTrue(path.transforms());
+		}
+
+	}
+
+	@Test
+	public void legacyTest() {
+
+		// The list generator of the stones has to find the same positions
+		assertEquals(Perft.perft(start, 6), Perft.legacy(start, 6));
+		assertEquals(Perft.perft(queen, 5), Perft.legacy(queen, 5));
+
+	}
+}
@@ -0,0 +1,92 @@
+package jUnits;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+import logic.GameRecord;
+import logic.GameState;
+import logic.IndexBuilder;
+import logic.Path;
+import logic.PdnReader;
+import logic.PositionIndex;
+import logic.Variant;
+
+public class PositionIndexTest {
+
+	@Test
+	public void indexTest() throws IOException {
+
+		// Three games from the same start, the first two with the same first turn
+		String text = "[Event \"Z\u00fcrich\"]\n[GameType \"20\"]\n1. 32-28 19-23 1-0\n\n"
+				+ "[GameType \"20\"]\n1. 32-28 18-23 0-1\n\n"
+				+ "[Event \"Gen\u00e8ve\"]\n[GameType \"20\"]\n1. 33-28 19-23 1/2-1/2\n";
+		File archive = File.createTempFile("archive", ".pdn");
+		archive.deleteOnExit();
+		Files.write(archive.toPath(), text.getBytes(StandardCharsets.UTF_8));
+		List<GameRecord> records = new ArrayList<>();
+		try (PdnReader reader = new PdnReader(Files.newInputStream(archive.toPath()))) {
+			for (GameRecord record = reader.next(); record != null; record = reader.next()) {
+				records.add(record);
+			}
+		}
+		assertEquals(3, records.size());
+
+		// Runs of two entries, so the index is merged from several runs
+		IndexBuilder builder = new IndexBuilder(10, Variant.INTERNATIONAL, 2);
+		assertEquals(3, builder.addArchive(archive, 1));
+		assertEquals(3, builder.getGames());
+		assertEquals(9, builder.size());
+		File file = File.createTempFile("index", ".idx");
+		file.deleteOnExit();
+		builder.write(file);
+		PositionIndex index = PositionIndex.open(file);
+		assertEquals(9, index.size());
+
+		// Every game reached the start, each with another outcome
+		GameState state = records.get(0).getStart();
+		PositionIndex.Games games = index.lookup(state, 10);
+		assertEquals(3, games.size());
+		assertEquals(1, games.get(PositionIndex.BLACK_WON));
+		assertEquals(1, games.get(PositionIndex.WHITE_WON));
+		assertEquals(1, games.get(PositionIndex.DRAW));
+		assertEquals(0, games.get(PositionIndex.UNKNOWN));
+
+		// The offsets are byte offsets in the order of the archive and read the same games
+		long[] offsets = games.getOffsets();
+		assertEquals(3, offsets.length);
+		for (int i = 0; i < offsets.length; i++) {
+			assertEquals(records.get(i).getOffset(), offsets[i]);
+			assertEquals(records.get(i).toString(), PdnReader.read(archive, offsets[i]).toString());
+		}
+		String before = text.substring(0, text.indexOf("[GameType \"20\"]\n1. 32-28 18"));
+		assertEquals(before.getBytes(StandardCharsets.UTF_8).length, offsets[1]);
+		assertArrayEquals(new long[] { offsets[0] }, index.lookup(state, 1).getOffsets());
+
+		// Two turns were played from the start, the first one in two games
+		Map<Path, PositionIndex.Games> turns = index.explore(state);
+		assertEquals(2, turns.size());
+		Path first = records.get(0).getTurns().get(0);
+		for (Map.Entry<Path, PositionIndex.Games> turn : turns.entrySet()) {
+			boolean same = turn.getKey().getFrom() == first.getFrom() && turn.getKey().getTo() == first.getTo();
+			assertEquals(same ? 2 : 1, turn.getValue().size());
+		}
+
+		// Positions no game reached and other variants have no games
+		assertEquals(0, index.lookup(GameState.start(10), 10).size());
+		state = new GameState(state);
+		for (int i = 0; i < first.length(); i++) {
+			state.make(first.get(i));
+		}
+		assertEquals(0, index.lookup(state, 10).get(PositionIndex.DRAW));
+		assertEquals(2, index.lookup(state, 10).size());
+
+	}
+}
@@ -0,0 +1,95 @@
+package jUnits;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+import logic.Fen;
+import logic.GameRecord;
+import logic.GameState;
+import logic.PdnReader;
+import logic.Variant;
+
+public class RecordTest {
+
+	@Test
+	public void fenTest() {
+
+		// Positions are read to the same state they were written from
+		GameState start = GameState.start(8);
+		assertEquals(start.getHash(), Fen.parse("B:W21-32:B1-12").getHash());
+
+		// Black queen with a kill chain over three stones
+		GameState queen = new GameState(8);
+		queen.setPiece(13, GameState.BLACK_QUEEN);
+		queen.setPiece(1, GameState.BLACK_MAN);
+		queen.setPiece(6, GameState.BLACK_MAN);
+		queen.setPiece(9, GameState.WHITE_MAN);
+		queen.setPiece(17, GameState.WHITE_MAN);
+		queen.setPiece(18, GameState.WHITE_MAN);
+		queen.setPiece(25, GameState.WHITE_MAN);
+		queen.setPiece(27, GameState.WHITE_QUEEN);
+		assertEquals(queen.getHash(), Fen.parse(Fen.write(queen)).getHash());
+		assertEquals("B:W10,18,19,26,K28:B2,7,K14", Fen.write(queen));
+		assertEquals(10, Fen.parse("W:W31-50:B1-20").getPattern());
+
+		// Squares given twice and regular stones on their last row are rejected
+		for (String fen : new String[] { "B:W1,1:B5", "B:W10:B10", "B:W9-12,K12:B1", "B:W1:B5", "B:W10:B29" }) {
+			try {
+				Fen.parse(fen);
+				fail("Accepted " + fen);
+			} catch (IllegalArgumentException e) {
+				// Expected
+			}
+		}
+		// Queens may stand on any row
+		assertEquals(GameState.BLACK_QUEEN, Fen.parse("B:W10:B1,K29").getPiece(28));
+		assertEquals(GameState.WHITE_QUEEN, Fen.parse("B:WK1:B10").getPiece(0));
+
+	}
+
+	@Test
+	public void pdnTest() throws IOException {
+
+		// Kill chains may be given without the squares in between
+		String text = "[GameType \"20\"]\n1. 32-28 {open} 19-23 2. 28x19 14x23 (2... 13x24) 3. 33-29 0-1\n";
+		try (PdnReader reader = new PdnReader(new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8)))) {
+			GameRecord record = reader.next();
+			assertEquals(Variant.INTERNATIONAL, record.getStart().getVariant());
+			assertEquals(5, record.getTurns().size());
+			assertEquals("0-1", record.getResult());
+			assertEquals(record.toString(), new PdnReader(new ByteArrayInputStream(record.toString().getBytes(StandardCharsets.UTF_8))).next().toString());
+			assertNull(reader.next());
+		}
+
+	}
+
+	@Test
+	public void untaggedTest() throws IOException {
+
+		// Games without tags end at their result, results in comments and variations don't count
+		String text = "1. 9-13 22-18 1-0\n\n1. 10-14 {won 1-0 (not} 23-19 (1... 24-20 *) 0-1 1. 11-15 *\n";
+		String[] results = { "1-0", "0-1", "*" };
+		int[] turns = { 2, 2, 1 };
+		long[] offsets = { 0, text.indexOf("1. 10-14"), text.indexOf("1. 11-15") };
+		try (PdnReader reader = new PdnReader(new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8)))) {
+			for (int i = 0; i < results.length; i++) {
+				GameRecord record = reader.next();
+				assertEquals(Variant.STANDARD, record.getStart().getVariant());
+				assertEquals(turns[i], record.getTurns().size());
+				assertEquals(results[i], record.getResult());
+				assertEquals(offsets[i], record.getOffset());
+			}
+			assertNull(reader.next());
+		}
+
+		// Reading stops after the game that stopped it
+		try (PdnReader reader = new PdnReader(new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8)))) {
+			assertEquals(1, reader.forEach(record -> reader.stop(), e -> fail(e.getMessage()), 1));
+		}
+
+	}
+}
@@ -0,0 +1,148 @@
+package jUnits;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+import logic.Evaluation;
+import logic.GameState;
+import logic.LegalMoves;
+import logic.MoveList;
+import logic.Step;
+import logic.Variant;
+
+public class StateTest {
+
+	@Test
+	public void termsTest() {
+
+		Random random = new Random(16);
+		MoveList steps = new MoveList();
+		Evaluation evaluation = new Evaluation();
+		for (Variant variant : new Variant[] { Variant.STANDARD, Variant.INTERNATIONAL }) {
+			for (int game = 0; game < 20; game++) {
+				GameState state = GameState.start(variant.getPattern(), variant);
+				long[] undos = new long[120];
+				int made = 0;
+
+				// Play forward, turn the board once in the middle of the game and take steps back
+				for (int i = 0; i < 3 * undos.length; i++) {
+					if (i == undos.length) {
+						state.setDirection(GameState.BLACK, -state.getDirection(GameState.BLACK));
+						state.setDirection(GameState.WHITE, -state.getDirection(GameState.WHITE));
+					} else if (made > 0 && (made == undos.length || random.nextInt(3) == 0)) {
+						state.unmake(undos[--made]);
+					} else {
+						state.generate(steps);
+						if (steps.size() == 0) {
+							continue;
+						}
+						undos[made++] = state.make(steps.get(random.nextInt(steps.size())));
+					}
+
+					GameState fresh = HashTest.copy(state);
+					for (int color = GameState.BLACK; color <= GameState.WHITE; color++) {
+						for (int term = Evaluation.MAN; term <= Evaluation.CENTER; term++) {
+							assertEquals(fresh.getTerm(color, term), state.getTerm(color, term));
+						}
+					}
+					assertEquals(evaluation.evaluate(fresh), evaluation.evaluate(state));
+				}
+			}
+		}
+
+	}
+
+	@Test
+	public void legalMovesTest() {
+
+		LegalMoves legal = new LegalMoves();
+		GameState state = GameState.start(8);
+		assertSameSteps(state, GameState.BLACK, legal);
+
+		// Every change of the state makes the cache generate again
+		state.setPiece(state.square(1, 2), GameState.EMPTY);
+		assertSameSteps(state, GameState.BLACK, legal);
+		state.setPiece(state.square(2, 3), GameState.WHITE_MAN);
+		assertSameSteps(state, GameState.BLACK, legal);
+		state.setPlaying(GameState.WHITE);
+		assertSameSteps(state, GameState.WHITE, legal);
+		state.setDirection(GameState.BLACK, -1);
+		assertSameSteps(state, GameState.BLACK, legal);
+		state.setDirection(GameState.BLACK, 1);
+		assertSameSteps(state, GameState.BLACK, legal);
+
+		// Positions of random games, with kill chains and queens
+		Random random = new Random(17);
+		MoveList steps = new MoveList();
+		int chains = 0;
+		for (Variant variant : new Variant[] { Variant.STANDARD, Variant.RUSSIAN }) {
+			for (int game = 0; game < 10; game++) {
+				state = GameState.start(variant.getPattern(), variant);
+				for (int i = 0; i < 150; i++) {
+					assertSameSteps(state, GameState.BLACK, legal);
+					assertSameSteps(state, GameState.WHITE, legal);
+
+					// Ending a kill chain gives the other stones their steps back
+					if (state.getMovedSquare() >= 0) {
+						GameState chain = new GameState(state);
+						assertSameSteps(chain, chain.getPlaying(), legal);
+						chain.setPlaying(chain.getPlaying());
+						assertSameSteps(chain, chain.getPlaying(), legal);
+						chains++;
+					}
+
+					state.generate(steps);
+					if (steps.size() == 0) {
+						break;
+					}
+					state.make(steps.get(random.nextInt(steps.size())));
+				}
+			}
+		}
+		assertTrue(chains > 0);
+
+	}
+
+	/**
+	 * Compare the cached steps and the lookup with newly generated steps
+	 * @param state game state
+	 * @param color color index
+	 * @param legal cache
+	 */
+	private static void assertSameSteps(GameState state, int color, LegalMoves legal) {
+		MoveList expected = new MoveList();
+		state.generate(color, expected);
+		MoveList cached = legal.get(state, color);
+		assertArrayEquals(sorted(expected), sorted(cached));
+
+		int squares = state.getSquares();
+		for (int from = -1; from <= squares; from++) {
+			for (int to = -1; to <= squares; to++) {
+				int step = 0;
+				for (int i = 0; i < expected.size(); i++) {
+					if (Step.from(expected.get(i)) == from && Step.to(expected.get(i)) == to) {
+						step = expected.get(i);
+					}
+				}
+				assertEquals(step, legal.find(state, color, from, to));
+				assertEquals(step != 0, legal.contains(state, color, from, to));
+			}
+		}
+	}
+
+	/**
+	 * @param list steps
+	 * @return packed steps in ascending order
+	 */
+	private static int[] sorted(MoveList list) {
+		int[] steps = new int[list.size()];
+		for (int i = 0; i < steps.length; i++) {
+			steps[i] = list.get(i);
+		}
+		Arrays.sort(steps);
+		return steps;
+	}
+}
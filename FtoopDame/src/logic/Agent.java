@@ -0,0 +1,29 @@
+package logic;
+
+import java.util.Random;
+
+/**
+ * Player of a headless match, a bot or a script
+ */
+public interface Agent {
+
+	/**
+	 * Choose the next step of the color playing
+	 * @param state game state, it must be the same again when the agent returns
+	 * @return packed step, it has to be allowed
+	 */
+	int choose(GameState state);
+
+	/**
+	 * @param seed seed of the random numbers
+	 * @return agent playing random steps
+	 */
+	static Agent random(long seed) {
+		Random random = new Random(seed);
+		MoveList steps = new MoveList();
+		return state -> {
+			state.generate(steps);
+			return steps.get(random.nextInt(steps.size()));
+		};
+	}
+}
@@ -0,0 +1,288 @@
+package logic;
+
+import java.util.Arrays;
+
+/**
+ * Bitboard layout of the dark squares and a move generator working on it.
+ *
+ * Field (x, y) is stored on bit (x + (pattern + 1) * y - 1) / 2. Every second
+ * row ends with an unused ghost bit, so every diagonal neighbour is reached
+ * with the same shift on the whole board. This fits into a long for boards up
+ * to 10x10.
+ */
+public class Bitboard {
+
+	/**
+	 * Layouts for every pattern, created when first needed
+	 */
+	private static final Bitboard[] layouts = new Bitboard[11];
+
+	/**
+	 * Pattern of the board
+	 */
+	final int pattern;
+	/**
+	 * Shifts to the four diagonal neighbours (down right, down left, up right, up left)
+	 */
+	final int[] shifts;
+	/**
+	 * Bits of all dark squares
+	 */
+	final long valid;
+	/**
+	 * Bits of the top and the bottom row, where regular stones get transformed
+	 */
+	final long top;
+	final long bottom;
+	/**
+	 * Bit of every square
+	 */
+	final int[] bits;
+	/**
+	 * Square of every bit, -1 for ghost bits
+	 */
+	final int[] squares;
+
+	/**
+	 * @param pattern board pattern
+	 */
+	private Bitboard(int pattern) {
+		this.pattern = pattern;
+
+		int half = pattern / 2;
+		shifts = new int[] { half + 1, half, -half, -half - 1 };
+
+		bits = new int[pattern * half];
+		squares = new int[64];
+		Arrays.fill(squares, -1);
+
+		long valid = 0;
+		long top = 0;
+		long bottom = 0;
+		for (int square = 0; square < bits.length; square++) {
+			int y = square / half;
+			int x = 2 * (square % half) + (y % 2 == 0 ? 1 : 0);
+			int bit = (x + (pattern + 1) * y - 1) / 2;
+
+			bits[square] = bit;
+			squares[bit] = square;
+			valid |= 1L << bit;
+			if (y == 0) {
+				top |= 1L << bit;
+			} else if (y == pattern - 1) {
+				bottom |= 1L << bit;
+			}
+		}
+
+		this.valid = valid;
+		this.top = top;
+		this.bottom = bottom;
+	}
+
+	/**
+	 * @param pattern board pattern
+	 * @return layout for the pattern or null if the board doesn't fit into a long
+	 */
+	public static synchronized Bitboard of(int pattern) {
+		if (pattern < 2 || pattern >= layouts.length || pattern % 2 != 0) {
+			return null;
+		}
+		if (layouts[pattern] == null) {
+			layouts[pattern] = new Bitboard(pattern);
+		}
+		return layouts[pattern];
+	}
+
+	/**
+	 * @param board bitboard
+	 * @param shift positive to shift down, negative to shift up
+	 * @return shifted bitboard without ghost bits
+	 */
+	long shift(long board, int shift) {
+		return (shift > 0 ? board << shift : board >>> -shift) & valid;
+	}
+
+	/**
+	 * @param square square index
+	 * @return bitboard with only this square
+	 */
+	public long bit(int square) {
+		return 1L << bits[square];
+	}
+
+	/**
+	 * @param state game state
+	 * @param color color index
+	 * @return bits of the row where regular stones of the color get transformed
+	 */
+	long lastRow(GameState state, int color) {
+		return state.dir[color] == 1 ? bottom : top;
+	}
+
+	/**
+	 * Generate all allowed steps of a color (kills are mandatory)
+	 * @param state game state
+	 * @param color color index
+	 * @param steps buffer for the packed steps
+	 * @return amount of steps
+	 */
+	public int generate(GameState state, int color, int[] steps) {
+		// If a stone is already moved, only this stone can kill again
+		if (color == state.playing && state.movedSquare >= 0) {
+			return generateKills(state, color, bit(state.movedSquare), steps, 0);
+		}
+
+		int count = generateKills(state, color, ~0L, steps, 0);
+		if (count > 0) {
+			return count;
+		}
+		return generateMoves(state, color, steps, 0);
+	}
+
+	/**
+	 * Generate kill steps
+	 * @param state game state
+	 * @param color color index
+	 * @param pieces bitboard of the stones to generate steps for
+	 * @param steps buffer for the packed steps, null to only count them
+	 * @param count steps already in the buffer
+	 * @return amount of steps in the buffer
+	 */
+	int generateKills(GameState state, int color, long pieces, int[] steps, int count) {
+		long enemies = state.men[1 - color] | state.queens[1 - color];
+		long empty = valid & ~(state.men[0] | state.queens[0] | state.men[1] | state.queens[1]);
+
+		// Regular stones jump forward over an enemy
+		long men = state.men[color] & pieces;
+		if (men != 0) {
+			long lastRow = lastRow(state, color);
+			int first = state.dir[color] == 1 ? 0 : 2;
+			for (int d = first; d < first + 2; d++) {
+				int shift = shifts[d];
+				long targets = shift(shift(men, shift) & enemies, shift) & empty;
+				while (targets != 0) {
+					int to = Long.numberOfTrailingZeros(targets);
+					targets &= targets - 1;
+					if (steps != null) {
+						steps[count] = Step.pack(squares[to - 2 * shift], squares[to], squares[to - shift])
+								| ((lastRow >>> to & 1) != 0 ? Step.TRANSFORM : 0);
+					}
+					count++;
+				}
+			}
+		}
+
+		// Queens fly to an enemy and land directly behind it
+		long queens = state.queens[color] & pieces;
+		while (queens != 0) {
+			long queen = queens & -queens;
+			queens &= queens - 1;
+			int from = squares[Long.numberOfTrailingZeros(queen)];
+
+			for (int shift : shifts) {
+				long ray = shift(queen, shift);
+				while ((ray & empty) != 0) {
+					ray = shift(ray, shift);
+				}
+				if ((ray & enemies) != 0) {
+					long landing = shift(ray, shift) & empty;
+					if (landing != 0) {
+						if (steps != null) {
+							steps[count] = Step.pack(from, squares[Long.numberOfTrailingZeros(landing)],
+									squares[Long.numberOfTrailingZeros(ray)]);
+						}
+						count++;
+					}
+				}
+			}
+		}
+
+		return count;
+	}
+
+	/**
+	 * Generate steps without kills
+	 * @param state game state
+	 * @param color color index
+	 * @param steps buffer for the packed steps
+	 * @param count steps already in the buffer
+	 * @return amount of steps in the buffer
+	 */
+	int generateMoves(GameState state, int color, int[] steps, int count) {
+		long empty = valid & ~(state.men[0] | state.queens[0] | state.men[1] | state.queens[1]);
+
+		// Regular stones move one field forward
+		long men = state.men[color];
+		if (men != 0) {
+			long lastRow = lastRow(state, color);
+			int first = state.dir[color] == 1 ? 0 : 2;
+			for (int d = first; d < first + 2; d++) {
+				int shift = shifts[d];
+				long targets = shift(men, shift) & empty;
+				while (targets != 0) {
+					int to = Long.numberOfTrailingZeros(targets);
+					targets &= targets - 1;
+					steps[count++] = Step.pack(squares[to - shift], squares[to], -1)
+							| ((lastRow >>> to & 1) != 0 ? Step.TRANSFORM : 0);
+				}
+			}
+		}
+
+		// Queens fly over all empty fields
+		long queens = state.queens[color];
+		while (queens != 0) {
+			long queen = queens & -queens;
+			queens &= queens - 1;
+			int from = squares[Long.numberOfTrailingZeros(queen)];
+
+			for (int shift : shifts) {
+				long ray = shift(queen, shift) & empty;
+				while (ray != 0) {
+					steps[count++] = Step.pack(from, squares[Long.numberOfTrailingZeros(ray)], -1);
+					ray = shift(ray, shift) & empty;
+				}
+			}
+		}
+
+		return count;
+	}
+
+	/**
+	 * Count the empty fields next to the stones of a color they could move to
+	 * @param state game state
+	 * @param color color index
+	 * @return mobility of the color
+	 */
+	int mobility(GameState state, int color) {
+		long empty = valid & ~(state.men[0] | state.queens[0] | state.men[1] | state.queens[1]);
+		int count = 0;
+
+		int first = state.dir[color] == 1 ? 0 : 2;
+		for (int d = first; d < first + 2; d++) {
+			count += Long.bitCount(shift(state.men[color], shifts[d]) & empty);
+		}
+		for (int shift : shifts) {
+			count += Long.bitCount(shift(state.queens[color], shift) & empty);
+		}
+		return count;
+	}
+
+	/**
+	 * @param state game state
+	 * @param square square of a stone
+	 * @return if the stone on the square can kill
+	 */
+	boolean canKill(GameState state, int square) {
+		int color = GameState.colorOf(state.squares[square]);
+		return generateKills(state, color, bit(square), null, 0) > 0;
+	}
+
+	/**
+	 * @param state game state
+	 * @param color color index
+	 * @return amount of kill steps the color could make
+	 */
+	int countKills(GameState state, int color) {
+		return generateKills(state, color, ~0L, null, 0);
+	}
+}
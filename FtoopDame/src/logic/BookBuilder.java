@@ -0,0 +1,362 @@
+package logic;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Builds an opening book (see {@link OpeningBook}) from game records or
+ * from games of search agents against each other.
+ *
+ * Records are text files with one game per line, the turns written like
+ * {@link Path} ("9-13", "22x15x6"). Move numbers like "1." are skipped and
+ * the last word can be the result: "1-0" if black won, "0-1" if white won
+ * and "1/2-1/2" for a draw. PDN collections (see {@link PdnReader}) can be
+ * added too, their games from the start position of the book are used.
+ *
+ * Every step played in the first turns of a game gets a weight of 2 if its
+ * color won, 1 for a draw or an unknown result and nothing if it lost.
+ *
+ * Usage: BookBuilder file [-pattern n] [-turns n] [-records file] [-pdn file]
+ * [-games n] [-depth n] [-noise p] [-threads n]
+ */
+public class BookBuilder {
+
+	/**
+	 * Board pattern of the book
+	 */
+	private final int pattern;
+	/**
+	 * Turns of every game added to the book
+	 */
+	private final int turns;
+	/**
+	 * Weight of every step by the key of its state
+	 */
+	private final Map<Long, Map<Integer, Integer>> entries = new HashMap<>();
+
+	/**
+	 * @param pattern board pattern
+	 * @param turns turns of every game added to the book
+	 */
+	public BookBuilder(int pattern, int turns) {
+		this.pattern = pattern;
+		this.turns = turns;
+	}
+
+	/**
+	 * Add the first turns of a game
+	 * @param history packed steps played from the start position
+	 * @param winner winner color or {@link Match#DRAW} (also if the result is unknown)
+	 */
+	public void add(MoveList history, int winner) {
+		GameState state = GameState.start(pattern);
+		MoveList allowed = new MoveList();
+		int turn = 0;
+		for (int i = 0; i < history.size() && turn < turns; i++) {
+			int color = state.getPlaying();
+			state.generate(allowed);
+			int step = allowed.find(Step.from(history.get(i)), Step.to(history.get(i)));
+			if (step == 0) {
+				throw new IllegalArgumentException("Forbidden step " + new Step(history.get(i)) + " in turn " + (turn + 1));
+			}
+
+			int weight = winner == Match.DRAW ? 1 : winner == color ? 2 : 0;
+			entries.computeIfAbsent(state.getHash(), key -> new HashMap<>()).merge(step, weight, Integer::sum);
+
+			state.make(step);
+			if (state.getPlaying() != color) {
+				turn++;
+			}
+		}
+	}
+
+	/**
+	 * Add the games of a record file
+	 * @param file record file
+	 * @return amount of added games
+	 * @throws IOException if the file can't be read
+	 */
+	public int addRecords(File file) throws IOException {
+		int games = 0;
+		try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+			String line;
+			int number = 0;
+			while ((line = reader.readLine()) != null) {
+				number++;
+				if (line.trim().isEmpty()) {
+					continue;
+				}
+				try {
+					addRecord(line);
+					games++;
+				} catch (IllegalArgumentException e) {
+					throw new IllegalArgumentException(file + ":" + number + ": " + e.getMessage(), e);
+				}
+			}
+		}
+		return games;
+	}
+
+	/**
+	 * Add the games of a PDN collection that start from the start position of
+	 * the book, invalid games are reported and skipped
+	 * @param file PDN collection
+	 * @param threads threads to parse and check the games on
+	 * @return amount of added games
+	 * @throws IOException if the file can't be read
+	 */
+	public int addPdn(File file, int threads) throws IOException {
+		long start = GameState.start(pattern).getHash();
+		int[] games = new int[1];
+		try (PdnReader reader = new PdnReader(new FileInputStream(file))) {
+			reader.forEach(record -> {
+				GameState first = record.getStart();
+				if (first.getVariant() == Variant.STANDARD && first.getHash() == start) {
+					synchronized (this) {
+						add(record.getSteps(), record.getWinner());
+						games[0]++;
+					}
+				}
+			}, e -> System.err.println(file + ": " + e.getMessage()), threads);
+		}
+		return games[0];
+	}
+
+	/**
+	 * Add the game of a record line
+	 * @param line turns and result of a game
+	 */
+	void addRecord(String line) {
+		GameState state = GameState.start(pattern);
+		MoveList allowed = new MoveList();
+		MoveList history = new MoveList();
+		int winner = Match.DRAW;
+
+		for (String word : line.trim().split("\\s+")) {
+			if (word.endsWith(".")) {
+				continue;
+			} else if (word.equals("1-0")) {
+				winner = GameState.BLACK;
+				continue;
+			} else if (word.equals("0-1")) {
+				winner = GameState.WHITE;
+				continue;
+			} else if (word.equals("1/2-1/2") || word.equals("*")) {
+				continue;
+			}
+
+			String[] squares = word.split("[-x]");
+			if (squares.length < 2) {
+				throw new IllegalArgumentException("Turn has to be like 9-13 or 22x15x6: " + word);
+			}
+			for (int i = 1; i < squares.length; i++) {
+				int from = Integer.parseInt(squares[i - 1]) - 1;
+				int to = Integer.parseInt(squares[i]) - 1;
+				state.generate(allowed);
+				int step = allowed.find(from, to);
+				if (step == 0) {
+					throw new IllegalArgumentException("Forbidden turn " + word);
+				}
+				history.add(step);
+				state.make(step);
+			}
+		}
+		add(history, winner);
+	}
+
+	/**
+	 * Add games of search agents against each other, they play random steps
+	 * now and then during the first turns to get different openings. Only a
+	 * few games are played at once, every agent has its own transposition
+	 * table, and every game is added as soon as it is over.
+	 * @param games amount of games
+	 * @param depth search depth of the agents in turns
+	 * @param noise chance of a random step in the first turns
+	 * @param threads threads to play on
+	 */
+	public void addSelfPlay(int games, int depth, double noise, int threads) {
+		GameHost host = new GameHost(threads);
+		Semaphore running = new Semaphore(2 * threads);
+		AtomicReference<Throwable> failed = new AtomicReference<>();
+		// Seeds of the agents (consecutive seeds give similar first random numbers)
+		Random seeds = new Random(games);
+		for (int i = 0; i < games && failed.get() == null; i++) {
+			long blackSeed = seeds.nextLong();
+			long whiteSeed = seeds.nextLong();
+			running.acquireUninterruptibly();
+			Agent black = noisy(new SearchAgent(depth, 0, 1), noise, blackSeed);
+			Agent white = noisy(new SearchAgent(depth, 0, 1), noise, whiteSeed);
+			host.submit(new Match(GameState.start(pattern), black, white)).whenComplete((match, e) -> {
+				try {
+					if (e != null) {
+						failed.compareAndSet(null, e);
+					} else {
+						synchronized (this) {
+							add(match.getHistory(), match.getWinner());
+						}
+					}
+				} finally {
+					running.release();
+				}
+			});
+		}
+
+		// Wait for the last games
+		running.acquireUninterruptibly(2 * threads);
+		host.shutdown();
+		if (failed.get() != null) {
+			throw new IllegalStateException("Self-play game failed", failed.get());
+		}
+	}
+
+	/**
+	 * @param agent agent to play the steps that aren't random
+	 * @param noise chance of a random step in the first turns
+	 * @param seed seed of the random numbers
+	 * @return agent playing random steps now and then
+	 */
+	private Agent noisy(Agent agent, double noise, long seed) {
+		Random random = new Random(seed);
+		MoveList steps = new MoveList();
+		int[] chosen = new int[1];
+		return state -> {
+			// A kill chain has a step for every kill, so this only roughly counts turns
+			if (chosen[0]++ < turns && random.nextDouble() < noise) {
+				state.generate(steps);
+				return steps.get(random.nextInt(steps.size()));
+			}
+			return agent.choose(state);
+		};
+	}
+
+	/**
+	 * @return amount of entries with a weight
+	 */
+	public int size() {
+		int size = 0;
+		for (Map<Integer, Integer> steps : entries.values()) {
+			for (int weight : steps.values()) {
+				if (weight > 0) {
+					size++;
+				}
+			}
+		}
+		return size;
+	}
+
+	/**
+	 * Write the book, steps without weight are left out
+	 * @param file book file
+	 * @throws IOException if the file can't be written
+	 */
+	public void write(File file) throws IOException {
+		long[] keys = new long[entries.size()];
+		int count = 0;
+		for (long key : entries.keySet()) {
+			keys[count++] = key;
+		}
+		Arrays.sort(keys);
+
+		try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+			output.writeInt(OpeningBook.MAGIC);
+			output.writeInt(pattern);
+			output.writeInt(size());
+
+			for (long key : keys) {
+				// Heavier steps first, the order of equal ones is fixed by the step
+				List<Map.Entry<Integer, Integer>> steps = new ArrayList<>(entries.get(key).entrySet());
+				steps.sort((a, b) -> a.getValue().equals(b.getValue()) ? Integer.compare(a.getKey(), b.getKey())
+						: Integer.compare(b.getValue(), a.getValue()));
+				for (Map.Entry<Integer, Integer> step : steps) {
+					if (step.getValue() > 0) {
+						output.writeLong(key);
+						output.writeInt(step.getKey());
+						output.writeInt(step.getValue());
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * @param args command line arguments
+	 * @throws IOException if a file can't be read or written
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length == 0) {
+			System.out.println("Usage: BookBuilder file [-pattern n] [-turns n] [-records file] [-pdn file] [-games n]"
+					+ " [-depth n] [-noise p] [-threads n]");
+			return;
+		}
+
+		File out = new File(args[0]);
+		int pattern = 8;
+		int turns = 10;
+		List<File> records = new ArrayList<>();
+		List<File> pdns = new ArrayList<>();
+		int games = 0;
+		int depth = 5;
+		double noise = 0.2;
+		int threads = Runtime.getRuntime().availableProcessors();
+		for (int i = 1; i < args.length; i++) {
+			switch (args[i]) {
+			case "-pattern":
+				pattern = Integer.parseInt(args[++i]);
+				break;
+			case "-turns":
+				turns = Integer.parseInt(args[++i]);
+				break;
+			case "-records":
+				records.add(new File(args[++i]));
+				break;
+			case "-pdn":
+				pdns.add(new File(args[++i]));
+				break;
+			case "-games":
+				games = Integer.parseInt(args[++i]);
+				break;
+			case "-depth":
+				depth = Integer.parseInt(args[++i]);
+				break;
+			case "-noise":
+				noise = Double.parseDouble(args[++i]);
+				break;
+			case "-threads":
+				threads = Integer.parseInt(args[++i]);
+				break;
+			default:
+				throw new IllegalArgumentException("Unknown option " + args[i]);
+			}
+		}
+
+		BookBuilder builder = new BookBuilder(pattern, turns);
+		for (File file : records) {
+			System.out.println(file + ": " + builder.addRecords(file) + " games");
+		}
+		for (File file : pdns) {
+			System.out.println(file + ": " + builder.addPdn(file, threads) + " games");
+		}
+		if (games > 0) {
+			long start = System.nanoTime();
+			builder.addSelfPlay(games, depth, noise, threads);
+			System.out.println("self-play: " + games + " games in " + (System.nanoTime() - start) / 1000000 + " ms");
+		}
+
+		builder.write(out);
+		System.out.println(out + ": " + builder.size() + " entries");
+	}
+}
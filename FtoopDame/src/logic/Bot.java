@@ -1,18 +1,40 @@
 package logic;
 
-import java.util.Collections;
-import java.util.Iterator;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Random;
-import java.util.stream.Collectors;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
 
-import gui.Board;
+import javafx.application.Platform;
 import settings.Player;
 
 /**
- * Bot with a simple logic for multiple difficulties 
+ * Bot with a simple logic for multiple difficulties.
+ *
+ * The bot thinks on a copy of the game state on a background thread and
+ * runs its move on the JavaFX thread, so the board is never changed by two
+ * threads at once.
  */
-public class Bot extends Thread {
+public class Bot {
+
+	/**
+	 * Minimal time in milliseconds between the turn start and the step without
+	 * a clock (for better user experience)
+	 */
+	static final long MIN_THINK_TIME = 200;
+	/**
+	 * Threads the bots think on
+	 */
+	private static final ExecutorService EXECUTOR = Executors.newCachedThreadPool(runnable -> {
+		Thread thread = new Thread(runnable, "Bot");
+		thread.setDaemon(true);
+		return thread;
+	});
 
 	/**
 	 * The player the bot belongs to
@@ -26,6 +48,69 @@ public class Bot extends Thread {
 	 * Max difficulty for all bots
 	 */
 	final int maxDifficulty = 5;
+	/**
+	 * Time limit for every search in milliseconds
+	 */
+	long timeLimit = 2000;
+	/**
+	 * Table of searched positions, kept for the whole game
+	 */
+	TranspositionTable table;
+	/**
+	 * Pool for the helper searches, null if the bot searches on one thread
+	 */
+	ForkJoinPool pool;
+	/**
+	 * Complete kill chain chosen by the last search and its steps already played
+	 */
+	Path plan;
+	int planned;
+	/**
+	 * Score of the search that chose the kill chain
+	 */
+	private int planScore;
+	/**
+	 * Step the bot is thinking about, null if it isn't thinking
+	 */
+	private CompletableFuture<Choice> thinking;
+	/**
+	 * Running search, stopped if the bot gets cancelled
+	 */
+	private volatile Search search;
+	/**
+	 * If the bot searches during the opponent's turn
+	 */
+	boolean ponder;
+	/**
+	 * Evaluation of quiet states
+	 */
+	Evaluation evaluation;
+	/**
+	 * State and principal variation of the last search, to find the expected reply
+	 */
+	private GameState searched;
+	private int[] pv = new int[0];
+	/**
+	 * Search during the opponent's turn, null if the bot isn't pondering
+	 */
+	private Search ponderSearch;
+	private CompletableFuture<Search.Result> pondering;
+	/**
+	 * Hash of the state the bot is pondering on
+	 */
+	private long ponderHash;
+	/**
+	 * Opening book to play from before searching, null if there is none
+	 */
+	OpeningBook book;
+	/**
+	 * Random numbers to choose steps of the book
+	 */
+	private Random random = new Random();
+	/**
+	 * Results of endgames with few stones, null if there are none
+	 */
+	Tablebase tablebase;
 
 	/**
 	 * @param player the bot belongs to
@@ -34,6 +119,53 @@ public class Bot extends Thread {
 		this.player = player;
 		// Set default difficulty from settings
 		difficulty = (int) player.getBoard().getGame().getSetting("difficulty");
+
+		// Size of the table in MB from settings (default 16 MB)
+		Object hash = player.getBoard().getGame().getSetting("hash");
+		table = new TranspositionTable(hash != null ? (int) hash : 16);
+
+		// Threads to search with from settings (default 1, the only deterministic setting)
+		Object threads = player.getBoard().getGame().getSetting("threads");
+		setThreads(threads != null ? (int) threads : 1);
+
+		// Search during the opponent's turn from settings (default off)
+		Object ponder = player.getBoard().getGame().getSetting("ponder");
+		this.ponder = ponder != null && (boolean) ponder;
+
+		// Evaluation weights from settings, like "man=100,queen=300" (default weights otherwise)
+		Object weights = player.getBoard().getGame().getSetting("weights");
+		evaluation = weights != null ? Evaluation.parse((String) weights) : new Evaluation();
+
+		// Opening book file from settings (default none)
+		Object book = player.getBoard().getGame().getSetting("book");
+		if (book != null) {
+			try {
+				this.book = OpeningBook.open(new File((String) book));
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+
+		// Endgame tablebase directory from settings (default none)
+		Object tablebase = player.getBoard().getGame().getSetting("tablebase");
+		if (tablebase != null) {
+			try {
+				this.tablebase = Tablebase.open(new File((String) tablebase));
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+	}
+
+	/**
+	 * Change the amount of threads the bot searches with
+	 * @param threads threads including the bot thread
+	 */
+	public void setThreads(int threads) {
+		if (pool != null) {
+			pool.shutdown();
+		}
+		pool = threads > 1 ? new ForkJoinPool(threads - 1) : null;
 	}
 
 	/**
@@ -44,117 +176,358 @@ public class Bot extends Thread {
 		this.difficulty = difficulty;
 	}
 
-	/* (non-Javadoc)
-	 * @see java.lang.Thread#run()
-	 */
-	public void run() {
-		while (player.getBoard().isRunning()) {
-			// Synchronize to board lock
-			synchronized (player.getBoard().LOCK) {
-				// Wait if it isnt the current player playing
-				if (!player.isPlaying()) {
-					try {
-						player.getBoard().LOCK.wait();
-					} catch (InterruptedException e) {
-						Thread.currentThread().interrupt();
-					}
-				}
-				
-				if (!interrupted()) {
-					try {
-						// sleep for better user experience 
-						sleep(200);
-						// get moves
-						List<Move> moves = getMoves();
-						if (moves.size() > 0) {
-							// get a random move
-							Random rand = new Random();
-							Move move = moves.get(rand.nextInt(moves.size()));
-							move.run();
-						}
-					} catch (InterruptedException e) {
-						e.printStackTrace();
-					}
-
-				} else {
-					break;
+	/**
+	 * @return max difficulty for all bots
+	 */
+	public int getMaxDifficulty() {
+		return maxDifficulty;
+	}
+
+	/**
+	 * Forget all searched positions, the next search starts without them
+	 */
+	public void clearTable() {
+		table.clear();
+	}
+
+	/**
+	 * Start thinking about the next step, it gets run on the JavaFX thread
+	 * if the game state is still the same by then
+	 */
+	public synchronized void play() {
+		cancel();
+
+		long start = System.nanoTime();
+		GameState snapshot = new GameState(player.getBoard().getState());
+		CompletableFuture<Choice> future = new CompletableFuture<>();
+		thinking = future;
+
+		// Time for this step from the clock, if the game has a time control
+		Clock clock = player.getBoard().getClock();
+		long limit = timeLimit;
+		if (clock != null) {
+			limit = clock.allocate(player.getIndex(), player.getMoveList().size());
+		}
+		long minimum = clock != null ? 0 : MIN_THINK_TIME;
+
+		// Take over the ponder search if the opponent played the expected reply
+		Search ponderHit = null;
+		CompletableFuture<Search.Result> ponderResult = null;
+		if (ponderSearch != null && ponderHash == snapshot.getHash()) {
+			ponderHit = ponderSearch;
+			ponderResult = pondering;
+			ponderHit.setTimeLimit(limit);
+			ponderSearch = null;
+			pondering = null;
+		} else {
+			stopPondering();
+		}
+		Search hit = ponderHit;
+		CompletableFuture<Search.Result> hitResult = ponderResult;
+		long searchTime = limit;
+
+		EXECUTOR.execute(() -> {
+			try {
+				Choice choice = future.isCancelled() ? Choice.NONE : choose(snapshot, searchTime, future, hit, hitResult);
+
+				// The thinking time is at least the minimum, for better user experience
+				long rest = minimum - (System.nanoTime() - start) / 1000000;
+				if (rest > 0) {
+					Thread.sleep(rest);
 				}
+				future.complete(choice);
+			} catch (Throwable e) {
+				future.completeExceptionally(e);
+			}
+		});
+
+		future.whenComplete((choice, e) -> {
+			if (e == null) {
+				Platform.runLater(() -> run(future, snapshot, choice));
+			} else if (!future.isCancelled()) {
+				e.printStackTrace();
+			}
+		});
+	}
+
+	/**
+	 * Stop thinking, the step the bot is thinking about won't be run
+	 */
+	public synchronized void cancel() {
+		if (thinking != null) {
+			thinking.cancel(false);
+			thinking = null;
+		}
+
+		Search running = search;
+		if (running != null) {
+			running.stop();
+		}
+	}
+
+	/**
+	 * Stop thinking and release the helper threads, called when the game ends
+	 */
+	public synchronized void stop() {
+		cancel();
+		stopPondering();
+		if (pool != null) {
+			pool.shutdown();
+		}
+	}
+
+	/**
+	 * Search the state after the reply the last search expected, during the
+	 * opponent's turn
+	 */
+	private synchronized void startPondering() {
+		stopPondering();
+		if (searched == null) {
+			return;
+		}
+
+		// Run the own steps of the principal variation, they have to be played
+		GameState expected = new GameState(searched);
+		int color = expected.getPlaying();
+		int i = 0;
+		while (i < pv.length && expected.getPlaying() == color) {
+			expected.make(pv[i++]);
+		}
+		if (expected.getHash() != player.getBoard().getState().getHash()) {
+			return;
+		}
+
+		// Run the complete reply of the opponent
+		int opponent = expected.getPlaying();
+		while (i < pv.length && expected.getPlaying() == opponent) {
+			expected.make(pv[i++]);
+		}
+		if (expected.getPlaying() == opponent) {
+			return;
+		}
+
+		Search search = new Search(getDepth(), 0, table);
+		search.setEvaluation(evaluation);
+		search.setTablebase(tablebase);
+		ponderSearch = search;
+		ponderHash = expected.getHash();
+		pondering = CompletableFuture.supplyAsync(() -> search.search(expected, pool), EXECUTOR);
+	}
+
+	/**
+	 * Stop pondering, its result is discarded
+	 */
+	private synchronized void stopPondering() {
+		if (ponderSearch != null) {
+			ponderSearch.stop();
+			ponderSearch = null;
+			pondering = null;
+		}
+	}
 
+	/**
+	 * Run a chosen step on the JavaFX thread
+	 * @param future decision the step belongs to
+	 * @param snapshot game state the step was chosen for
+	 * @param choice chosen step and its score
+	 */
+	private void run(CompletableFuture<Choice> future, GameState snapshot, Choice choice) {
+		synchronized (this) {
+			if (future != thinking) {
+				return;
 			}
+			thinking = null;
 		}
 
+		// The game could have ended or changed in the meantime
+		if (choice.step == 0 || !player.getBoard().isRunning() || !player.isPlaying()
+				|| player.getBoard().getState().getHash() != snapshot.getHash()) {
+			return;
+		}
+
+		Move move = new Move(player, new Step(choice.step));
+		move.setScore(choice.score);
+		move.run();
+
+		// Continue a kill chain or think during the opponent's turn
+		if (player.getBoard().isRunning() && player.isPlaying()) {
+			play();
+		} else if (player.getBoard().isRunning() && ponder) {
+			startPondering();
+		}
 	}
 
 	/**
-	 * Logic to derminate the best moves for the given difficulty
+	 * @return search depth in turns for the difficulty
+	 */
+	public int getDepth() {
+		return 2 * difficulty - 1;
+	}
+
+	/**
+	 * Logic to derminate the best moves for the given difficulty, on the
+	 * current thread
 	 * @return list of moves
 	 */
 	public List<Move> getMoves() {
-		// Get all moves for this player
-		List<Move> moves = player.getMoves();
+		List<Move> bestMoves = new ArrayList<>();
 
-		// If there is only one move to play return it
-		if (moves.size() == 1) {
-			return moves;
-		} else {
-			// Start a simulation
-			Simulation simulation = new Simulation(player);
-			// set highestScore to a minimum
-			int highestScore = -9999;
-			for (Move move : moves) {
-				// Simulate every move and update highestScore if needed
-				simulation.simulate(move);
-				highestScore = move.getScore() > highestScore ? move.getScore() : highestScore;
+		Choice choice = choose(new GameState(player.getBoard().getState()), timeLimit, null, null, null);
+		if (choice.step != 0) {
+			Move move = new Move(player, new Step(choice.step));
+			move.setScore(choice.score);
+			bestMoves.add(move);
+		}
+
+		return bestMoves;
+	}
+
+	/**
+	 * Choose the step to play
+	 * @param state copy of the game state, the bot's color is playing
+	 * @param limit time limit of the search in milliseconds
+	 * @param future decision to check for cancellation, null if it can't be cancelled
+	 * @param hit ponder search on this state, null if there is none
+	 * @param hitResult result of the ponder search
+	 * @return chosen step, {@link Choice#NONE} if there is none
+	 */
+	private Choice choose(GameState state, long limit, CompletableFuture<Choice> future, Search hit,
+			CompletableFuture<Search.Result> hitResult) {
+		// Get all steps for this player
+		MoveList steps = new MoveList();
+		state.generate(steps);
+		if (steps.size() == 0) {
+			return Choice.NONE;
+		}
+
+		// Continue the kill chain chosen by the last search without searching again
+		if (plan != null && planned < plan.length() && state.getMovedSquare() >= 0) {
+			int step = plan.get(planned++);
+			if (steps.contains(Step.from(step), Step.to(step))) {
+				return new Choice(step, planScore);
 			}
-			// create final highscore for filter
-			final int highscore = highestScore;
-			simulation.stop();
-
-			// Sort moves in reverse order so highest scores are first
-			Collections.sort(moves, Collections.reverseOrder());
-
-			List<Move> bestMoves;
-			switch (difficulty) {
-			// Hardest difficulty
-			case maxDifficulty:
-				// Get only the moves with the highest score
-				bestMoves = moves.stream().filter(m -> m.getScore() == highscore).collect(Collectors.toList());
-				break;
-			// Above avarage scores
-			case maxDifficulty - 1:
-			case maxDifficulty - 2:
-				// Get only positive moves
-				bestMoves = moves.stream().filter(m -> m.getScore() > 0).collect(Collectors.toList());
-			default:
-				bestMoves = moves;
-				break;
+		}
+		plan = null;
+		planScore = 0;
+
+		// If there is only one step to play return it
+		if (steps.size() == 1) {
+			if (hit != null) {
+				hit.stop();
 			}
+			return new Choice(steps.get(0), 0);
+		}
+
+		// Play the best turn of a known endgame without searching
+		if (tablebase != null && state.getMovedSquare() < 0 && Tablebase.pieces(state) <= tablebase.getPieces()) {
+			Path path = tablebase.best(state);
+			if (path != null) {
+				if (hit != null) {
+					hit.stop();
+				}
+				plan = path;
+				planned = 1;
+				return new Choice(path.get(0), 0);
+			}
+		}
 
-			// if no best moves are found take every move
-			if (bestMoves.size() == 0)
-				bestMoves = moves;
-
-			// if difficulty is lower than 5 get percentage of top moves
-			if (difficulty < maxDifficulty) {
-				int total = bestMoves.size();
-				// calculate ratio for moves to keep based on the difficulty
-				double ratio = 1 - ((difficulty - 1.0) / (maxDifficulty - 1.0));
-				int keep = (int) Math.ceil(total * ratio);
-
-				// remove all unneeded moves
-				Iterator<Move> itr = bestMoves.iterator();
-				int counter = 0;
-				while (itr.hasNext()) {
-					counter++;
-					if (counter > keep) {
-						itr.remove();
-					}
-					itr.next();
+		// Play a known opening step without searching
+		if (book != null) {
+			int step = book.probe(state, steps, random);
+			if (step != 0) {
+				if (hit != null) {
+					hit.stop();
 				}
+				return new Choice(step, 0);
 			}
+		}
+
+		// Search deeper for higher difficulties, or keep the ponder search
+		Search search = hit;
+		if (search == null) {
+			search = new Search(getDepth(), limit, table);
+			search.setEvaluation(evaluation);
+			search.setTablebase(tablebase);
+		}
+		this.search = search;
+		// The search could have been cancelled before it was visible
+		if (future != null && future.isCancelled()) {
+			search.stop();
+			return Choice.NONE;
+		}
+		Search.Result result = hit != null ? hitResult.join() : search.search(state, pool);
+		this.search = null;
 
-			return bestMoves;
+		Step best = result != null ? result.getBest() : null;
+		if (best == null || !steps.contains(best.getFrom(), best.getTo())) {
+			// if no best step is found take a random one
+			return new Choice(steps.get(random.nextInt(steps.size())), 0);
 		}
 
+		if (best.isKill()) {
+			plan = plan(state, result.getPv());
+			planned = 1;
+			planScore = result.getScore();
+		}
+		synchronized (this) {
+			searched = state;
+			pv = result.getSteps();
+		}
+		return new Choice(best.pack(), result.getScore());
+	}
+
+	/**
+	 * Step chosen by the bot and the score of the search that chose it,
+	 * passed from the thinking thread to the JavaFX thread
+	 */
+	private static class Choice {
+
+		/**
+		 * No step to play
+		 */
+		static final Choice NONE = new Choice(0, 0);
+
+		/**
+		 * Packed step, 0 if there is none
+		 */
+		final int step;
+		/**
+		 * Score of the step for the bot, 0 if it wasn't searched
+		 */
+		final int score;
+
+		/**
+		 * @param step packed step
+		 * @param score score of the step
+		 */
+		Choice(int step, int score) {
+			this.step = step;
+			this.score = score;
+		}
+	}
+
+	/**
+	 * Find the complete kill chain that follows the principal variation the longest
+	 * @param state game state the variation starts on
+	 * @param pv principal variation of a search
+	 * @return kill chain starting with the first step of the variation
+	 */
+	private Path plan(GameState state, List<Step> pv) {
+		List<Path> paths = new ArrayList<>();
+		new GameState(state).generatePaths(paths);
+
+		Path plan = null;
+		int matched = 0;
+		for (Path path : paths) {
+			int length = 0;
+			while (length < path.length() && length < pv.size() && pv.get(length).equals(new Step(path.get(length)))) {
+				length++;
+			}
+			if (length > matched) {
+				plan = path;
+				matched = length;
+			}
+		}
+		return plan;
 	}
 }
@@ -0,0 +1,416 @@
+package logic;
+
+import java.util.List;
+
+/**
+ * Move generator of the rule variants (see {@link Variant}), working on the
+ * squares and the {@link Geometry} tables of a state.
+ *
+ * Killed stones of the running chain are put back on the board while the
+ * steps are generated, so they block the way and can't be jumped twice. If
+ * the most stones have to be killed, the kill chains of every stone are
+ * walked depth first and only the steps beginning a best chain are allowed.
+ * A chain that kills every enemy stone ends the walk, and the best remainder
+ * from a square with the same stones killed is only walked once.
+ */
+public class CaptureTree {
+
+	/**
+	 * Value of a turn killed by a queen (italian rules)
+	 */
+	private static final int QUEEN_KILLS = 1 << 23;
+	/**
+	 * Entries of the table of walked remainders
+	 */
+	private static final int TABLE = 1 << 10;
+
+	/**
+	 * Rules to generate the steps for
+	 */
+	private final Variant variant;
+	/**
+	 * Neighbour and ray tables of the board
+	 */
+	private final Geometry geometry;
+	/**
+	 * Stones killed in the chain being walked, they can't be jumped again
+	 */
+	private final boolean[] blocked;
+	/**
+	 * Hash of the stone walking the chain and of the stones it killed
+	 */
+	private long killedHash;
+	/**
+	 * Kills found from a square in every depth of the walk
+	 */
+	private int[][] found = new int[0][];
+	/**
+	 * Enemy stones on the board, killed ones of the running chain included
+	 */
+	private int enemies;
+	/**
+	 * Best value of the steps generated so far
+	 */
+	private int best;
+	/**
+	 * Walked remainders: hash of the square and the killed stones, the most
+	 * stones killed after them and the generation of the entry
+	 */
+	private final long[] keys = new long[TABLE];
+	private final int[] gains = new int[TABLE];
+	private final int[] generations = new int[TABLE];
+	/**
+	 * Generation of the table, increased instead of clearing it
+	 */
+	private int generation = 0;
+
+	/**
+	 * @param variant rules to generate the steps for
+	 * @param geometry neighbour and ray tables of the board
+	 */
+	CaptureTree(Variant variant, Geometry geometry) {
+		this.variant = variant;
+		this.geometry = geometry;
+		this.blocked = new boolean[geometry.rows.length];
+	}
+
+	/**
+	 * Put the stones killed in the running chain back on the board or remove them again
+	 * @param state game state
+	 * @param place if the stones are put back
+	 */
+	private void placeKilled(GameState state, boolean place) {
+		for (int i = state.chainStart; i < state.kills; i++) {
+			int square = state.chain[i] & 0xFF;
+			state.squares[square] = place ? (byte) (state.chain[i] >>> 8) : GameState.EMPTY;
+			blocked[square] = place;
+		}
+	}
+
+	/**
+	 * Generate all allowed steps of a color, with the same contract as
+	 * {@link Bitboard#generate(GameState, int, int[])}
+	 * @param state game state
+	 * @param color color index
+	 * @param steps buffer for the packed steps
+	 * @return amount of steps
+	 */
+	public int generate(GameState state, int color, int[] steps) {
+		byte[] squares = state.squares;
+		boolean chain = color == state.playing && state.movedSquare >= 0;
+
+		placeKilled(state, true);
+		enemies = 0;
+		for (byte piece : squares) {
+			if (piece != GameState.EMPTY && GameState.colorOf(piece) != color) {
+				enemies++;
+			}
+		}
+		best = -1;
+		generation++;
+
+		int count = 0;
+		if (chain) {
+			count = generateKills(state, color, state.movedSquare, steps, count);
+		} else {
+			// Queens first, their chains are usually the longest
+			for (int pass = 0; pass < 2; pass++) {
+				for (int square = 0; square < squares.length; square++) {
+					byte piece = squares[square];
+					if (piece != GameState.EMPTY && GameState.colorOf(piece) == color
+							&& GameState.isQueen(piece) == (pass == 0)) {
+						count = generateKills(state, color, square, steps, count);
+					}
+				}
+			}
+		}
+		placeKilled(state, false);
+		if (count > 0 || chain) {
+			return count;
+		}
+
+		for (int square = 0; square < squares.length; square++) {
+			byte piece = squares[square];
+			if (piece != GameState.EMPTY && GameState.colorOf(piece) == color) {
+				count = generateMoves(state, color, square, steps, count);
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Generate the kill steps of a stone that begin a best chain, steps of
+	 * worse chains already in the buffer are dropped
+	 * @param state game state with the killed stones placed
+	 * @param color color of the stone
+	 * @param from square of the stone
+	 * @param steps buffer for the packed steps
+	 * @param count steps already in the buffer
+	 * @return amount of steps in the buffer
+	 */
+	private int generateKills(GameState state, int color, int from, int[] steps, int count) {
+		byte[] squares = state.squares;
+		byte piece = squares[from];
+		boolean queen = GameState.isQueen(piece);
+
+		// Stones killed so far in the running chain
+		int killed = state.kills - state.chainStart;
+		int queens = 0;
+		int firstQueen = -1;
+		for (int i = state.chainStart; i < state.kills; i++) {
+			if (GameState.isQueen((byte) (state.chain[i] >>> 8))) {
+				firstQueen = firstQueen < 0 ? i - state.chainStart : firstQueen;
+				queens++;
+			}
+		}
+
+		// The stone leaves its square, it may pass it again
+		squares[from] = GameState.EMPTY;
+		killedHash = Zobrist.piece(from, piece);
+		int[] kills = found(0);
+		int amount = kills(state, color, from, queen, kills);
+		for (int i = 0; i < amount; i++) {
+			int enemy = Step.killed(kills[i]);
+			int to = Step.to(kills[i]);
+			boolean queenKilled = GameState.isQueen(squares[enemy]);
+
+			blocked[enemy] = true;
+			killedHash ^= Zobrist.killed(enemy);
+			int value = 0;
+			boolean ends;
+			if (variant.majority) {
+				value = search(state, color, to, queen, killed + 1, queens + (queenKilled ? 1 : 0),
+						firstQueen < 0 && queenKilled ? killed : firstQueen, 1);
+				ends = value >>> 24 == killed + 1;
+				if (variant.italian && queen) {
+					value |= QUEEN_KILLS;
+				}
+			} else {
+				ends = kills(state, color, to, queen, found(1)) == 0;
+			}
+			killedHash ^= Zobrist.killed(enemy);
+			blocked[enemy] = false;
+
+			if (value < best) {
+				continue;
+			}
+			if (value > best) {
+				best = value;
+				count = 0;
+			}
+			boolean transforms = !queen && state.isLastRow(to, color) && (ends || variant.promoteInChain);
+			steps[count++] = kills[i] | (transforms ? Step.TRANSFORM : 0);
+		}
+		squares[from] = piece;
+		return count;
+	}
+
+	/**
+	 * Find the best value of the chains going on from a square
+	 * @param state game state with the killed stones placed
+	 * @param color color of the killing stone
+	 * @param square square the stone landed on
+	 * @param queen if the stone is a queen
+	 * @param killed stones killed so far
+	 * @param queens queens killed so far
+	 * @param firstQueen index of the first queen killed, -1 if none
+	 * @param depth depth of the walk
+	 * @return best value of the chains
+	 */
+	private int search(GameState state, int color, int square, boolean queen, int killed, int queens, int firstQueen,
+			int depth) {
+		int best = value(killed, queens, firstQueen);
+		if (killed == enemies) {
+			return best;
+		}
+
+		// The queens killed count for the italian rules, so the remainders depend on more than the squares
+		int slot = 0;
+		long key = killedHash ^ Zobrist.moved(square);
+		if (!variant.italian) {
+			slot = (int) (key >>> 54) & (TABLE - 1);
+			if (generations[slot] == generation && keys[slot] == key) {
+				return value(killed + gains[slot], 0, -1);
+			}
+		}
+
+		byte[] squares = state.squares;
+		int[] kills = found(depth);
+		int amount = kills(state, color, square, queen, kills);
+		for (int i = 0; i < amount && best >>> 24 < enemies; i++) {
+			int enemy = Step.killed(kills[i]);
+			boolean queenKilled = GameState.isQueen(squares[enemy]);
+
+			blocked[enemy] = true;
+			killedHash ^= Zobrist.killed(enemy);
+			best = Math.max(best, search(state, color, Step.to(kills[i]), queen, killed + 1,
+					queens + (queenKilled ? 1 : 0), firstQueen < 0 && queenKilled ? killed : firstQueen, depth + 1));
+			killedHash ^= Zobrist.killed(enemy);
+			blocked[enemy] = false;
+		}
+
+		if (!variant.italian) {
+			keys[slot] = key;
+			gains[slot] = (best >>> 24) - killed;
+			generations[slot] = generation;
+		}
+		return best;
+	}
+
+	/**
+	 * @param killed stones killed
+	 * @param queens queens killed
+	 * @param firstQueen index of the first queen killed, -1 if none
+	 * @return value of a chain, chains with a higher value have to be preferred
+	 */
+	private int value(int killed, int queens, int firstQueen) {
+		if (!variant.italian) {
+			return killed << 24;
+		}
+		return killed << 24 | queens << 16 | (firstQueen < 0 ? 0 : 255 - firstQueen);
+	}
+
+	/**
+	 * @param depth depth of the walk
+	 * @return buffer for the kills found in the depth
+	 */
+	private int[] found(int depth) {
+		if (depth >= found.length) {
+			int[][] larger = new int[depth + 8][];
+			System.arraycopy(found, 0, larger, 0, found.length);
+			found = larger;
+		}
+		if (found[depth] == null) {
+			found[depth] = new int[4 * geometry.pattern];
+		}
+		return found[depth];
+	}
+
+	/**
+	 * Find the single kills of a stone, without looking at the chains after them
+	 * @param state game state with the killed stones placed
+	 * @param color color of the stone
+	 * @param square square of the stone
+	 * @param queen if the stone is a queen
+	 * @param kills buffer for the packed kill steps
+	 * @return amount of kills
+	 */
+	private int kills(GameState state, int color, int square, boolean queen, int[] kills) {
+		byte[] squares = state.squares;
+		int count = 0;
+
+		if (queen && variant.flying) {
+			// Fly to an enemy and land on any empty field behind it
+			for (int d = 0; d < 4; d++) {
+				int[] ray = geometry.rays[4 * square + d];
+				int i = 0;
+				while (i < ray.length && squares[ray[i]] == GameState.EMPTY) {
+					i++;
+				}
+				if (i + 1 >= ray.length || blocked[ray[i]] || GameState.colorOf(squares[ray[i]]) == color) {
+					continue;
+				}
+				for (int j = i + 1; j < ray.length && squares[ray[j]] == GameState.EMPTY; j++) {
+					kills[count++] = Step.pack(square, ray[j], ray[i]);
+				}
+			}
+			return count;
+		}
+
+		int first = queen || variant.backward ? 0 : Geometry.forward(state, color);
+		int last = queen || variant.backward ? 4 : first + 2;
+		for (int d = first; d < last; d++) {
+			int enemy = geometry.neighbours[4 * square + d];
+			if (enemy < 0 || squares[enemy] == GameState.EMPTY || blocked[enemy]
+					|| GameState.colorOf(squares[enemy]) == color) {
+				continue;
+			}
+			if (variant.italian && !queen && GameState.isQueen(squares[enemy])) {
+				continue;
+			}
+			int to = geometry.neighbours[4 * enemy + d];
+			if (to >= 0 && squares[to] == GameState.EMPTY) {
+				kills[count++] = Step.pack(square, to, enemy);
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Generate the steps without kills of a stone
+	 * @param state game state
+	 * @param color color of the stone
+	 * @param from square of the stone
+	 * @param steps buffer for the packed steps
+	 * @param count steps already in the buffer
+	 * @return amount of steps in the buffer
+	 */
+	private int generateMoves(GameState state, int color, int from, int[] steps, int count) {
+		if (variant.flying || !GameState.isQueen(state.squares[from])) {
+			return geometry.generateMoves(state, color, from, steps, count);
+		}
+
+		// Queens only move one field
+		for (int d = 0; d < 4; d++) {
+			int to = geometry.neighbours[4 * from + d];
+			if (to >= 0 && state.squares[to] == GameState.EMPTY) {
+				steps[count++] = Step.pack(from, to, -1);
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * @param state game state
+	 * @param square square of a stone
+	 * @return if the stone on the square can kill
+	 */
+	boolean canKill(GameState state, int square) {
+		byte piece = state.squares[square];
+		placeKilled(state, true);
+		int count = kills(state, GameState.colorOf(piece), square, GameState.isQueen(piece), found(0));
+		placeKilled(state, false);
+		return count > 0;
+	}
+
+	/**
+	 * @param state game state
+	 * @param color color index
+	 * @return amount of kill steps the color could make, without the chains after them
+	 */
+	int countKills(GameState state, int color) {
+		placeKilled(state, true);
+		int count = 0;
+		for (int square = 0; square < state.squares.length; square++) {
+			byte piece = state.squares[square];
+			if (piece != GameState.EMPTY && GameState.colorOf(piece) == color) {
+				count += kills(state, color, square, GameState.isQueen(piece), found(0));
+			}
+		}
+		placeKilled(state, false);
+		return count;
+	}
+
+	/**
+	 * Add all steps of a stone, without player restrictions
+	 * @param state game state
+	 * @param square square of the stone
+	 * @param list list to add the steps to
+	 */
+	void addSteps(GameState state, int square, List<Step> list) {
+		byte piece = state.squares[square];
+		int color = GameState.colorOf(piece);
+		int[] steps = new int[state.maxSteps()];
+
+		placeKilled(state, true);
+		int count = kills(state, color, square, GameState.isQueen(piece), steps);
+		placeKilled(state, false);
+		count = generateMoves(state, color, square, steps, count);
+
+		for (int i = 0; i < count; i++) {
+			int to = Step.to(steps[i]);
+			boolean transforms = !GameState.isQueen(piece) && state.isLastRow(to, color);
+			list.add(new Step(steps[i] | (transforms ? Step.TRANSFORM : 0)));
+		}
+	}
+}
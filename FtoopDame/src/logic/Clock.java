@@ -0,0 +1,142 @@
+package logic;
+
+/**
+ * Game clock of both colors: a base time with an increment per turn, or a
+ * fixed time for every turn
+ */
+public class Clock {
+
+	/**
+	 * Time kept back for the delay between the search and the step in milliseconds
+	 */
+	static final long MARGIN = 50;
+
+	/**
+	 * Time added after every turn in milliseconds
+	 */
+	private final long increment;
+	/**
+	 * Fixed time for every turn in milliseconds, 0 if the clock has a base time
+	 */
+	private final long moveTime;
+	/**
+	 * Remaining time of both colors in milliseconds (when their turn started)
+	 */
+	private final long[] remaining = new long[2];
+	/**
+	 * Color whose clock is running, -1 if the clock is stopped
+	 */
+	private int running = -1;
+	/**
+	 * Start of the running turn (System.nanoTime)
+	 */
+	private long started;
+
+	/**
+	 * @param base base time of both colors in milliseconds
+	 * @param increment time added after every turn in milliseconds
+	 */
+	public Clock(long base, long increment) {
+		this(base, increment, 0);
+	}
+
+	/**
+	 * @param base base time in milliseconds
+	 * @param increment time added after every turn in milliseconds
+	 * @param moveTime fixed time for every turn in milliseconds, 0 to use the base time
+	 */
+	private Clock(long base, long increment, long moveTime) {
+		this.increment = increment;
+		this.moveTime = moveTime;
+		remaining[GameState.BLACK] = base;
+		remaining[GameState.WHITE] = base;
+	}
+
+	/**
+	 * @param moveTime time for every turn in milliseconds
+	 * @return clock with a fixed time for every turn
+	 */
+	public static Clock perMove(long moveTime) {
+		return new Clock(moveTime, 0, moveTime);
+	}
+
+	/**
+	 * Start the turn of a color
+	 * @param color color index
+	 */
+	public synchronized void start(int color) {
+		if (moveTime > 0) {
+			remaining[color] = moveTime;
+		}
+		running = color;
+		started = System.nanoTime();
+	}
+
+	/**
+	 * End the turn of the running color and start the turn of the other one
+	 */
+	public synchronized void press() {
+		if (running < 0) {
+			return;
+		}
+		remaining[running] = getRemaining(running) + increment;
+		start(1 - running);
+	}
+
+	/**
+	 * Stop the clock, the remaining times are kept
+	 */
+	public synchronized void stop() {
+		if (running >= 0) {
+			remaining[running] = getRemaining(running);
+			running = -1;
+		}
+	}
+
+	/**
+	 * @param color color index
+	 * @return remaining time of the color in milliseconds, negative if the time is over
+	 */
+	public synchronized long getRemaining(int color) {
+		if (color != running) {
+			return remaining[color];
+		}
+		return remaining[color] - (System.nanoTime() - started) / 1000000;
+	}
+
+	/**
+	 * @param color color index
+	 * @return if the time of the color is over
+	 */
+	public boolean isOver(int color) {
+		return getRemaining(color) < 0;
+	}
+
+	/**
+	 * Time the color can search in this turn: a part of the remaining time
+	 * and most of the increment, more if there are many steps to choose from
+	 * @param color color index
+	 * @param steps amount of allowed steps
+	 * @return time limit in milliseconds, at least 1
+	 */
+	public long allocate(int color, int steps) {
+		long left = getRemaining(color) - MARGIN;
+
+		// Nothing to think about
+		if (steps <= 1) {
+			return 1;
+		}
+
+		long budget;
+		if (moveTime > 0) {
+			budget = left;
+		} else {
+			budget = left / 30 + increment * 3 / 4;
+
+			// Complex positions get up to twice the time, simple ones half of it
+			double complexity = Math.max(0.5, Math.min(2, steps / 8.0));
+			budget = Math.min((long) (budget * complexity), left / 4);
+		}
+		return Math.max(1, budget);
+	}
+}
@@ -0,0 +1,117 @@
+package logic;
+
+/**
+ * Static evaluation of a game state with configurable weights.
+ *
+ * The terms up to {@link #CENTER} are kept up to date by the state with every
+ * change, mobility is counted on the bitboards, so evaluating a state never
+ * generates steps.
+ */
+public class Evaluation {
+
+	/**
+	 * Terms of the evaluation
+	 */
+	public static final int MAN = 0;
+	public static final int QUEEN = 1;
+	public static final int ADVANCE = 2;
+	public static final int BACK_RANK = 3;
+	public static final int CENTER = 4;
+	public static final int MOBILITY = 5;
+	public static final int TEMPO = 6;
+	/**
+	 * Amount of terms the state keeps up to date
+	 */
+	static final int INCREMENTAL = 5;
+	/**
+	 * Names of the terms, used to parse weights
+	 */
+	static final String[] NAMES = { "man", "queen", "advance", "backrank", "center", "mobility", "tempo" };
+
+	/**
+	 * Weight of every term: regular stone, queen, row advanced by a regular stone,
+	 * regular stone guarding the back row, stone in the center, empty field a
+	 * stone could move to and the color playing
+	 */
+	private final int[] weights = { 100, 300, 3, 8, 4, 2, 5 };
+
+	/**
+	 * Parse weights like "man=100,queen=300", missing terms keep their default
+	 * @param weights weights by name, separated by commas
+	 * @return evaluation with the weights
+	 */
+	public static Evaluation parse(String weights) {
+		Evaluation evaluation = new Evaluation();
+		for (String weight : weights.split(",")) {
+			if (weight.trim().isEmpty()) {
+				continue;
+			}
+
+			String[] parts = weight.split("=");
+			if (parts.length != 2) {
+				throw new IllegalArgumentException("Weight has to be name=value: " + weight);
+			}
+			evaluation.setWeight(term(parts[0].trim()), Integer.parseInt(parts[1].trim()));
+		}
+		return evaluation;
+	}
+
+	/**
+	 * @param name name of a term
+	 * @return term index
+	 */
+	private static int term(String name) {
+		for (int term = 0; term < NAMES.length; term++) {
+			if (NAMES[term].equalsIgnoreCase(name)) {
+				return term;
+			}
+		}
+		throw new IllegalArgumentException("Unknown evaluation term " + name);
+	}
+
+	/**
+	 * @param term term index
+	 * @param weight weight of the term
+	 */
+	public void setWeight(int term, int weight) {
+		weights[term] = weight;
+	}
+
+	/**
+	 * @param term term index
+	 * @return weight of the term
+	 */
+	public int getWeight(int term) {
+		return weights[term];
+	}
+
+	/**
+	 * @param state state to evaluate
+	 * @return score for the color playing
+	 */
+	public int evaluate(GameState state) {
+		int color = state.getPlaying();
+		int opponent = 1 - color;
+
+		int score = weights[TEMPO];
+		for (int term = 0; term < INCREMENTAL; term++) {
+			score += weights[term] * (state.terms[color][term] - state.terms[opponent][term]);
+		}
+		if (weights[MOBILITY] != 0) {
+			score += weights[MOBILITY] * (state.mobility(color) - state.mobility(opponent));
+		}
+		return score;
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		StringBuilder builder = new StringBuilder();
+		for (int term = 0; term < NAMES.length; term++) {
+			builder.append(term > 0 ? "," : "").append(NAMES[term]).append('=').append(weights[term]);
+		}
+		return builder.toString();
+	}
+}
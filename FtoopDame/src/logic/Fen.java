@@ -0,0 +1,177 @@
+package logic;
+
+/**
+ * Positions as text in the FEN notation of draughts (as used in PDN): the
+ * color playing, then the white and the black stones by square number,
+ * queens marked with a K and consecutive squares given as a range, like
+ * "B:W21-32:B1-12" for the start position on an 8x8 board.
+ *
+ * The squares are numbered from 1 like the dark squares of the state, with
+ * black on the top rows. A kill chain in progress isn't part of a position.
+ */
+public class Fen {
+
+	/**
+	 * Read a position, the board is the smallest one that holds all squares
+	 * (8x8 at least) and the standard rules are used
+	 * @param fen position
+	 * @return state with the position
+	 */
+	public static GameState parse(String fen) {
+		return parse(fen, 0, Variant.STANDARD);
+	}
+
+	/**
+	 * Read a position
+	 * @param fen position
+	 * @param pattern board pattern, 0 for the smallest board that holds all squares
+	 * @param variant rules of the game
+	 * @return state with the position, black moving down
+	 */
+	public static GameState parse(String fen, int pattern, Variant variant) {
+		// Stones as square | piece << 8, placed once the board is known
+		int[] stones = new int[64];
+		int count = 0;
+		int highest = 0;
+		int playing = -1;
+		int color = -1;
+
+		int length = fen.length();
+		int i = 0;
+		while (i < length) {
+			char c = fen.charAt(i);
+			if (c == ' ' || c == '"' || c == '.' || c == ',') {
+				i++;
+			} else if (playing < 0) {
+				playing = color(fen, c);
+				i++;
+			} else if (c == ':') {
+				if (++i >= length) {
+					throw invalid(fen);
+				}
+				color = color(fen, fen.charAt(i++));
+			} else {
+				if (color < 0) {
+					throw invalid(fen);
+				}
+				boolean queen = c == 'K' || c == 'k';
+				if (queen) {
+					i++;
+				}
+
+				// Square or range of squares
+				int first = 0;
+				int start = i;
+				while (i < length && Character.isDigit(fen.charAt(i))) {
+					first = first * 10 + fen.charAt(i++) - '0';
+				}
+				int last = first;
+				if (i < length && fen.charAt(i) == '-') {
+					last = 0;
+					start = ++i;
+					while (i < length && Character.isDigit(fen.charAt(i))) {
+						last = last * 10 + fen.charAt(i++) - '0';
+					}
+				}
+				if (i == start || first < 1 || last < first || last > Zobrist.MAX_SQUARES) {
+					throw invalid(fen);
+				}
+
+				for (int square = first; square <= last; square++) {
+					if (count == stones.length) {
+						int[] larger = new int[2 * count];
+						System.arraycopy(stones, 0, larger, 0, count);
+						stones = larger;
+					}
+					stones[count++] = square - 1 | GameState.piece(color, queen) << 8;
+				}
+				highest = Math.max(highest, last);
+			}
+		}
+		if (playing < 0) {
+			throw invalid(fen);
+		}
+
+		if (pattern == 0) {
+			pattern = 8;
+			while (pattern * pattern / 2 < highest) {
+				pattern += 2;
+			}
+		}
+		GameState state = new GameState(pattern, variant);
+		if (highest > state.getSquares()) {
+			throw new IllegalArgumentException("Square " + highest + " isn't on a " + pattern + "x" + pattern + " board");
+		}
+		for (int s = 0; s < count; s++) {
+			int square = stones[s] & 0xFF;
+			byte piece = (byte) (stones[s] >>> 8);
+			// Every square once, regular stones on the last row would have become queens
+			if (state.getPiece(square) != GameState.EMPTY
+					|| piece == GameState.BLACK_MAN && state.getY(square) == pattern - 1
+					|| piece == GameState.WHITE_MAN && state.getY(square) == 0) {
+				throw invalid(fen);
+			}
+			state.setPiece(square, piece);
+		}
+		state.setPlaying(playing);
+		return state;
+	}
+
+	/**
+	 * @param fen position
+	 * @param c letter of a color
+	 * @return color index
+	 */
+	private static int color(String fen, char c) {
+		switch (c) {
+		case 'B':
+		case 'b':
+			return GameState.BLACK;
+		case 'W':
+		case 'w':
+			return GameState.WHITE;
+		default:
+			throw invalid(fen);
+		}
+	}
+
+	/**
+	 * @param fen position
+	 * @return exception for a position that can't be read
+	 */
+	private static IllegalArgumentException invalid(String fen) {
+		return new IllegalArgumentException("Invalid position " + fen);
+	}
+
+	/**
+	 * Write a position, turned so black is on the top rows
+	 * @param state game state
+	 * @return position
+	 */
+	public static String write(GameState state) {
+		int last = state.getSquares() - 1;
+		boolean rotated = OpeningBook.isRotated(state);
+
+		StringBuilder builder = new StringBuilder(8 + 4 * last);
+		builder.append(state.getPlaying() == GameState.BLACK ? 'B' : 'W');
+		for (int color = GameState.WHITE; color >= GameState.BLACK; color--) {
+			builder.append(':').append(color == GameState.BLACK ? 'B' : 'W');
+			boolean first = true;
+			for (int square = 0; square <= last; square++) {
+				byte piece = state.getPiece(rotated ? last - square : square);
+				if (piece == GameState.EMPTY || GameState.colorOf(piece) != color) {
+					continue;
+				}
+				if (!first) {
+					builder.append(',');
+				}
+				if (GameState.isQueen(piece)) {
+					builder.append('K');
+				}
+				builder.append(square + 1);
+				first = false;
+			}
+		}
+		return builder.toString();
+	}
+}
@@ -0,0 +1,164 @@
+package logic;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Runs many headless matches at once on a few threads.
+ *
+ * A match plays one turn per task and is queued again afterwards, so all
+ * matches make progress and no thread waits for a match.
+ *
+ * Usage: GameHost [-games n] [-threads n] [-running n] [-depth n] [-time ms]
+ * [-hash mb]
+ */
+public class GameHost {
+
+	/**
+	 * Threads the matches are played on
+	 */
+	private final ExecutorService executor;
+
+	/**
+	 * @param threads amount of threads
+	 */
+	public GameHost(int threads) {
+		executor = Executors.newFixedThreadPool(threads, runnable -> {
+			Thread thread = new Thread(runnable, "GameHost");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	/**
+	 * Play a match
+	 * @param match match to play, it must not be played anywhere else
+	 * @return the match, completed when it is over
+	 */
+	public CompletableFuture<Match> submit(Match match) {
+		CompletableFuture<Match> future = new CompletableFuture<>();
+		executor.execute(() -> turn(match, future));
+		return future;
+	}
+
+	/**
+	 * Play a turn and queue the match again if it continues
+	 * @param match match to play
+	 * @param future future of the match
+	 */
+	private void turn(Match match, CompletableFuture<Match> future) {
+		if (future.isCancelled()) {
+			return;
+		}
+
+		try {
+			if (match.step()) {
+				executor.execute(() -> turn(match, future));
+			} else {
+				future.complete(match);
+			}
+		} catch (RuntimeException e) {
+			future.completeExceptionally(e);
+		}
+	}
+
+	/**
+	 * Stop the threads, matches that are not over yet are dropped
+	 */
+	public void shutdown() {
+		executor.shutdownNow();
+	}
+
+	/**
+	 * Play a batch of matches between two search agents, every match starts
+	 * with two random turns. The agents (and their transposition tables) of a
+	 * match are created when it starts, at most -running matches at once.
+	 * @param args command line arguments
+	 */
+	public static void main(String[] args) {
+		int games = 100;
+		int threads = Runtime.getRuntime().availableProcessors();
+		int running = 0;
+		int depth = 3;
+		long time = 0;
+		int hash = 0;
+		for (int i = 0; i < args.length; i++) {
+			switch (args[i]) {
+			case "-games":
+				games = Integer.parseInt(args[++i]);
+				break;
+			case "-threads":
+				threads = Integer.parseInt(args[++i]);
+				break;
+			case "-running":
+				running = Integer.parseInt(args[++i]);
+				break;
+			case "-depth":
+				depth = Integer.parseInt(args[++i]);
+				break;
+			case "-time":
+				time = Long.parseLong(args[++i]);
+				break;
+			case "-hash":
+				hash = Integer.parseInt(args[++i]);
+				break;
+			default:
+				throw new IllegalArgumentException("Unknown option " + args[i]);
+			}
+		}
+
+		if (running <= 0) {
+			running = 2 * threads;
+		}
+
+		GameHost host = new GameHost(threads);
+		Semaphore permits = new Semaphore(running);
+		AtomicReference<Throwable> failed = new AtomicReference<>();
+		int[] results = new int[3];
+		long[] turns = new long[1];
+		long start = System.nanoTime();
+		for (int i = 0; i < games && failed.get() == null; i++) {
+			GameState opening = GameState.start(8);
+			Agent random = Agent.random(i);
+			for (int turn = 0; turn < 2; turn++) {
+				int color = opening.getPlaying();
+				while (opening.getPlaying() == color) {
+					opening.make(random.choose(opening));
+				}
+			}
+
+			permits.acquireUninterruptibly();
+			Agent black = new SearchAgent(depth, time, hash);
+			Agent white = new SearchAgent(depth, time, hash);
+			host.submit(new Match(opening, black, white)).whenComplete((match, e) -> {
+				try {
+					if (e != null) {
+						failed.compareAndSet(null, e);
+					} else {
+						synchronized (results) {
+							results[match.getWinner() + 1]++;
+							turns[0] += match.getTurns();
+						}
+					}
+				} finally {
+					permits.release();
+				}
+			});
+		}
+
+		// Wait for the last matches
+		permits.acquireUninterruptibly(running);
+		long millis = (System.nanoTime() - start) / 1000000;
+		host.shutdown();
+		if (failed.get() != null) {
+			throw new IllegalStateException("Match failed", failed.get());
+		}
+
+		System.out.println("games " + games + ", black " + results[GameState.BLACK + 1] + ", white "
+				+ results[GameState.WHITE + 1] + ", draws " + results[Match.DRAW + 1]);
+		System.out.println("turns " + turns[0] + " in " + millis + " ms");
+	}
+}
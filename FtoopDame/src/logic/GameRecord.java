@@ -0,0 +1,365 @@
+package logic;
+
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Record of a game in Portable Draughts Notation (PDN): tags, the start
+ * position and the turns played, written like "1. 9-13 22-18 2. 13x22".
+ *
+ * The record keeps black on the top rows like the square numbers of PDN, a
+ * state with black moving up is turned when the record is created. Results
+ * are written from the view of the color moving first in the variant ("1-0"
+ * if it won), that is black for the standard and the pool rules and white
+ * for the others. Records are read with a {@link PdnReader}.
+ */
+public class GameRecord {
+
+	/**
+	 * Result of a game that isn't finished or whose result is unknown
+	 */
+	public static final String UNKNOWN = "*";
+
+	/**
+	 * Tags by name in the order they are written (result, game type and
+	 * position are written from the record)
+	 */
+	private final Map<String, String> tags = new LinkedHashMap<>();
+	/**
+	 * Start position, black moving down
+	 */
+	private final GameState start;
+	/**
+	 * Position after the turns
+	 */
+	final GameState current;
+	/**
+	 * Turns played
+	 */
+	private final List<Path> turns = new ArrayList<>();
+	/**
+	 * If the steps added are turned (black moves up on the recorded state)
+	 */
+	private final boolean rotated;
+	/**
+	 * Result like "1-0"
+	 */
+	private String result = UNKNOWN;
+	/**
+	 * Byte offset of the game in the collection it was read from, -1 if it wasn't read
+	 */
+	long offset = -1;
+
+	/**
+	 * @param start start position, black moving down
+	 */
+	public GameRecord(GameState start) {
+		this(start, false);
+	}
+
+	/**
+	 * @param start start position, black moving down
+	 * @param rotated if the steps added are turned
+	 */
+	private GameRecord(GameState start, boolean rotated) {
+		this.start = new GameState(start);
+		this.current = new GameState(start);
+		this.rotated = rotated;
+	}
+
+	/**
+	 * Record a game played on a state with any color index as black and in
+	 * any direction, the steps added later are the ones played on the state
+	 * @param state position at the start of the record, not in a kill chain
+	 * @param black color index of the black stones
+	 * @return record
+	 */
+	public static GameRecord of(GameState state, int black) {
+		int last = state.getSquares() - 1;
+		boolean rotated = state.getDirection(black) < 0;
+
+		GameState start = new GameState(state.getPattern(), state.getVariant());
+		for (int square = 0; square <= last; square++) {
+			byte piece = state.getPiece(square);
+			if (piece != GameState.EMPTY) {
+				int color = GameState.colorOf(piece) == black ? GameState.BLACK : GameState.WHITE;
+				start.setPiece(rotated ? last - square : square, GameState.piece(color, GameState.isQueen(piece)));
+			}
+		}
+		start.setPlaying(state.getPlaying() == black ? GameState.BLACK : GameState.WHITE);
+
+		GameRecord record = new GameRecord(start, rotated);
+		record.setTag("Event", "Dame");
+		record.setTag("Date", new SimpleDateFormat("yyyy.MM.dd").format(new Date()));
+		return record;
+	}
+
+	/**
+	 * @return byte offset of the game in the collection it was read from, -1 if it wasn't read
+	 */
+	public long getOffset() {
+		return offset;
+	}
+
+	/**
+	 * @param name name of the tag
+	 * @param value value of the tag
+	 */
+	public void setTag(String name, String value) {
+		tags.put(name, value);
+	}
+
+	/**
+	 * @param name name of the tag
+	 * @return value of the tag, null if it isn't set
+	 */
+	public String getTag(String name) {
+		return tags.get(name);
+	}
+
+	/**
+	 * @return start position, black moving down
+	 */
+	public GameState getStart() {
+		return new GameState(start);
+	}
+
+	/**
+	 * @return position after the turns, black moving down
+	 */
+	public GameState getCurrent() {
+		return new GameState(current);
+	}
+
+	/**
+	 * @return turns played
+	 */
+	public List<Path> getTurns() {
+		return Collections.unmodifiableList(turns);
+	}
+
+	/**
+	 * @return all steps played, one after another
+	 */
+	public MoveList getSteps() {
+		MoveList steps = new MoveList();
+		for (Path turn : turns) {
+			for (int i = 0; i < turn.length(); i++) {
+				steps.add(turn.get(i));
+			}
+		}
+		return steps;
+	}
+
+	/**
+	 * Add a step played, a step in a kill chain is added to the turn of the chain
+	 * @param step packed step, turned if the record was created from a turned state
+	 */
+	public void add(int step) {
+		if (rotated) {
+			step = OpeningBook.rotate(step, current.getSquares());
+		}
+
+		if (current.getMovedSquare() >= 0 && !turns.isEmpty()) {
+			Path last = turns.remove(turns.size() - 1);
+			int[] steps = new int[last.length() + 1];
+			System.arraycopy(last.steps, 0, steps, 0, last.length());
+			steps[last.length()] = step;
+			turns.add(new Path(steps));
+		} else {
+			turns.add(new Path(new int[] { step }));
+		}
+		current.make(step);
+	}
+
+	/**
+	 * Add a complete turn
+	 * @param turn turn of the color playing
+	 */
+	public void add(Path turn) {
+		for (int i = 0; i < turn.length(); i++) {
+			add(turn.get(i));
+		}
+	}
+
+	/**
+	 * @return result like "1-0", {@link #UNKNOWN} if the game isn't finished
+	 */
+	public String getResult() {
+		return result;
+	}
+
+	/**
+	 * @param result result like "1-0"
+	 */
+	public void setResult(String result) {
+		this.result = result;
+	}
+
+	/**
+	 * @param winner winner color or {@link Match#DRAW}
+	 */
+	public void setWinner(int winner) {
+		int first = first(start.getVariant());
+		result = winner == Match.DRAW ? "1/2-1/2" : winner == first ? "1-0" : "0-1";
+	}
+
+	/**
+	 * @return winner color, {@link Match#DRAW} for a draw or an unknown result
+	 */
+	public int getWinner() {
+		int first = first(start.getVariant());
+		switch (result) {
+		case "1-0":
+		case "2-0":
+			return first;
+		case "0-1":
+		case "0-2":
+			return 1 - first;
+		default:
+			return Match.DRAW;
+		}
+	}
+
+	/**
+	 * @param variant rules of the game
+	 * @return color moving first in the start position of the variant
+	 */
+	static int first(Variant variant) {
+		return variant == Variant.STANDARD || variant == Variant.POOL ? GameState.BLACK : GameState.WHITE;
+	}
+
+	/**
+	 * @param variant rules of the game
+	 * @return number of the variant in the GameType tag
+	 */
+	static int gameType(Variant variant) {
+		switch (variant) {
+		case INTERNATIONAL:
+			return 20;
+		case ITALIAN:
+			return 22;
+		case POOL:
+			return 23;
+		case RUSSIAN:
+			return 25;
+		case BRAZILIAN:
+			return 26;
+		default:
+			// English checkers, the same as the standard rules until the first queens appear
+			return 21;
+		}
+	}
+
+	/**
+	 * @param gameType number of the variant in the GameType tag
+	 * @return variant, the standard rules for unknown numbers
+	 */
+	static Variant variant(int gameType) {
+		for (Variant variant : Variant.values()) {
+			if (gameType(variant) == gameType) {
+				return variant;
+			}
+		}
+		return Variant.STANDARD;
+	}
+
+	/**
+	 * @param variant rules of the game
+	 * @param pattern board pattern
+	 * @return start position of a game without a position tag
+	 */
+	static GameState defaultStart(Variant variant, int pattern) {
+		GameState start = GameState.start(pattern, variant);
+		start.setPlaying(first(variant));
+		return start;
+	}
+
+	/**
+	 * Write the record in PDN
+	 * @param out destination
+	 * @throws IOException if it can't be written
+	 */
+	public void write(Appendable out) throws IOException {
+		Variant variant = start.getVariant();
+		int pattern = start.getPattern();
+
+		for (Map.Entry<String, String> tag : tags.entrySet()) {
+			writeTag(out, tag.getKey(), tag.getValue());
+		}
+		writeTag(out, "Result", result);
+		writeTag(out, "GameType", pattern == variant.getPattern() ? String.valueOf(gameType(variant))
+				: gameType(variant) + "," + pattern + "," + pattern);
+		if (start.getHash() != defaultStart(variant, pattern).getHash()) {
+			writeTag(out, "FEN", Fen.write(start));
+		}
+		out.append('\n');
+
+		// Move numbers count the turns of both colors, lines are wrapped
+		int first = first(variant);
+		int number = 1;
+		int line = 0;
+		int playing = start.getPlaying();
+		StringBuilder word = new StringBuilder();
+		for (int i = 0; i <= turns.size(); i++) {
+			word.setLength(0);
+			if (i == turns.size()) {
+				word.append(result);
+			} else {
+				if (playing == first) {
+					word.append(number).append(". ");
+				} else if (i == 0) {
+					word.append(number).append("... ");
+				}
+				word.append(turns.get(i));
+				if (playing != first) {
+					number++;
+				}
+				playing = 1 - playing;
+			}
+
+			if (line > 0 && line + 1 + word.length() > 79) {
+				out.append('\n');
+				line = 0;
+			} else if (line > 0) {
+				out.append(' ');
+				line++;
+			}
+			out.append(word);
+			line += word.length();
+		}
+		out.append("\n\n");
+	}
+
+	/**
+	 * @param out destination
+	 * @param name name of the tag
+	 * @param value value of the tag
+	 * @throws IOException if it can't be written
+	 */
+	private static void writeTag(Appendable out, String name, String value) throws IOException {
+		out.append('[').append(name).append(" \"").append(value.replace("\\", "\\\\").replace("\"", "\\\""))
+				.append("\"]\n");
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		StringBuilder builder = new StringBuilder();
+		try {
+			write(builder);
+		} catch (IOException e) {
+			// A string builder doesn't throw
+			e.printStackTrace();
+		}
+		return builder.toString();
+	}
+}
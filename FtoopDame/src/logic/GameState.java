@@ -0,0 +1,758 @@
+package logic;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Headless model of the game, used for every move calculation.
+ * The gui board only displays this state.
+ *
+ * Only dark fields are stored, numbered row by row from the top left
+ * (0 to pattern * pattern / 2 - 1).
+ */
+public class GameState {
+
+	/**
+	 * Color index of the black player (black always starts)
+	 */
+	public static final int BLACK = 0;
+	/**
+	 * Color index of the white player
+	 */
+	public static final int WHITE = 1;
+
+	/**
+	 * Values stored on the squares
+	 */
+	public static final byte EMPTY = 0;
+	public static final byte BLACK_MAN = 1;
+	public static final byte BLACK_QUEEN = 2;
+	public static final byte WHITE_MAN = 3;
+	public static final byte WHITE_QUEEN = 4;
+
+	/**
+	 * Pattern of the board (8x8 = 64 fields)
+	 */
+	final int pattern;
+	/**
+	 * Dark squares per row
+	 */
+	final int width;
+	/**
+	 * Stones on every dark square
+	 */
+	final byte[] squares;
+	/**
+	 * Bitboard layout, null if the board doesn't fit into a long
+	 */
+	final Bitboard bitboard;
+	/**
+	 * Neighbour and ray tables, used if the board doesn't fit into a long
+	 */
+	final Geometry geometry;
+	/**
+	 * Rules of the game
+	 */
+	final Variant variant;
+	/**
+	 * Step generator of the variant, null for the standard rules
+	 */
+	final CaptureTree captures;
+	/**
+	 * Stones killed in kill chains (square | stone << 8), the ones from
+	 * chainStart on belong to the running chain and still block their squares
+	 */
+	final int[] chain;
+	int kills = 0;
+	int chainStart = 0;
+	/**
+	 * Bitboards of the regular stones and queens for every color
+	 */
+	final long[] men = new long[2];
+	final long[] queens = new long[2];
+	/**
+	 * Playing direction for every color (1 = down, -1 = up)
+	 */
+	final int[] dir = { 1, -1 };
+	/**
+	 * Color playing
+	 */
+	int playing = BLACK;
+	/**
+	 * Square of the stone in the middle of a kill chain, -1 if none
+	 */
+	int movedSquare = -1;
+	/**
+	 * Zobrist hash, updated with every change
+	 */
+	long hash;
+	/**
+	 * Evaluation terms of every color, updated with every change (see {@link Evaluation})
+	 */
+	final int[][] terms = new int[2][Evaluation.INCREMENTAL];
+	/**
+	 * Counter of changes, cached steps of the state are valid while it stays the same
+	 */
+	long version = 0;
+
+	/**
+	 * @param pattern board pattern
+	 */
+	public GameState(int pattern) {
+		this(pattern, Variant.STANDARD);
+	}
+
+	/**
+	 * @param pattern board pattern
+	 * @param variant rules of the game
+	 */
+	public GameState(int pattern, Variant variant) {
+		this.pattern = pattern;
+		this.width = pattern / 2;
+		this.squares = new byte[pattern * width];
+		this.bitboard = Bitboard.of(pattern);
+		this.geometry = Geometry.of(pattern);
+		this.variant = variant;
+		this.captures = variant == Variant.STANDARD ? null : new CaptureTree(variant, geometry);
+		this.chain = new int[squares.length];
+	}
+
+	/**
+	 * Create the start position: black starts on the top rows and moves down
+	 * @param pattern board pattern
+	 * @return start position
+	 */
+	public static GameState start(int pattern) {
+		return start(pattern, Variant.STANDARD);
+	}
+
+	/**
+	 * Create the start position of a variant: black starts on the top rows and moves down
+	 * @param pattern board pattern
+	 * @param variant rules of the game
+	 * @return start position
+	 */
+	public static GameState start(int pattern, Variant variant) {
+		GameState state = new GameState(pattern, variant);
+		int stones = (pattern / 2 - 1) * pattern / 2;
+		for (int square = 0; square < stones; square++) {
+			state.setPiece(square, BLACK_MAN);
+			state.setPiece(state.squares.length - 1 - square, WHITE_MAN);
+		}
+		return state;
+	}
+
+	/**
+	 * Copy a state
+	 * @param state state to copy
+	 */
+	public GameState(GameState state) {
+		this.pattern = state.pattern;
+		this.width = state.width;
+		this.squares = state.squares.clone();
+		this.bitboard = state.bitboard;
+		this.geometry = state.geometry;
+		this.variant = state.variant;
+		this.captures = variant == Variant.STANDARD ? null : new CaptureTree(variant, geometry);
+		this.chain = state.chain.clone();
+		this.kills = state.kills;
+		this.chainStart = state.chainStart;
+		System.arraycopy(state.men, 0, men, 0, 2);
+		System.arraycopy(state.queens, 0, queens, 0, 2);
+		this.dir[BLACK] = state.dir[BLACK];
+		this.dir[WHITE] = state.dir[WHITE];
+		this.playing = state.playing;
+		this.movedSquare = state.movedSquare;
+		this.hash = state.hash;
+		System.arraycopy(state.terms[BLACK], 0, terms[BLACK], 0, Evaluation.INCREMENTAL);
+		System.arraycopy(state.terms[WHITE], 0, terms[WHITE], 0, Evaluation.INCREMENTAL);
+	}
+
+	/**
+	 * @return rules of the game
+	 */
+	public Variant getVariant() {
+		return variant;
+	}
+
+	/**
+	 * @return board pattern
+	 */
+	public int getPattern() {
+		return pattern;
+	}
+
+	/**
+	 * @return amount of dark squares
+	 */
+	public int getSquares() {
+		return squares.length;
+	}
+
+	/**
+	 * @param x position on the board
+	 * @param y position on the board
+	 * @return square index or -1 if the field isn't a dark field on the board
+	 */
+	public int square(int x, int y) {
+		if (x < 0 || y < 0 || x >= pattern || y >= pattern || (x + y) % 2 == 0) {
+			return -1;
+		}
+		return y * width + x / 2;
+	}
+
+	/**
+	 * @param square square index
+	 * @return x position on the board
+	 */
+	public int getX(int square) {
+		int y = square / width;
+		return 2 * (square % width) + (y % 2 == 0 ? 1 : 0);
+	}
+
+	/**
+	 * @param square square index
+	 * @return y position on the board
+	 */
+	public int getY(int square) {
+		return square / width;
+	}
+
+	/**
+	 * @param square square index
+	 * @return stone on the square
+	 */
+	public byte getPiece(int square) {
+		return squares[square];
+	}
+
+	/**
+	 * @param square square index
+	 * @param piece stone to place
+	 */
+	public void setPiece(int square, byte piece) {
+		if (bitboard != null) {
+			long bit = bitboard.bit(square);
+			byte old = squares[square];
+			if (old != EMPTY) {
+				if (isQueen(old)) {
+					queens[colorOf(old)] &= ~bit;
+				} else {
+					men[colorOf(old)] &= ~bit;
+				}
+			}
+			if (piece != EMPTY) {
+				if (isQueen(piece)) {
+					queens[colorOf(piece)] |= bit;
+				} else {
+					men[colorOf(piece)] |= bit;
+				}
+			}
+		}
+		hash ^= Zobrist.piece(square, squares[square]) ^ Zobrist.piece(square, piece);
+		if (squares[square] != EMPTY) {
+			addTerms(square, squares[square], -1);
+		}
+		if (piece != EMPTY) {
+			addTerms(square, piece, 1);
+		}
+		squares[square] = piece;
+		version++;
+	}
+
+	/**
+	 * Add or remove the evaluation terms of a stone
+	 * @param square square of the stone
+	 * @param piece value of the stone
+	 * @param sign 1 to add the stone, -1 to remove it
+	 */
+	private void addTerms(int square, byte piece, int sign) {
+		int[] color = terms[colorOf(piece)];
+		int y = getY(square);
+
+		if (isQueen(piece)) {
+			color[Evaluation.QUEEN] += sign;
+		} else {
+			// Rows advanced from the own back row
+			int row = dir[colorOf(piece)] == 1 ? y : pattern - 1 - y;
+			color[Evaluation.MAN] += sign;
+			color[Evaluation.ADVANCE] += sign * row;
+			if (row == 0) {
+				color[Evaluation.BACK_RANK] += sign;
+			}
+		}
+
+		// The four rows and columns in the middle of the board
+		int x = getX(square);
+		int low = pattern / 2 - 2;
+		if (x >= low && x <= low + 3 && y >= low && y <= low + 3) {
+			color[Evaluation.CENTER] += sign;
+		}
+	}
+
+	/**
+	 * Count the empty fields next to the stones of a color they could move to
+	 * @param color color index
+	 * @return mobility of the color
+	 */
+	public int mobility(int color) {
+		if (bitboard != null) {
+			return bitboard.mobility(this, color);
+		}
+		return geometry.mobility(this, color);
+	}
+
+	/**
+	 * @return size of a buffer that can hold all steps of a color
+	 */
+	public int maxSteps() {
+		return squares.length * 2 * (pattern - 1);
+	}
+
+	/**
+	 * @param color color of the stone
+	 * @param queen if the stone is a queen
+	 * @return value of the stone
+	 */
+	public static byte piece(int color, boolean queen) {
+		return (byte) (1 + color * 2 + (queen ? 1 : 0));
+	}
+
+	/**
+	 * @param piece value of the stone
+	 * @return color of the stone
+	 */
+	public static int colorOf(byte piece) {
+		return (piece - 1) / 2;
+	}
+
+	/**
+	 * @param piece value of the stone
+	 * @return if the stone is a queen
+	 */
+	public static boolean isQueen(byte piece) {
+		return piece != EMPTY && (piece - 1) % 2 == 1;
+	}
+
+	/**
+	 * @param color color index
+	 * @param dir playing direction of the color
+	 */
+	public void setDirection(int color, int dir) {
+		this.dir[color] = dir;
+		version++;
+
+		// Advancement and back row depend on the direction
+		Arrays.fill(terms[color], 0);
+		for (int square = 0; square < squares.length; square++) {
+			if (squares[square] != EMPTY && colorOf(squares[square]) == color) {
+				addTerms(square, squares[square], 1);
+			}
+		}
+	}
+
+	/**
+	 * @param color color index
+	 * @return playing direction of the color
+	 */
+	public int getDirection(int color) {
+		return dir[color];
+	}
+
+	/**
+	 * @param color color index
+	 * @param term evaluation term up to {@link Evaluation#CENTER}
+	 * @return value of the term for the color, kept up to date with every change
+	 */
+	public int getTerm(int color, int term) {
+		return terms[color][term];
+	}
+
+	/**
+	 * @return color playing
+	 */
+	public int getPlaying() {
+		return playing;
+	}
+
+	/**
+	 * @param color color playing
+	 */
+	public void setPlaying(int color) {
+		if (playing != color) {
+			hash ^= Zobrist.WHITE;
+		}
+		this.playing = color;
+		setMovedSquare(-1);
+		endChain();
+	}
+
+	/**
+	 * Keep a killed stone on its square until the kill chain is complete
+	 * @param square square of the killed stone
+	 * @param piece value of the killed stone
+	 */
+	private void addKilled(int square, byte piece) {
+		chain[kills++] = square | piece << 8;
+		hash ^= Zobrist.killed(square);
+	}
+
+	/**
+	 * Complete the running kill chain, its killed stones don't block anymore
+	 */
+	private void endChain() {
+		setChainStart(kills);
+	}
+
+	/**
+	 * @param start index of the first stone killed in the running chain
+	 */
+	private void setChainStart(int start) {
+		// Killed stones between the old and the new start change between blocking and gone
+		for (int i = Math.min(start, chainStart); i < Math.max(start, chainStart); i++) {
+			hash ^= Zobrist.killed(chain[i] & 0xFF);
+		}
+		chainStart = start;
+		version++;
+	}
+
+	/**
+	 * @param square square of the stone that has to continue killing, -1 if none
+	 */
+	private void setMovedSquare(int square) {
+		if (movedSquare >= 0) {
+			hash ^= Zobrist.moved(movedSquare);
+		}
+		if (square >= 0) {
+			hash ^= Zobrist.moved(square);
+		}
+		movedSquare = square;
+		version++;
+	}
+
+	/**
+	 * @return Zobrist hash of the state
+	 */
+	public long getHash() {
+		return hash;
+	}
+
+	/**
+	 * @return square of the stone that has to continue killing, -1 if none
+	 */
+	public int getMovedSquare() {
+		return movedSquare;
+	}
+
+	/**
+	 * @param square square of the stone
+	 * @param color color of the stone
+	 * @return if a stone standing on this square has reached the last row
+	 */
+	public boolean isLastRow(int square, int color) {
+		int y = getY(square);
+		return dir[color] == 1 ? y == pattern - 1 : y == 0;
+	}
+
+	/**
+	 * Add all steps of a stone, without player restrictions
+	 * @param square square of the stone
+	 * @param steps list to add the steps to
+	 */
+	public void addSteps(int square, List<Step> steps) {
+		byte piece = squares[square];
+		if (piece == EMPTY) {
+			return;
+		}
+		if (captures != null) {
+			captures.addSteps(this, square, steps);
+			return;
+		}
+
+		int color = colorOf(piece);
+		int x = getX(square);
+		int y = getY(square);
+
+		for (int dy = -1; dy <= 1; dy += 2) {
+			// Regular stones only move in their playing direction
+			if (!isQueen(piece) && dy != dir[color]) {
+				continue;
+			}
+			for (int dx = -1; dx <= 1; dx += 2) {
+				int maxDistance = isQueen(piece) ? pattern : 1;
+				int enemy = -1;
+
+				for (int i = 1; i <= maxDistance + 1; i++) {
+					int target = square(x + i * dx, y + i * dy);
+					if (target < 0) {
+						break;
+					}
+
+					byte other = squares[target];
+					if (other == EMPTY) {
+						// Land directly behind an enemy
+						if (enemy >= 0) {
+							steps.add(new Step(square, target, enemy, !isQueen(piece) && isLastRow(target, color)));
+							break;
+						}
+						if (i <= maxDistance) {
+							steps.add(new Step(square, target, -1, !isQueen(piece) && isLastRow(target, color)));
+						}
+					} else if (colorOf(other) == color || enemy >= 0) {
+						break;
+					} else {
+						enemy = target;
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * @param square square of a stone
+	 * @return if the stone on the square can kill
+	 */
+	public boolean canKill(int square) {
+		if (captures != null) {
+			return captures.canKill(this, square);
+		}
+		if (bitboard != null) {
+			return bitboard.canKill(this, square);
+		}
+		return geometry.canKill(this, square);
+	}
+
+	/**
+	 * Get all steps a color is allowed to make (kills are mandatory)
+	 * @param color color index
+	 * @return allowed steps
+	 */
+	public List<Step> getSteps(int color) {
+		MoveList list = new MoveList();
+		generate(color, list);
+
+		List<Step> steps = new ArrayList<>(list.size());
+		for (int i = 0; i < list.size(); i++) {
+			steps.add(new Step(list.get(i)));
+		}
+		return steps;
+	}
+
+	/**
+	 * Generate the allowed steps of the color playing into a list
+	 * @param list list for the packed steps, it gets cleared first
+	 */
+	public void generate(MoveList list) {
+		generate(playing, list);
+	}
+
+	/**
+	 * Generate the allowed steps of a color into a list
+	 * @param color color index
+	 * @param list list for the packed steps, it gets cleared first
+	 */
+	public void generate(int color, MoveList list) {
+		list.ensureCapacity(maxSteps());
+		if (captures != null) {
+			list.size = captures.generate(this, color, list.steps);
+		} else {
+			list.size = bitboard != null ? bitboard.generate(this, color, list.steps)
+					: geometry.generate(this, color, list.steps);
+		}
+	}
+
+	/**
+	 * Generate the complete turns of the color playing, every branch of a kill
+	 * chain is one path. The chains are walked depth first on this state, it is
+	 * the same again afterwards.
+	 * @param paths list to add the paths to
+	 */
+	public void generatePaths(List<Path> paths) {
+		generatePaths(paths, new int[squares.length], 0, new MoveList[squares.length]);
+	}
+
+	/**
+	 * @return complete turns of the color playing
+	 * @see #generatePaths(List)
+	 */
+	public List<Path> getPaths() {
+		List<Path> paths = new ArrayList<>();
+		generatePaths(paths);
+		return paths;
+	}
+
+	/**
+	 * @param paths list to add the paths to
+	 * @param path steps of the chain so far
+	 * @param length amount of steps of the chain so far
+	 * @param lists step lists for every step of a chain
+	 */
+	private void generatePaths(List<Path> paths, int[] path, int length, MoveList[] lists) {
+		if (lists[length] == null) {
+			lists[length] = new MoveList(maxSteps());
+		}
+		MoveList steps = lists[length];
+		generate(steps);
+
+		int color = playing;
+		for (int i = 0; i < steps.size(); i++) {
+			int step = steps.get(i);
+			path[length] = step;
+
+			long undo = make(step);
+			if (playing == color) {
+				// The same stone kills again
+				generatePaths(paths, path, length + 1, lists);
+			} else {
+				int[] complete = new int[length + 1];
+				System.arraycopy(path, 0, complete, 0, complete.length);
+				paths.add(new Path(complete));
+			}
+			unmake(undo);
+		}
+	}
+
+	/**
+	 * @param color color index
+	 * @param queen count queens instead of regular stones
+	 * @return amount of stones
+	 */
+	public int count(int color, boolean queen) {
+		if (bitboard != null) {
+			return Long.bitCount(queen ? queens[color] : men[color]);
+		}
+
+		int count = 0;
+		byte piece = piece(color, queen);
+		for (byte other : squares) {
+			if (other == piece) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * @return allowed steps for the color playing
+	 */
+	public List<Step> getSteps() {
+		return getSteps(playing);
+	}
+
+	/**
+	 * @param color color index
+	 * @return amount of kill steps the color could make
+	 */
+	public int countKills(int color) {
+		if (captures != null) {
+			return captures.countKills(this, color);
+		}
+		if (bitboard != null) {
+			return bitboard.countKills(this, color);
+		}
+		return geometry.countKills(this, color);
+	}
+
+	/**
+	 * Run a step, the step has to be allowed
+	 * @param step step to run
+	 * @return if the stone got transformed to a queen
+	 */
+	public boolean play(Step step) {
+		return isTransformed(make(step.pack()));
+	}
+
+	/**
+	 * Run a packed step, the step has to be allowed. The returned undo record
+	 * holds everything needed to take the step back with {@link #unmake(long)}:
+	 * the step (25 bits), the moved stone (3 bits), the killed stone (3 bits),
+	 * the transformation (1 bit), the color playing (1 bit), the square of
+	 * the stone in a kill chain (8 bits) and the start of the running chain
+	 * of killed stones (8 bits, rule variants only).
+	 * @param step packed step
+	 * @return undo record
+	 */
+	public long make(int step) {
+		int from = Step.from(step);
+		int to = Step.to(step);
+		int killed = Step.killed(step);
+
+		byte piece = squares[from];
+		int color = colorOf(piece);
+
+		long undo = (step & 0x1FFFFFFL) | (long) piece << 25 | (long) playing << 32 | (long) (movedSquare + 1) << 33
+				| (long) chainStart << 41;
+
+		setPiece(from, EMPTY);
+		setPiece(to, piece);
+
+		if (killed >= 0) {
+			undo |= (long) squares[killed] << 28;
+			if (captures != null) {
+				addKilled(killed, squares[killed]);
+			}
+			setPiece(killed, EMPTY);
+
+			// Some variants transform the stone in the middle of a chain, it kills on as queen
+			if (variant.promoteInChain && !isQueen(piece) && isLastRow(to, color)) {
+				piece = piece(color, true);
+				setPiece(to, piece);
+				undo |= 1L << 31;
+			}
+
+			// Check if the stone can kill again
+			if (canKill(to)) {
+				setMovedSquare(to);
+				return undo;
+			}
+		}
+
+		if (!isQueen(piece) && isLastRow(to, color)) {
+			setPiece(to, piece(color, true));
+			undo |= 1L << 31;
+		}
+
+		setPlaying(1 - color);
+		return undo;
+	}
+
+	/**
+	 * Take back a step run with {@link #make(int)}
+	 * @param undo undo record of the step
+	 */
+	public void unmake(long undo) {
+		int step = (int) (undo & 0x1FFFFFF);
+		int from = Step.from(step);
+		int to = Step.to(step);
+		int killed = Step.killed(step);
+
+		setPiece(to, EMPTY);
+		setPiece(from, (byte) ((undo >>> 25) & 0x7));
+		if (killed >= 0) {
+			setPiece(killed, (byte) ((undo >>> 28) & 0x7));
+		}
+		if (captures != null) {
+			setChainStart((int) ((undo >>> 41) & 0xFF));
+			if (killed >= 0) {
+				kills--;
+				hash ^= Zobrist.killed(killed);
+			}
+		}
+
+		int color = (int) ((undo >>> 32) & 0x1);
+		if (playing != color) {
+			hash ^= Zobrist.WHITE;
+			playing = color;
+		}
+		setMovedSquare((int) ((undo >>> 33) & 0xFF) - 1);
+	}
+
+	/**
+	 * @param undo undo record of a step
+	 * @return if the stone got transformed to a queen
+	 */
+	public static boolean isTransformed(long undo) {
+		return (undo & (1L << 31)) != 0;
+	}
+}
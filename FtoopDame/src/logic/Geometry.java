@@ -0,0 +1,292 @@
+package logic;
+
+/**
+ * Neighbour and ray tables of the dark squares and a move generator working
+ * on them, for boards that don't fit into a {@link Bitboard}.
+ *
+ * The tables are computed once per pattern, so a step is found by reading
+ * the next square of a ray instead of computing field positions.
+ */
+public class Geometry {
+
+	/**
+	 * Directions to the diagonal neighbours, in the order of the bitboard shifts
+	 */
+	static final int DOWN_RIGHT = 0;
+	static final int DOWN_LEFT = 1;
+	static final int UP_RIGHT = 2;
+	static final int UP_LEFT = 3;
+
+	/**
+	 * Geometries for every pattern, created when first needed
+	 */
+	private static final Geometry[] geometries = new Geometry[17];
+
+	/**
+	 * Pattern of the board
+	 */
+	final int pattern;
+	/**
+	 * Diagonal neighbour of every square in every direction (square * 4 +
+	 * direction), -1 at the edge of the board
+	 */
+	final int[] neighbours;
+	/**
+	 * Squares on the diagonal from every square in every direction (square * 4
+	 * + direction), nearest first
+	 */
+	final int[][] rays;
+	/**
+	 * Row of every square
+	 */
+	final int[] rows;
+
+	/**
+	 * @param pattern board pattern
+	 */
+	private Geometry(int pattern) {
+		this.pattern = pattern;
+
+		int width = pattern / 2;
+		int squares = pattern * width;
+		int[] dx = { 1, -1, 1, -1 };
+		int[] dy = { 1, 1, -1, -1 };
+
+		neighbours = new int[4 * squares];
+		rays = new int[4 * squares][];
+		rows = new int[squares];
+		for (int square = 0; square < squares; square++) {
+			int y = square / width;
+			int x = 2 * (square % width) + (y % 2 == 0 ? 1 : 0);
+			rows[square] = y;
+
+			for (int d = 0; d < 4; d++) {
+				int length = 0;
+				while (onBoard(x + (length + 1) * dx[d], y + (length + 1) * dy[d])) {
+					length++;
+				}
+
+				int[] ray = new int[length];
+				for (int i = 0; i < length; i++) {
+					int tx = x + (i + 1) * dx[d];
+					int ty = y + (i + 1) * dy[d];
+					ray[i] = ty * width + tx / 2;
+				}
+				rays[4 * square + d] = ray;
+				neighbours[4 * square + d] = length > 0 ? ray[0] : -1;
+			}
+		}
+	}
+
+	/**
+	 * @param x position on the board
+	 * @param y position on the board
+	 * @return if the field is on the board
+	 */
+	private boolean onBoard(int x, int y) {
+		return x >= 0 && y >= 0 && x < pattern && y < pattern;
+	}
+
+	/**
+	 * @param pattern board pattern
+	 * @return geometry of the pattern
+	 */
+	public static synchronized Geometry of(int pattern) {
+		if (pattern < 2 || pattern >= geometries.length || pattern % 2 != 0) {
+			throw new IllegalArgumentException("Unsupported board pattern " + pattern);
+		}
+		if (geometries[pattern] == null) {
+			geometries[pattern] = new Geometry(pattern);
+		}
+		return geometries[pattern];
+	}
+
+	/**
+	 * @param state game state
+	 * @param color color index
+	 * @return first direction regular stones of the color move in (the next one is the other)
+	 */
+	static int forward(GameState state, int color) {
+		return state.dir[color] == 1 ? DOWN_RIGHT : UP_RIGHT;
+	}
+
+	/**
+	 * @param state game state
+	 * @param color color index
+	 * @param square destination square of a regular stone
+	 * @return transformation flag if the square is on the last row of the color
+	 */
+	private int transform(GameState state, int color, int square) {
+		int lastRow = state.dir[color] == 1 ? pattern - 1 : 0;
+		return rows[square] == lastRow ? Step.TRANSFORM : 0;
+	}
+
+	/**
+	 * Generate all allowed steps of a color (kills are mandatory)
+	 * @param state game state
+	 * @param color color index
+	 * @param steps buffer for the packed steps
+	 * @return amount of steps
+	 */
+	public int generate(GameState state, int color, int[] steps) {
+		// If a stone is already moved, only this stone can kill again
+		if (color == state.playing && state.movedSquare >= 0) {
+			return generateKills(state, color, state.movedSquare, steps, 0);
+		}
+
+		int count = 0;
+		for (int square = 0; square < state.squares.length; square++) {
+			byte piece = state.squares[square];
+			if (piece != GameState.EMPTY && GameState.colorOf(piece) == color) {
+				count = generateKills(state, color, square, steps, count);
+			}
+		}
+		if (count > 0) {
+			return count;
+		}
+
+		for (int square = 0; square < state.squares.length; square++) {
+			byte piece = state.squares[square];
+			if (piece != GameState.EMPTY && GameState.colorOf(piece) == color) {
+				count = generateMoves(state, color, square, steps, count);
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Generate the kill steps of a stone
+	 * @param state game state
+	 * @param color color of the stone
+	 * @param from square of the stone
+	 * @param steps buffer for the packed steps, null to only count them
+	 * @param count steps already in the buffer
+	 * @return amount of steps in the buffer
+	 */
+	int generateKills(GameState state, int color, int from, int[] steps, int count) {
+		byte[] squares = state.squares;
+
+		if (!GameState.isQueen(squares[from])) {
+			// Regular stones jump forward over an enemy
+			int first = forward(state, color);
+			for (int d = first; d < first + 2; d++) {
+				int enemy = neighbours[4 * from + d];
+				if (enemy < 0 || squares[enemy] == GameState.EMPTY || GameState.colorOf(squares[enemy]) == color) {
+					continue;
+				}
+				int to = neighbours[4 * enemy + d];
+				if (to >= 0 && squares[to] == GameState.EMPTY) {
+					if (steps != null) {
+						steps[count] = Step.pack(from, to, enemy) | transform(state, color, to);
+					}
+					count++;
+				}
+			}
+			return count;
+		}
+
+		// Queens fly to an enemy and land directly behind it
+		for (int d = 0; d < 4; d++) {
+			int[] ray = rays[4 * from + d];
+			int i = 0;
+			while (i < ray.length && squares[ray[i]] == GameState.EMPTY) {
+				i++;
+			}
+			if (i + 1 < ray.length && GameState.colorOf(squares[ray[i]]) != color
+					&& squares[ray[i + 1]] == GameState.EMPTY) {
+				if (steps != null) {
+					steps[count] = Step.pack(from, ray[i + 1], ray[i]);
+				}
+				count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Generate the steps without kills of a stone
+	 * @param state game state
+	 * @param color color of the stone
+	 * @param from square of the stone
+	 * @param steps buffer for the packed steps
+	 * @param count steps already in the buffer
+	 * @return amount of steps in the buffer
+	 */
+	int generateMoves(GameState state, int color, int from, int[] steps, int count) {
+		byte[] squares = state.squares;
+
+		if (!GameState.isQueen(squares[from])) {
+			// Regular stones move one field forward
+			int first = forward(state, color);
+			for (int d = first; d < first + 2; d++) {
+				int to = neighbours[4 * from + d];
+				if (to >= 0 && squares[to] == GameState.EMPTY) {
+					steps[count++] = Step.pack(from, to, -1) | transform(state, color, to);
+				}
+			}
+			return count;
+		}
+
+		// Queens fly over all empty fields
+		for (int d = 0; d < 4; d++) {
+			for (int to : rays[4 * from + d]) {
+				if (squares[to] != GameState.EMPTY) {
+					break;
+				}
+				steps[count++] = Step.pack(from, to, -1);
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Count the empty fields next to the stones of a color they could move to
+	 * @param state game state
+	 * @param color color index
+	 * @return mobility of the color
+	 */
+	int mobility(GameState state, int color) {
+		byte[] squares = state.squares;
+		int first = forward(state, color);
+		int count = 0;
+		for (int square = 0; square < squares.length; square++) {
+			byte piece = squares[square];
+			if (piece == GameState.EMPTY || GameState.colorOf(piece) != color) {
+				continue;
+			}
+			boolean queen = GameState.isQueen(piece);
+			for (int d = 0; d < 4; d++) {
+				int target = neighbours[4 * square + d];
+				if ((queen || d == first || d == first + 1) && target >= 0 && squares[target] == GameState.EMPTY) {
+					count++;
+				}
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * @param state game state
+	 * @param square square of a stone
+	 * @return if the stone on the square can kill
+	 */
+	boolean canKill(GameState state, int square) {
+		return generateKills(state, GameState.colorOf(state.squares[square]), square, null, 0) > 0;
+	}
+
+	/**
+	 * @param state game state
+	 * @param color color index
+	 * @return amount of kill steps the color could make
+	 */
+	int countKills(GameState state, int color) {
+		int count = 0;
+		for (int square = 0; square < state.squares.length; square++) {
+			byte piece = state.squares[square];
+			if (piece != GameState.EMPTY && GameState.colorOf(piece) == color) {
+				count = generateKills(state, color, square, null, count);
+			}
+		}
+		return count;
+	}
+}
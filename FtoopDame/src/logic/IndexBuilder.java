@@ -0,0 +1,383 @@
+package logic;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Builds a position index (see {@link PositionIndex}) of a PDN archive.
+ *
+ * The turns of every game are run on a state like they are played, every
+ * position reached at the end of a turn gets an entry (positions repeated in
+ * a game only once). Entries are sorted in runs of limited size that are
+ * written to temporary files and merged into the index at the end, so the
+ * memory stays the same for any archive.
+ *
+ * Usage: IndexBuilder index archive [-pattern n] [-variant name] [-run n]
+ * [-threads n]
+ */
+public class IndexBuilder {
+
+	/**
+	 * Board pattern and variant of the games added, others are skipped
+	 */
+	private final int pattern;
+	private final Variant variant;
+	/**
+	 * Keys and values of the entries not written to a run yet
+	 */
+	private final long[] keys;
+	private final long[] values;
+	private int count = 0;
+	/**
+	 * Sorted runs written so far
+	 */
+	private final List<File> runs = new ArrayList<>();
+	/**
+	 * Amount of entries and games added
+	 */
+	private long size = 0;
+	private long games = 0;
+
+	/**
+	 * @param pattern board pattern of the games
+	 * @param variant rules of the games
+	 * @param run entries sorted in memory at once
+	 */
+	public IndexBuilder(int pattern, Variant variant, int run) {
+		this.pattern = pattern;
+		this.variant = variant;
+		this.keys = new long[run];
+		this.values = new long[run];
+	}
+
+	/**
+	 * Add the positions of a game, it has to be read from the archive of the index
+	 * @param record game with its offset in the archive
+	 * @return if the game is played on the board and with the rules of the index
+	 * @throws IOException if a run can't be written
+	 */
+	public boolean add(GameRecord record) throws IOException {
+		GameState state = record.getStart();
+		if (state.getPattern() != pattern || state.getVariant() != variant || record.getOffset() < 0) {
+			return false;
+		}
+
+		// Same execution as the board plays its steps
+		MoveList steps = record.getSteps();
+		long[] positions = new long[steps.size() + 1];
+		int length = 0;
+		positions[length++] = OpeningBook.key(state);
+		for (int i = 0; i < steps.size(); i++) {
+			state.make(steps.get(i));
+			if (state.getMovedSquare() < 0) {
+				positions[length++] = OpeningBook.key(state);
+			}
+		}
+		Arrays.sort(positions, 0, length);
+
+		long value = record.getOffset() << 2 | PositionIndex.outcome(record);
+		synchronized (this) {
+			for (int i = 0; i < length; i++) {
+				if (i == 0 || positions[i] != positions[i - 1]) {
+					if (count == keys.length) {
+						writeRun();
+					}
+					keys[count] = positions[i];
+					values[count++] = value;
+					size++;
+				}
+			}
+			games++;
+		}
+		return true;
+	}
+
+	/**
+	 * Add all games of an archive, invalid games are reported and skipped
+	 * @param archive PDN archive in UTF-8
+	 * @param threads threads to parse and check the games on
+	 * @return amount of games read
+	 * @throws IOException if the archive can't be read or a run can't be written
+	 */
+	public long addArchive(File archive, int threads) throws IOException {
+		AtomicReference<IOException> failed = new AtomicReference<>();
+		long read;
+		try (PdnReader reader = new PdnReader(new FileInputStream(archive))) {
+			read = reader.forEach(record -> {
+				if (failed.get() != null) {
+					return;
+				}
+				try {
+					add(record);
+				} catch (IOException e) {
+					// No more games once a run can't be written
+					failed.compareAndSet(null, e);
+					reader.stop();
+				}
+			}, e -> System.err.println(archive + ": " + e.getMessage()), threads);
+		}
+		if (failed.get() != null) {
+			throw failed.get();
+		}
+		return read;
+	}
+
+	/**
+	 * @return amount of entries
+	 */
+	public long size() {
+		return size;
+	}
+
+	/**
+	 * @return amount of games added
+	 */
+	public long getGames() {
+		return games;
+	}
+
+	/**
+	 * Sort the entries in memory and write them to a temporary file
+	 * @throws IOException if the file can't be written
+	 */
+	private void writeRun() throws IOException {
+		sort(0, count);
+		File run = File.createTempFile("index", ".run");
+		run.deleteOnExit();
+		try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(run), 1 << 16))) {
+			for (int i = 0; i < count; i++) {
+				output.writeLong(keys[i]);
+				output.writeLong(values[i]);
+			}
+		}
+		runs.add(run);
+		count = 0;
+	}
+
+	/**
+	 * Write the index, the runs are merged into it
+	 * @param file index file
+	 * @throws IOException if a file can't be read or written
+	 */
+	public synchronized void write(File file) throws IOException {
+		try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16))) {
+			output.writeInt(PositionIndex.MAGIC);
+			output.writeInt(pattern);
+			output.writeInt(variant.ordinal());
+			output.writeInt(0);
+			output.writeLong(size);
+
+			if (runs.isEmpty()) {
+				sort(0, count);
+				for (int i = 0; i < count; i++) {
+					output.writeLong(keys[i]);
+					output.writeLong(values[i]);
+				}
+				return;
+			}
+			if (count > 0) {
+				writeRun();
+			}
+			merge(output);
+		} finally {
+			for (File run : runs) {
+				run.delete();
+			}
+			runs.clear();
+			count = 0;
+		}
+	}
+
+	/**
+	 * Head of a sorted run during the merge
+	 */
+	private static class Run implements Comparable<Run> {
+
+		private final DataInputStream input;
+		private long key;
+		private long value;
+
+		/**
+		 * @param file run file
+		 * @throws IOException if it can't be opened
+		 */
+		Run(File file) throws IOException {
+			input = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16));
+		}
+
+		/**
+		 * @return if there was another entry
+		 * @throws IOException if the run can't be read
+		 */
+		boolean next() throws IOException {
+			try {
+				key = input.readLong();
+				value = input.readLong();
+				return true;
+			} catch (EOFException e) {
+				input.close();
+				return false;
+			}
+		}
+
+		/* (non-Javadoc)
+		 * @see java.lang.Comparable#compareTo(java.lang.Object)
+		 */
+		@Override
+		public int compareTo(Run run) {
+			return key != run.key ? Long.compare(key, run.key) : Long.compare(value, run.value);
+		}
+	}
+
+	/**
+	 * Merge the runs in order of their entries
+	 * @param output destination after the header
+	 * @throws IOException if a run can't be read
+	 */
+	private void merge(DataOutputStream output) throws IOException {
+		PriorityQueue<Run> heads = new PriorityQueue<>();
+		try {
+			for (File file : runs) {
+				Run run = new Run(file);
+				if (run.next()) {
+					heads.add(run);
+				}
+			}
+			while (!heads.isEmpty()) {
+				Run run = heads.poll();
+				output.writeLong(run.key);
+				output.writeLong(run.value);
+				if (run.next()) {
+					heads.add(run);
+				}
+			}
+		} finally {
+			for (Run run : heads) {
+				run.input.close();
+			}
+		}
+	}
+
+	/**
+	 * Sort entries by key and then by value (the games in order of the archive)
+	 * @param from first entry
+	 * @param to entry after the last one
+	 */
+	private void sort(int from, int to) {
+		while (to - from > 16) {
+			// Median of three as pivot
+			int middle = (from + to) >>> 1;
+			if (less(middle, from)) {
+				swap(middle, from);
+			}
+			if (less(to - 1, middle)) {
+				swap(to - 1, middle);
+				if (less(middle, from)) {
+					swap(middle, from);
+				}
+			}
+			long key = keys[middle];
+			long value = values[middle];
+
+			int i = from;
+			int j = to - 1;
+			while (i <= j) {
+				while (keys[i] < key || keys[i] == key && values[i] < value) {
+					i++;
+				}
+				while (keys[j] > key || keys[j] == key && values[j] > value) {
+					j--;
+				}
+				if (i <= j) {
+					swap(i++, j--);
+				}
+			}
+
+			// Recursion on the smaller part keeps the stack small
+			if (j - from < to - i) {
+				sort(from, j + 1);
+				from = i;
+			} else {
+				sort(i, to);
+				to = j + 1;
+			}
+		}
+
+		for (int i = from + 1; i < to; i++) {
+			for (int j = i; j > from && less(j, j - 1); j--) {
+				swap(j, j - 1);
+			}
+		}
+	}
+
+	private boolean less(int a, int b) {
+		return keys[a] < keys[b] || keys[a] == keys[b] && values[a] < values[b];
+	}
+
+	private void swap(int a, int b) {
+		long key = keys[a];
+		keys[a] = keys[b];
+		keys[b] = key;
+		long value = values[a];
+		values[a] = values[b];
+		values[b] = value;
+	}
+
+	/**
+	 * @param args command line arguments
+	 * @throws IOException if a file can't be read or written
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length < 2) {
+			System.out.println("Usage: IndexBuilder index archive [-pattern n] [-variant name] [-run n] [-threads n]");
+			return;
+		}
+
+		File out = new File(args[0]);
+		File archive = new File(args[1]);
+		int pattern = 0;
+		Variant variant = Variant.STANDARD;
+		int run = 1 << 22;
+		int threads = Runtime.getRuntime().availableProcessors();
+		for (int i = 2; i < args.length; i++) {
+			switch (args[i]) {
+			case "-pattern":
+				pattern = Integer.parseInt(args[++i]);
+				break;
+			case "-variant":
+				variant = Variant.parse(args[++i]);
+				break;
+			case "-run":
+				run = Integer.parseInt(args[++i]);
+				break;
+			case "-threads":
+				threads = Integer.parseInt(args[++i]);
+				break;
+			default:
+				throw new IllegalArgumentException("Unknown option " + args[i]);
+			}
+		}
+		if (pattern == 0) {
+			pattern = variant.getPattern();
+		}
+
+		long start = System.nanoTime();
+		IndexBuilder builder = new IndexBuilder(pattern, variant, run);
+		long read = builder.addArchive(archive, threads);
+		builder.write(out);
+		System.out.println(out + ": " + builder.getGames() + " of " + read + " games, " + builder.size()
+				+ " entries in " + (System.nanoTime() - start) / 1000000 + " ms");
+	}
+}
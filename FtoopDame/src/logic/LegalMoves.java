@@ -0,0 +1,98 @@
+package logic;
+
+/**
+ * Allowed steps of a color on a game state, generated once and kept until the
+ * state changes. A step is found by its start and destination square without
+ * searching the list.
+ */
+public class LegalMoves {
+
+	/**
+	 * Allowed steps of the cached position
+	 */
+	private final MoveList steps = new MoveList();
+	/**
+	 * State, color and version of the state the steps were generated for
+	 */
+	private GameState state;
+	private int color;
+	private long version;
+	/**
+	 * Packed step for every start and destination square (from * squares + to),
+	 * only valid if its mark is the current generation
+	 */
+	private int[] lookup = new int[0];
+	private int[] marks = new int[0];
+	/**
+	 * Generation of the lookup, increased instead of clearing it
+	 */
+	private int generation = 0;
+
+	/**
+	 * @param state game state
+	 * @param color color index
+	 * @return allowed steps of the color, only valid until the state changes
+	 */
+	public MoveList get(GameState state, int color) {
+		if (state != this.state || color != this.color || state.version != version) {
+			update(state, color);
+		}
+		return steps;
+	}
+
+	/**
+	 * @param state game state
+	 * @param color color index
+	 * @param from start square
+	 * @param to destination square
+	 * @return allowed packed step with the start and destination square, 0 if there is none
+	 */
+	public int find(GameState state, int color, int from, int to) {
+		get(state, color);
+
+		int squares = state.getSquares();
+		if (from < 0 || from >= squares || to < 0 || to >= squares) {
+			return 0;
+		}
+		int index = from * squares + to;
+		return marks[index] == generation ? lookup[index] : 0;
+	}
+
+	/**
+	 * @param state game state
+	 * @param color color index
+	 * @param from start square
+	 * @param to destination square
+	 * @return if the color is allowed to move from the start to the destination square
+	 */
+	public boolean contains(GameState state, int color, int from, int to) {
+		return find(state, color, from, to) != 0;
+	}
+
+	/**
+	 * Generate the steps and fill the lookup
+	 * @param state game state
+	 * @param color color index
+	 */
+	private void update(GameState state, int color) {
+		state.generate(color, steps);
+		this.state = state;
+		this.color = color;
+		this.version = state.version;
+
+		int squares = state.getSquares();
+		if (marks.length != squares * squares) {
+			lookup = new int[squares * squares];
+			marks = new int[squares * squares];
+			generation = 0;
+		}
+		generation++;
+
+		for (int i = 0; i < steps.size(); i++) {
+			int step = steps.get(i);
+			int index = Step.from(step) * squares + Step.to(step);
+			lookup[index] = step;
+			marks[index] = generation;
+		}
+	}
+}
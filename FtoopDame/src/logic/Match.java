@@ -0,0 +1,173 @@
+package logic;
+
+/**
+ * Headless game between two agents, with the same draw rules as the board.
+ * Every match has its own state, so many matches can run at once.
+ */
+public class Match {
+
+	/**
+	 * Winner of a match without winner
+	 */
+	public static final int DRAW = -1;
+	/**
+	 * Turns without a kill or transformation until the match is a draw
+	 */
+	static final int THRESHOLD = 50;
+	/**
+	 * Occurrences of a state until the match is a draw
+	 */
+	static final int REPETITIONS = 4;
+
+	/**
+	 * Current state
+	 */
+	private GameState state;
+	/**
+	 * Agents by color
+	 */
+	private Agent[] agents;
+	/**
+	 * States since the last kill or transformation
+	 */
+	private Repetitions repetitions = new Repetitions();
+	/**
+	 * Played steps
+	 */
+	private MoveList history = new MoveList();
+	/**
+	 * Allowed steps of the current state
+	 */
+	private MoveList steps = new MoveList();
+	/**
+	 * Turns since the last kill and the last transformation
+	 */
+	private int turnsSinceKill = 0;
+	private int turnsSinceTransformation = 0;
+	/**
+	 * Played turns
+	 */
+	private int turns = 0;
+	/**
+	 * If the match is over
+	 */
+	private boolean finished = false;
+	/**
+	 * Winner color or {@link #DRAW}
+	 */
+	private int winner = DRAW;
+
+	/**
+	 * @param start state to start from (it gets copied)
+	 * @param black agent of the black color
+	 * @param white agent of the white color
+	 */
+	public Match(GameState start, Agent black, Agent white) {
+		this.state = new GameState(start);
+		this.agents = new Agent[] { black, white };
+	}
+
+	/**
+	 * Play one turn, a kill chain is completed in the same turn
+	 * @return if the match continues
+	 */
+	public boolean step() {
+		if (finished) {
+			return false;
+		}
+
+		int color = state.getPlaying();
+		state.generate(steps);
+		if (steps.size() == 0) {
+			// No steps left, the color playing lost
+			finished = true;
+			winner = 1 - color;
+			return false;
+		}
+
+		boolean killed = false;
+		boolean transformed = false;
+		while (state.getPlaying() == color) {
+			int step = agents[color].choose(state);
+
+			// Don't trust the agent with the state
+			state.generate(steps);
+			if (!steps.contains(Step.from(step), Step.to(step))) {
+				throw new IllegalStateException("Agent of color " + color + " chose a forbidden step " + new Step(step));
+			}
+			step = steps.find(Step.from(step), Step.to(step));
+
+			history.add(step);
+			killed |= Step.isKill(step);
+			transformed |= GameState.isTransformed(state.make(step));
+		}
+		turns++;
+
+		turnsSinceKill = killed ? 0 : turnsSinceKill + 1;
+		turnsSinceTransformation = transformed ? 0 : turnsSinceTransformation + 1;
+		if (killed || transformed) {
+			repetitions.reset();
+		}
+
+		// A color without steps loses before the draw rules are checked
+		state.generate(steps);
+		if (steps.size() == 0) {
+			finished = true;
+			winner = color;
+			return false;
+		}
+
+		int occurrences = repetitions.add(state.getHash());
+		if (turnsSinceKill > THRESHOLD || turnsSinceTransformation > THRESHOLD || occurrences >= REPETITIONS) {
+			finished = true;
+			winner = DRAW;
+		}
+		return !finished;
+	}
+
+	/**
+	 * Play until the match is over
+	 * @return winner color or {@link #DRAW}
+	 */
+	public int play() {
+		while (step()) {
+			// Every turn is played by step
+		}
+		return winner;
+	}
+
+	/**
+	 * @return current state
+	 */
+	public GameState getState() {
+		return state;
+	}
+
+	/**
+	 * @return played steps (packed)
+	 */
+	public MoveList getHistory() {
+		return history;
+	}
+
+	/**
+	 * @return played turns
+	 */
+	public int getTurns() {
+		return turns;
+	}
+
+	/**
+	 * @return if the match is over
+	 */
+	public boolean isFinished() {
+		return finished;
+	}
+
+	/**
+	 * @return winner color or {@link #DRAW}
+	 */
+	public int getWinner() {
+		return winner;
+	}
+}
@@ -2,10 +2,7 @@ package logic;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
-import java.util.stream.Collectors;
 
-import gui.Board;
 import gui.Field;
 import gui.Stone;
 import settings.Player;
@@ -46,6 +43,10 @@ public class Move implements Comparable<Move> {
 	 * Moves possible after this move (only kill moves)
 	 */
 	List<Move> nextMoves = new ArrayList<>();
+	/**
+	 * Step on the game state that belongs to this move
+	 */
+	Step step;
 	/**
 	 * Score of the move (used for bots)
 	 */
@@ -65,75 +66,59 @@ public class Move implements Comparable<Move> {
 		this.stone = stone;
 		this.player = player;
 
-		// target location
-		int x = field.getCoords().get("x");
-		int y = field.getCoords().get("y");
+		GameState state = player.getBoard().getState();
 
-		// Return false move if field isn't dark or has a stone on it
-		if (!field.isDark() || field.hasStone()) {
+		// start and target square on the game state
+		int from = state.square(stone.getX(), stone.getY());
+		int to = state.square(field.getCoords().get("x"), field.getCoords().get("y"));
+
+		// Return false move if a field isn't a dark field
+		if (from < 0 || to < 0) {
 			return;
 		}
 
-		// get start location
-		int startX = stone.getX();
-		int startY = stone.getY();
+		// Search the step of the stone with the same destination
+		List<Step> steps = new ArrayList<>();
+		state.addSteps(from, steps);
+		for (Step step : steps) {
+			if (step.getTo() == to) {
+				setStep(step);
+				return;
+			}
+		}
 
-		int distanceX = Math.abs(x - startX);
-		int distanceY = Math.abs(y - startY);
-		int directionX = (x - startX) < 0 ? -1 : 1;
-		int directionY = (y - startY) < 0 ? -1 : 1;
+	}
 
-		int maxDistance = stone.isQueen() ? player.getBoard().getPattern() : 1;
+	/**
+	 * @param player making the move
+	 * @param step step on the game state
+	 */
+	public Move(Player player, Step step) {
+		this.player = player;
 
-		// Check if stone is moving in right direction
-		if (!stone.isQueen() && directionY != player.getPosition().getDir())
-			return;
+		GameState state = player.getBoard().getState();
+		Field[][] fields = player.getBoard().getFields();
 
-		// Check if move is diagonal
-		if (distanceX == distanceY && distanceX <= maxDistance + 1) {
-
-			if (distanceX > 1) {
-				// check if there is a stone
-				List<Field> enemies = new ArrayList<>();
-				for (int i = 1; i < distanceX; i++) {
-					Field[][] fields = player.getBoard().getFields();
-
-					int tempX = startX + (i * directionX);
-					int tempY = startY + (i * directionY);
-					Field tempField = fields[tempY][tempX];
-
-					if (tempField.hasStone()) {
-						// Return if field has own stones
-						if (tempField.getStone().getColor() == stone.getColor())
-							return;
-
-						enemies.add(tempField);
-						// if there are more than one enemy return
-						if (enemies.size() > 1)
-							return;
-					}
-				}
-
-				if (enemies.size() == 1) {
-					Map<String, Integer> enemyCoords = enemies.get(0).getCoords();
-					Map<String, Integer> fieldCoords = field.getCoords();
-
-					// check if landing position is behind enemy
-					if (enemyCoords.get("x") + directionX == fieldCoords.get("x")
-							&& enemyCoords.get("y") + directionY == fieldCoords.get("y")) {
-						this.killed = enemies.get(0).getStone();
-						this.type = Type.KILL;
-					}
-					return;
-				} else if (distanceX <= maxDistance) {
-					this.type = Type.MOVE;
-				}
+		this.stone = fields[state.getY(step.getFrom())][state.getX(step.getFrom())].getStone();
+		this.field = fields[state.getY(step.getTo())][state.getX(step.getTo())];
+		setStep(step);
+	}
 
-			} else {
-				this.type = Type.MOVE;
-			}
+	/**
+	 * Set type and killed stone from a step
+	 * @param step step on the game state
+	 */
+	private void setStep(Step step) {
+		this.step = step;
+
+		if (step.isKill()) {
+			GameState state = player.getBoard().getState();
+			this.killed = player.getBoard().getFields()[state.getY(step.getKilled())][state.getX(step.getKilled())]
+					.getStone();
+			this.type = Type.KILL;
+		} else {
+			this.type = Type.MOVE;
 		}
-
 	}
 
 	/**
@@ -144,58 +129,41 @@ public class Move implements Comparable<Move> {
 		Field oldField = stone.getField();
 
 		// Change type to none if player doesn't contain this move
-		if (!player.getMoves().contains(this)) {
+		if (step == null || !player.isAllowed(step.getFrom(), step.getTo())) {
 			type = Type.NONE;
 		}
 
 		// Set player latest move
 		player.setLastMove(this);
 
-		// Check for transformation
-		if ((type == Type.KILL || type == Type.MOVE) && !stone.isQueen()) {
-			switch (player.getPosition().getDir()) {
-			case -1:
-				if (field.getCoords().get("y") == 0) {
-					transformed = true;
-				}
-				break;
-
-			case 1:
-				if (field.getCoords().get("y") == player.getBoard().getPattern() - 1) {
-					transformed = true;
-				}
-				break;
-			}
-		}
-
 		switch (type) {
 		// If type is none abort move
 		case NONE:
 			stone.abort();
 			break;
-		// If its a regular move, move the stone and change player
+		// Run the move on the game state and move the stone
 		case MOVE:
-			stone.move(field);
-			field.setStone(stone);
-			oldField.setStone(null);
-			player.getBoard().setPlaying(player.getOpponent());
-			break;
-		// if its a kill move, move the stone, remove stone from opponent and check if a next move is possible
 		case KILL:
+			GameState state = player.getBoard().getState();
+			player.getBoard().record(step);
+			transformed = state.play(step);
+
 			stone.move(field);
 			field.setStone(stone);
 			oldField.setStone(null);
-			player.getOpponent().removeStone(killed);
-			nextMoves = stone.getMoves().stream().filter(move -> move.getType() == Move.Type.KILL)
-					.collect(Collectors.toList());
 
-			if (nextMoves.size() > 0) {
-				player.setMovedStone(stone);
+			// if its a kill move, remove stone from opponent
+			if (type == Type.KILL) {
+				player.getOpponent().removeStone(killed);
+			}
+
+			// Check if a next move is possible, otherwise change player
+			if (state.getPlaying() == player.getIndex()) {
+				nextMoves = player.getMoves();
 			} else {
-				player.setMovedStone(null);
+				nextMoves.clear();
 				player.getBoard().setPlaying(player.getOpponent());
 			}
-
 			break;
 		default:
 			break;
@@ -229,6 +197,13 @@ public class Move implements Comparable<Move> {
 		return nextMoves;
 	}
 
+	/**
+	 * @return step on the game state
+	 */
+	public Step getStep() {
+		return step;
+	}
+
 	/**
 	 * @return stone that got moved
 	 */
@@ -0,0 +1,112 @@
+package logic;
+
+/**
+ * Reusable list of packed steps (see {@link Step}), filled by the move
+ * generators without allocating anything
+ */
+public class MoveList {
+
+	/**
+	 * Packed steps
+	 */
+	int[] steps;
+	/**
+	 * Amount of steps in the list
+	 */
+	int size = 0;
+
+	/**
+	 * Create an empty list, it grows to the size needed by the first state
+	 */
+	public MoveList() {
+		this(0);
+	}
+
+	/**
+	 * @param capacity steps the list can hold
+	 */
+	public MoveList(int capacity) {
+		steps = new int[capacity];
+	}
+
+	/**
+	 * Make sure the list can hold an amount of steps
+	 * @param capacity steps the list has to hold
+	 */
+	void ensureCapacity(int capacity) {
+		if (steps.length < capacity) {
+			steps = new int[capacity];
+		}
+	}
+
+	/**
+	 * @return amount of steps
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @param index index in the list
+	 * @return packed step
+	 */
+	public int get(int index) {
+		return steps[index];
+	}
+
+	/**
+	 * @param step packed step to add
+	 */
+	public void add(int step) {
+		if (size == steps.length) {
+			int[] larger = new int[Math.max(16, 2 * size)];
+			System.arraycopy(steps, 0, larger, 0, size);
+			steps = larger;
+		}
+		steps[size++] = step;
+	}
+
+	/**
+	 * Remove all steps
+	 */
+	public void clear() {
+		size = 0;
+	}
+
+	/**
+	 * @param from start square
+	 * @param to destination square
+	 * @return packed step with the start and destination square, 0 if there is none
+	 */
+	public int find(int from, int to) {
+		for (int i = 0; i < size; i++) {
+			if (Step.from(steps[i]) == from && Step.to(steps[i]) == to) {
+				return steps[i];
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * @param from start square
+	 * @param to destination square
+	 * @return if the list has a step with the start and destination square
+	 */
+	public boolean contains(int from, int to) {
+		return find(from, to) != 0;
+	}
+
+	/**
+	 * Move a step to the front of the list (used to search it first)
+	 * @param step packed step
+	 */
+	public void moveToFront(int step) {
+		for (int i = 1; i < size; i++) {
+			if (steps[i] == step) {
+				steps[i] = steps[0];
+				steps[0] = step;
+				return;
+			}
+		}
+	}
+}
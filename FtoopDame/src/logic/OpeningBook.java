@@ -0,0 +1,220 @@
+package logic;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Random;
+
+/**
+ * Opening book: weighted steps of known positions, read from a sorted binary
+ * file that is mapped into memory and searched with a binary search.
+ *
+ * File layout (big endian): magic, board pattern and amount of entries as
+ * ints, then the entries sorted by key, each a long key, the packed step and
+ * its weight as ints. Positions are stored with black moving down (see
+ * {@link #key(GameState)}), so a book works for both board arrangements.
+ */
+public class OpeningBook {
+
+	/**
+	 * First int of every book file
+	 */
+	static final int MAGIC = 0x444D424B;
+	/**
+	 * Size of the header and of every entry in bytes
+	 */
+	static final int HEADER = 12;
+	static final int ENTRY = 16;
+
+	/**
+	 * Mapped file
+	 */
+	private final ByteBuffer buffer;
+	/**
+	 * Board pattern the book was built for
+	 */
+	private final int pattern;
+	/**
+	 * Amount of entries
+	 */
+	private final int size;
+
+	/**
+	 * @param buffer content of a book file
+	 * @throws IOException if the content isn't a book
+	 */
+	OpeningBook(ByteBuffer buffer) throws IOException {
+		if (buffer.limit() < HEADER || buffer.getInt(0) != MAGIC) {
+			throw new IOException("Not an opening book");
+		}
+		this.buffer = buffer;
+		this.pattern = buffer.getInt(4);
+		this.size = buffer.getInt(8);
+		if ((long) HEADER + (long) size * ENTRY > buffer.limit()) {
+			throw new IOException("Opening book is truncated");
+		}
+	}
+
+	/**
+	 * Map a book file into memory
+	 * @param file book file
+	 * @return opening book
+	 * @throws IOException if the file can't be read or isn't a book
+	 */
+	public static OpeningBook open(File file) throws IOException {
+		try (RandomAccessFile input = new RandomAccessFile(file, "r"); FileChannel channel = input.getChannel()) {
+			// The mapping stays valid after the channel is closed
+			return new OpeningBook(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+		}
+	}
+
+	/**
+	 * @return board pattern the book was built for
+	 */
+	public int getPattern() {
+		return pattern;
+	}
+
+	/**
+	 * @return amount of entries
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Choose a step of the book for a state, steps played more often and with
+	 * better results are chosen more likely
+	 * @param state game state
+	 * @param allowed allowed steps of the color playing
+	 * @param random random numbers to choose with
+	 * @return allowed packed step, 0 if the book doesn't know the state
+	 */
+	public int probe(GameState state, MoveList allowed, Random random) {
+		// Built with the standard rules
+		if (state.getPattern() != pattern || state.getVariant() != Variant.STANDARD) {
+			return 0;
+		}
+
+		long key = key(state);
+		boolean rotated = isRotated(state);
+		int first = first(key);
+
+		// Sum up the weights of the allowed steps (a hash collision gives forbidden ones)
+		long total = 0;
+		for (int i = first; i < size && keyAt(i) == key; i++) {
+			if (find(state, allowed, stepAt(i), rotated) != 0) {
+				total += weightAt(i);
+			}
+		}
+		if (total <= 0) {
+			return 0;
+		}
+
+		long chosen = (long) (random.nextDouble() * total);
+		for (int i = first; i < size && keyAt(i) == key; i++) {
+			int step = find(state, allowed, stepAt(i), rotated);
+			if (step != 0) {
+				chosen -= weightAt(i);
+				if (chosen < 0) {
+					return step;
+				}
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * @param key key of a state
+	 * @return index of the first entry with the key or a larger one
+	 */
+	private int first(long key) {
+		int low = 0;
+		int high = size;
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (keyAt(middle) < key) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * @param state game state
+	 * @param allowed allowed steps of the color playing
+	 * @param step packed step of the book
+	 * @param rotated if the state is rotated against the book
+	 * @return allowed packed step, 0 if the step isn't allowed
+	 */
+	private static int find(GameState state, MoveList allowed, int step, boolean rotated) {
+		if (rotated) {
+			step = rotate(step, state.getSquares());
+		}
+		return allowed.find(Step.from(step), Step.to(step));
+	}
+
+	private long keyAt(int index) {
+		return buffer.getLong(HEADER + index * ENTRY);
+	}
+
+	private int stepAt(int index) {
+		return buffer.getInt(HEADER + index * ENTRY + 8);
+	}
+
+	private int weightAt(int index) {
+		return buffer.getInt(HEADER + index * ENTRY + 12);
+	}
+
+	/**
+	 * @param state game state
+	 * @return if black is moving up, the book stores the state rotated
+	 */
+	static boolean isRotated(GameState state) {
+		return state.getDirection(GameState.BLACK) < 0;
+	}
+
+	/**
+	 * Key of a state in the book: its hash with black moving down
+	 * @param state game state
+	 * @return key of the state
+	 */
+	static long key(GameState state) {
+		if (!isRotated(state)) {
+			return state.getHash();
+		}
+
+		// Hash of the state rotated by 180 degrees
+		int last = state.getSquares() - 1;
+		long key = 0;
+		for (int square = 0; square <= last; square++) {
+			byte piece = state.getPiece(square);
+			if (piece != GameState.EMPTY) {
+				key ^= Zobrist.piece(last - square, piece);
+			}
+		}
+		if (state.getPlaying() == GameState.WHITE) {
+			key ^= Zobrist.WHITE;
+		}
+		if (state.getMovedSquare() >= 0) {
+			key ^= Zobrist.moved(last - state.getMovedSquare());
+		}
+		return key;
+	}
+
+	/**
+	 * Rotate a step by 180 degrees, it's its own inverse
+	 * @param step packed step
+	 * @param squares amount of dark squares
+	 * @return packed step on the rotated board
+	 */
+	static int rotate(int step, int squares) {
+		int killed = Step.killed(step);
+		return Step.pack(squares - 1 - Step.from(step), squares - 1 - Step.to(step),
+				killed >= 0 ? squares - 1 - killed : -1) | (step & Step.TRANSFORM);
+	}
+}
@@ -0,0 +1,129 @@
+package logic;
+
+import java.util.Arrays;
+
+/**
+ * A complete turn of the color playing: a single step or a whole kill chain
+ * with every stone it kills
+ */
+public class Path {
+
+	/**
+	 * Packed steps of the turn (see {@link Step})
+	 */
+	final int[] steps;
+
+	/**
+	 * @param steps packed steps of the turn
+	 */
+	public Path(int[] steps) {
+		this.steps = steps;
+	}
+
+	/**
+	 * @return packed steps of the turn
+	 */
+	public int[] getSteps() {
+		return steps.clone();
+	}
+
+	/**
+	 * @return amount of steps
+	 */
+	public int length() {
+		return steps.length;
+	}
+
+	/**
+	 * @param index index of the step
+	 * @return packed step
+	 */
+	public int get(int index) {
+		return steps[index];
+	}
+
+	/**
+	 * @return start square
+	 */
+	public int getFrom() {
+		return Step.from(steps[0]);
+	}
+
+	/**
+	 * @return square the stone finally lands on
+	 */
+	public int getTo() {
+		return Step.to(steps[steps.length - 1]);
+	}
+
+	/**
+	 * @return squares of the killed stones in the order they get killed
+	 */
+	public int[] getKilled() {
+		if (!isKill()) {
+			return new int[0];
+		}
+
+		int[] killed = new int[steps.length];
+		for (int i = 0; i < steps.length; i++) {
+			killed[i] = Step.killed(steps[i]);
+		}
+		return killed;
+	}
+
+	/**
+	 * @return if the turn kills stones
+	 */
+	public boolean isKill() {
+		return Step.isKill(steps[0]);
+	}
+
+	/**
+	 * @return if the stone gets transformed to a queen, in some variants
+	 *         also in the middle of a kill chain
+	 */
+	public boolean transforms() {
+		for (int step : steps) {
+			if (Step.transforms(step)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#equals(java.lang.Object)
+	 */
+	@Override
+	public boolean equals(Object o) {
+		if (this == o) {
+			return true;
+		}
+		if (o == null || getClass() != o.getClass()) {
+			return false;
+		}
+
+		return Arrays.equals(steps, ((Path) o).steps);
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#hashCode()
+	 */
+	@Override
+	public int hashCode() {
+		return Arrays.hashCode(steps);
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		StringBuilder builder = new StringBuilder();
+		builder.append(getFrom() + 1);
+		for (int step : steps) {
+			builder.append(Step.isKill(step) ? "x" : "-").append(Step.to(step) + 1);
+		}
+		return builder.toString();
+	}
+}
@@ -0,0 +1,573 @@
+package logic;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Reads game collections in Portable Draughts Notation (see
+ * {@link GameRecord}) one game after another, only the game being read is
+ * kept in memory.
+ *
+ * Every turn is checked against the allowed turns of the engine. Squares in
+ * the middle of a kill chain may be left out ("19x46"). Comments, variations,
+ * move numbers and annotations are skipped. The GameType tag selects the
+ * variant and the board size, the FEN tag the start position.
+ *
+ * A game ends at its result or at the tags of the next game, so games
+ * without tags can follow each other. Every game gets the byte offset where
+ * its text starts in the collection, so it can be read again later without
+ * reading the games before it.
+ */
+public class PdnReader implements Closeable {
+
+	/**
+	 * Source of the collection
+	 */
+	private final InputStream input;
+	/**
+	 * Encoding of the text
+	 */
+	private final Charset charset;
+	/**
+	 * Bytes read from the source and the part not used yet
+	 */
+	private final byte[] buffer = new byte[1 << 16];
+	private int position = 0;
+	private int limit = 0;
+	/**
+	 * Bytes of the line being read
+	 */
+	private byte[] line = new byte[256];
+	/**
+	 * Offset of the next byte in the collection
+	 */
+	private long offset = 0;
+	/**
+	 * Line read but belonging to the next game, null if none
+	 */
+	private String pending;
+	/**
+	 * Offset of the pending line
+	 */
+	private long pendingOffset;
+	/**
+	 * Offset of the text last returned by {@link #nextText()}
+	 */
+	private long textOffset;
+	/**
+	 * Games read so far
+	 */
+	private long games = 0;
+	/**
+	 * If {@link #forEach} stops before the next game
+	 */
+	private volatile boolean stopped = false;
+
+	/**
+	 * @param input source of the collection in UTF-8 (or ASCII)
+	 */
+	public PdnReader(InputStream input) {
+		this(input, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * @param input source of the collection
+	 * @param charset encoding of the text, one that keeps line breaks single bytes
+	 */
+	public PdnReader(InputStream input, Charset charset) {
+		this.input = input;
+		this.charset = charset;
+	}
+
+	/**
+	 * Read the next game
+	 * @return game, null at the end of the collection
+	 * @throws IOException if the collection can't be read
+	 * @throws IllegalArgumentException if the game isn't valid, the next call
+	 *             reads the game after it
+	 */
+	public GameRecord next() throws IOException {
+		String text = nextText();
+		return text == null ? null : parse(text, games, textOffset);
+	}
+
+	/**
+	 * Read a single game of a collection file
+	 * @param file collection in UTF-8
+	 * @param offset byte offset of the game, see {@link GameRecord#getOffset()}
+	 * @return game, null if there is none at the offset
+	 * @throws IOException if the file can't be read
+	 * @throws IllegalArgumentException if the game isn't valid
+	 */
+	public static GameRecord read(File file, long offset) throws IOException {
+		try (FileInputStream input = new FileInputStream(file)) {
+			input.getChannel().position(offset);
+			PdnReader reader = new PdnReader(input);
+			reader.offset = offset;
+			return reader.next();
+		}
+	}
+
+	/**
+	 * Read the text of the next game: its tags and the moves up to its
+	 * result or the tags of the game after it
+	 * @return text of the game, null at the end of the collection
+	 * @throws IOException if the collection can't be read
+	 */
+	String nextText() throws IOException {
+		StringBuilder text = new StringBuilder();
+		boolean moves = false;
+		boolean over = false;
+		int comment = 0;
+		int variation = 0;
+
+		long lineOffset = pending != null ? pendingOffset : offset;
+		String line = pending != null ? pending : readLine();
+		pending = null;
+		for (; line != null; lineOffset = offset, line = readLine()) {
+			String trimmed = line.trim();
+			if (text.length() == 0) {
+				// The game starts at its first line that isn't empty
+				if (trimmed.isEmpty()) {
+					continue;
+				}
+				textOffset = lineOffset;
+			}
+			if (comment == 0 && variation == 0 && trimmed.startsWith("[")) {
+				if (moves) {
+					// Tags of the next game
+					pending = line;
+					pendingOffset = lineOffset;
+					break;
+				}
+				text.append(line).append('\n');
+				continue;
+			}
+
+			// Comments can span lines and hold brackets, results in them don't count
+			int split = -1;
+			for (int i = 0; i < line.length() && split < 0; i++) {
+				char c = line.charAt(i);
+				if (c == '{') {
+					comment++;
+				} else if (c == '}' && comment > 0) {
+					comment--;
+				} else if (comment > 0 || Character.isWhitespace(c)) {
+					continue;
+				} else if (over) {
+					// The next game starts on the same line
+					split = i;
+				} else if (c == '(') {
+					variation++;
+				} else if (c == ')' && variation > 0) {
+					variation--;
+				} else if (variation == 0) {
+					int end = i;
+					while (end < line.length() && !Character.isWhitespace(line.charAt(end)) && line.charAt(end) != '{'
+							&& line.charAt(end) != '(') {
+						end++;
+					}
+					moves = true;
+					over = isResult(line.substring(i, end));
+					i = end - 1;
+				}
+			}
+
+			if (split >= 0) {
+				pending = line.substring(split);
+				pendingOffset = lineOffset + line.substring(0, split).getBytes(charset).length;
+				text.append(line, 0, split).append('\n');
+				break;
+			}
+			text.append(line).append('\n');
+			if (over && comment == 0) {
+				break;
+			}
+		}
+
+		if (text.toString().trim().isEmpty()) {
+			return null;
+		}
+		games++;
+		return text.toString();
+	}
+
+	/**
+	 * @return next line without its line break, null at the end of the collection
+	 * @throws IOException if the collection can't be read
+	 */
+	private String readLine() throws IOException {
+		int length = 0;
+		while (true) {
+			if (position == limit) {
+				limit = input.read(buffer);
+				position = 0;
+				if (limit <= 0) {
+					limit = 0;
+					if (length == 0) {
+						return null;
+					}
+					break;
+				}
+			}
+			byte b = buffer[position++];
+			offset++;
+			if (b == '\n') {
+				break;
+			}
+			if (length == line.length) {
+				byte[] longer = new byte[2 * length];
+				System.arraycopy(line, 0, longer, 0, length);
+				line = longer;
+			}
+			line[length++] = b;
+		}
+		if (length > 0 && line[length - 1] == '\r') {
+			length--;
+		}
+		return new String(line, 0, length, charset);
+	}
+
+	/**
+	 * Parse and check a game
+	 * @param text text of the game
+	 * @param number number of the game in the collection, for errors
+	 * @param offset byte offset of the game in the collection
+	 * @return game
+	 * @throws IllegalArgumentException if the game isn't valid
+	 */
+	static GameRecord parse(String text, long number, long offset) {
+		List<String[]> tags = new ArrayList<>();
+		Variant variant = Variant.STANDARD;
+		int pattern = 0;
+		String fen = null;
+		String result = GameRecord.UNKNOWN;
+
+		int length = text.length();
+		int i = 0;
+
+		// Tags like [Event "Name"]
+		while (true) {
+			while (i < length && Character.isWhitespace(text.charAt(i))) {
+				i++;
+			}
+			if (i >= length || text.charAt(i) != '[') {
+				break;
+			}
+			int open = text.indexOf('"', i);
+			int close = open < 0 ? -1 : closingQuote(text, open + 1);
+			int end = close < 0 ? -1 : text.indexOf(']', close);
+			int newline = text.indexOf('\n', i);
+			if (end < 0 || (newline >= 0 && newline < open)) {
+				throw invalid(number, "tag without value");
+			}
+			String name = text.substring(i + 1, open).trim();
+			String value = text.substring(open + 1, close).replace("\\\"", "\"").replace("\\\\", "\\");
+			i = end + 1;
+
+			switch (name) {
+			case "GameType":
+				String[] type = value.split(",");
+				try {
+					variant = GameRecord.variant(Integer.parseInt(type[0].trim()));
+					if (type.length >= 3) {
+						pattern = Integer.parseInt(type[1].trim());
+					}
+				} catch (NumberFormatException e) {
+					throw invalid(number, "unknown game type " + value);
+				}
+				break;
+			case "FEN":
+				fen = value;
+				break;
+			case "Result":
+				result = value;
+				break;
+			default:
+				tags.add(new String[] { name, value });
+			}
+		}
+
+		if (pattern == 0) {
+			pattern = variant.getPattern();
+		}
+		GameState start;
+		try {
+			start = fen != null ? Fen.parse(fen, pattern, variant) : GameRecord.defaultStart(variant, pattern);
+		} catch (IllegalArgumentException e) {
+			throw invalid(number, e.getMessage());
+		}
+		GameRecord record = new GameRecord(start);
+		record.offset = offset;
+		for (String[] tag : tags) {
+			record.setTag(tag[0], tag[1]);
+		}
+		record.setResult(result);
+
+		// Moves, the turns are checked on the state of the record
+		List<Path> paths = new ArrayList<>();
+		int[] squares = new int[Zobrist.MAX_SQUARES];
+		while (i < length) {
+			char c = text.charAt(i);
+			if (Character.isWhitespace(c)) {
+				i++;
+			} else if (c == '{') {
+				i = skip(text, i, '{', '}');
+			} else if (c == '(') {
+				i = skip(text, i, '(', ')');
+			} else if (c == '$') {
+				i++;
+				while (i < length && Character.isDigit(text.charAt(i))) {
+					i++;
+				}
+			} else {
+				int end = i;
+				while (end < length && !Character.isWhitespace(text.charAt(end)) && text.charAt(end) != '{'
+						&& text.charAt(end) != '(') {
+					end++;
+				}
+				String word = text.substring(i, end);
+				i = end;
+
+				if (isResult(word)) {
+					record.setResult(word);
+					break;
+				}
+				// Move number, the turn can follow without a space
+				word = word.substring(word.lastIndexOf('.') + 1);
+				if (word.isEmpty()) {
+					continue;
+				}
+
+				// Squares of the turn, annotations like "!" are cut off
+				int count = 0;
+				int square = 0;
+				boolean digits = false;
+				for (int k = 0; k < word.length(); k++) {
+					char d = word.charAt(k);
+					if (Character.isDigit(d)) {
+						square = square * 10 + d - '0';
+						digits = true;
+					} else if ((d == '-' || d == 'x' || d == 'X' || d == ':') && digits && count < squares.length) {
+						squares[count++] = square - 1;
+						square = 0;
+						digits = false;
+					} else if (d == '!' || d == '?') {
+						break;
+					} else {
+						throw invalid(number, "unknown move " + word);
+					}
+				}
+				if (!digits || count == 0 || count >= squares.length) {
+					throw invalid(number, "unknown move " + word);
+				}
+				squares[count++] = square - 1;
+
+				Path turn = find(record.current, paths, squares, count);
+				if (turn == null) {
+					throw invalid(number, "forbidden move " + word + " after " + record.getTurns().size() + " turns");
+				}
+				record.add(turn);
+			}
+		}
+		return record;
+	}
+
+	/**
+	 * Find the allowed turn with the squares given
+	 * @param state state of the turn
+	 * @param paths buffer for the allowed turns
+	 * @param squares start square, squares in between and destination square
+	 * @param count amount of squares
+	 * @return turn, null if no allowed turn matches
+	 */
+	private static Path find(GameState state, List<Path> paths, int[] squares, int count) {
+		paths.clear();
+		state.generatePaths(paths);
+		Path shortened = null;
+		for (Path path : paths) {
+			if (path.getFrom() != squares[0] || path.getTo() != squares[count - 1]) {
+				continue;
+			}
+			// All squares given, a queen can reach the same square in one kill or in a chain
+			boolean matches = count == path.length() + 1;
+			for (int k = 1; matches && k < count - 1; k++) {
+				matches = Step.to(path.get(k - 1)) == squares[k];
+			}
+			if (matches) {
+				return path;
+			}
+			if (count == 2 && shortened == null) {
+				shortened = path;
+			}
+		}
+		return shortened;
+	}
+
+	/**
+	 * @param word word of the moves
+	 * @return if the word is a game result
+	 */
+	private static boolean isResult(String word) {
+		switch (word) {
+		case "1-0":
+		case "0-1":
+		case "2-0":
+		case "0-2":
+		case "1-1":
+		case "1/2-1/2":
+		case "0-0":
+		case "*":
+			return true;
+		default:
+			return false;
+		}
+	}
+
+	/**
+	 * @param text text of the game
+	 * @param i index after the opening quote
+	 * @return index of the closing quote, -1 if there is none
+	 */
+	private static int closingQuote(String text, int i) {
+		for (; i < text.length(); i++) {
+			if (text.charAt(i) == '\\') {
+				i++;
+			} else if (text.charAt(i) == '"') {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * @param text text of the game
+	 * @param i index of the opening character
+	 * @param open opening character
+	 * @param close closing character
+	 * @return index after the closing character, nested ones included
+	 */
+	private static int skip(String text, int i, char open, char close) {
+		int depth = 0;
+		for (; i < text.length(); i++) {
+			char c = text.charAt(i);
+			if (c == open) {
+				depth++;
+			} else if (c == close && --depth == 0) {
+				return i + 1;
+			}
+		}
+		return i;
+	}
+
+	/**
+	 * @param number number of the game in the collection
+	 * @param message problem found
+	 * @return exception for an invalid game
+	 */
+	private static IllegalArgumentException invalid(long number, String message) {
+		return new IllegalArgumentException("Game " + number + ": " + message);
+	}
+
+	/**
+	 * Read all games, they are parsed and checked on a pool while the text
+	 * of the next ones is read. At most a few games per thread are waiting,
+	 * so the memory stays the same for any collection.
+	 * @param games gets every valid game, from the pool threads in any order
+	 * @param errors gets the problem of every invalid game
+	 * @param threads threads to parse on, 1 to parse on the calling thread in order
+	 * @return amount of games read
+	 * @throws IOException if the collection can't be read
+	 */
+	public long forEach(Consumer<GameRecord> games, Consumer<IllegalArgumentException> errors, int threads)
+			throws IOException {
+		if (threads <= 1) {
+			String text;
+			while (!stopped && (text = nextText()) != null) {
+				accept(text, this.games, textOffset, games, errors);
+			}
+			return this.games;
+		}
+
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		Semaphore waiting = new Semaphore(4 * threads);
+		try {
+			String next;
+			while (!stopped && (next = nextText()) != null) {
+				String text = next;
+				long number = this.games;
+				long offset = textOffset;
+				waiting.acquireUninterruptibly();
+				pool.execute(() -> {
+					try {
+						accept(text, number, offset, games, errors);
+					} finally {
+						waiting.release();
+					}
+				});
+			}
+		} finally {
+			pool.shutdown();
+			try {
+				pool.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		return this.games;
+	}
+
+	/**
+	 * Let {@link #forEach} return without reading more games, games already
+	 * read are still passed on. Can be called from the consumers.
+	 */
+	public void stop() {
+		stopped = true;
+	}
+
+	/**
+	 * @param text text of a game
+	 * @param number number of the game in the collection
+	 * @param offset byte offset of the game in the collection
+	 * @param games gets the game if it is valid
+	 * @param errors gets the problem if it isn't
+	 */
+	private static void accept(String text, long number, long offset, Consumer<GameRecord> games,
+			Consumer<IllegalArgumentException> errors) {
+		GameRecord record;
+		try {
+			record = parse(text, number, offset);
+		} catch (IllegalArgumentException e) {
+			errors.accept(e);
+			return;
+		}
+		games.accept(record);
+	}
+
+	/**
+	 * @return games read so far
+	 */
+	public long getGames() {
+		return games;
+	}
+
+	/* (non-Javadoc)
+	 * @see java.io.Closeable#close()
+	 */
+	@Override
+	public void close() throws IOException {
+		input.close();
+	}
+}
@@ -0,0 +1,196 @@
+package logic;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Counts the positions reachable in a number of turns (a kill chain is one
+ * turn), used to validate and measure the move generation.
+ *
+ * Usage: Perft depth [-pattern n] [-variant name] [-fen position] [-threads n] [-divide]
+ */
+public class Perft {
+
+	/**
+	 * @param args command line arguments
+	 */
+	public static void main(String[] args) {
+		if (args.length == 0) {
+			System.out.println("Usage: Perft depth [-pattern n] [-variant name] [-fen position] [-threads n] [-divide]");
+			return;
+		}
+
+		int depth = Integer.parseInt(args[0]);
+		int pattern = 0;
+		Variant variant = Variant.STANDARD;
+		String fen = null;
+		int threads = 1;
+		boolean divide = false;
+		for (int i = 1; i < args.length; i++) {
+			switch (args[i]) {
+			case "-pattern":
+				pattern = Integer.parseInt(args[++i]);
+				break;
+			case "-variant":
+				variant = Variant.parse(args[++i]);
+				break;
+			case "-fen":
+				fen = args[++i];
+				break;
+			case "-threads":
+				threads = Integer.parseInt(args[++i]);
+				break;
+			case "-divide":
+				divide = true;
+				break;
+			default:
+				throw new IllegalArgumentException("Unknown option " + args[i]);
+			}
+		}
+
+		GameState state = fen != null ? Fen.parse(fen, pattern, variant)
+				: GameState.start(pattern > 0 ? pattern : variant.getPattern(), variant);
+
+		if (divide) {
+			for (Path path : state.getPaths()) {
+				System.out.println(path + ": " + divide(state, path, depth));
+			}
+		}
+
+		long start = System.nanoTime();
+		long nodes = threads > 1 ? perft(state, depth, new ForkJoinPool(threads)) : perft(state, depth);
+		report("generator", nodes, System.nanoTime() - start);
+
+		// The stone lists only know the standard rules
+		if (variant == Variant.STANDARD) {
+			start = System.nanoTime();
+			nodes = legacy(state, depth);
+			report("legacy", nodes, System.nanoTime() - start);
+		}
+	}
+
+	/**
+	 * @param name name of the generator
+	 * @param nodes counted positions
+	 * @param nanos time needed
+	 */
+	private static void report(String name, long nodes, long nanos) {
+		System.out.printf("%-10s %12d nodes %8d ms %12d nodes/s%n", name, nodes, nanos / 1000000,
+				nodes * 1000000000L / Math.max(1, nanos));
+	}
+
+	/**
+	 * Count the positions with the packed step generator
+	 * @param state state to start from, it is the same again afterwards
+	 * @param depth turns to play
+	 * @return amount of positions
+	 */
+	public static long perft(GameState state, int depth) {
+		if (depth <= 0) {
+			return 1;
+		}
+		return perft(state, depth, new MoveList[Search.MAX_PLY], 0);
+	}
+
+	/**
+	 * Count the positions, the turns of the state are split across a pool
+	 * @param state state to start from
+	 * @param depth turns to play
+	 * @param pool pool to count on
+	 * @return amount of positions
+	 */
+	public static long perft(GameState state, int depth, ForkJoinPool pool) {
+		if (depth <= 0) {
+			return 1;
+		}
+
+		List<Path> paths = state.getPaths();
+		return pool.submit(() -> paths.parallelStream().mapToLong(path -> divide(state, path, depth)).sum()).join();
+	}
+
+	/**
+	 * Count the positions after a turn
+	 * @param state state to start from
+	 * @param path turn of the color playing
+	 * @param depth turns to play, the turn included
+	 * @return amount of positions
+	 */
+	public static long divide(GameState state, Path path, int depth) {
+		GameState copy = new GameState(state);
+		for (int i = 0; i < path.length(); i++) {
+			copy.make(path.get(i));
+		}
+		return perft(copy, depth - 1);
+	}
+
+	/**
+	 * @param state current state
+	 * @param depth remaining turns
+	 * @param lists step lists for every ply
+	 * @param ply plies from the start
+	 * @return amount of positions
+	 */
+	private static long perft(GameState state, int depth, MoveList[] lists, int ply) {
+		if (lists[ply] == null) {
+			lists[ply] = new MoveList(state.maxSteps());
+		}
+		MoveList steps = lists[ply];
+		state.generate(steps);
+
+		int color = state.getPlaying();
+		long nodes = 0;
+		for (int i = 0; i < steps.size(); i++) {
+			long undo = state.make(steps.get(i));
+
+			// A kill chain is continued by the same color
+			if (state.getPlaying() == color) {
+				nodes += perft(state, depth, lists, ply + 1);
+			} else if (depth == 1) {
+				nodes++;
+			} else {
+				nodes += perft(state, depth - 1, lists, ply + 1);
+			}
+
+			state.unmake(undo);
+		}
+		return nodes;
+	}
+
+	/**
+	 * Count the positions like the moves of the board did before the packed
+	 * steps: steps of every stone in lists and a copy of the state per step
+	 * @param state state to start from
+	 * @param depth turns to play
+	 * @return amount of positions
+	 */
+	public static long legacy(GameState state, int depth) {
+		if (depth <= 0) {
+			return 1;
+		}
+
+		List<Step> steps = new ArrayList<>();
+		if (state.getMovedSquare() >= 0) {
+			state.addSteps(state.getMovedSquare(), steps);
+			steps.removeIf(step -> !step.isKill());
+		} else {
+			for (int square = 0; square < state.getSquares(); square++) {
+				byte piece = state.getPiece(square);
+				if (piece != GameState.EMPTY && GameState.colorOf(piece) == state.getPlaying()) {
+					state.addSteps(square, steps);
+				}
+			}
+			if (steps.stream().anyMatch(Step::isKill)) {
+				steps.removeIf(step -> !step.isKill());
+			}
+		}
+
+		long nodes = 0;
+		for (Step step : steps) {
+			GameState copy = new GameState(state);
+			copy.play(step);
+			nodes += legacy(copy, copy.getPlaying() == state.getPlaying() ? depth : depth - 1);
+		}
+		return nodes;
+	}
+}
@@ -0,0 +1,333 @@
+package logic;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Index of the positions reached in a PDN archive (see {@link PdnReader}):
+ * for every position the games that reached it and how they ended. Built
+ * with an {@link IndexBuilder}.
+ *
+ * File layout (big endian): magic, board pattern and variant as ints, an
+ * unused int and the amount of entries as long, then the entries sorted by
+ * key, each a long key and a long with the byte offset of the game in the
+ * archive shifted left by 2 and its outcome in the lowest bits. The entries
+ * are mapped into memory, the key of every {@link #BLOCK}th entry is kept in
+ * a directory, so a lookup reads only a block of the file. Keys are the ones
+ * of the opening book ({@link OpeningBook#key(GameState)}).
+ */
+public class PositionIndex {
+
+	/**
+	 * First int of every index file
+	 */
+	static final int MAGIC = 0x444D4958;
+	/**
+	 * Size of the header and of every entry in bytes
+	 */
+	static final int HEADER = 24;
+	static final int ENTRY = 16;
+	/**
+	 * Entries per key in the directory
+	 */
+	static final int BLOCK = 256;
+	/**
+	 * Entries per mapped segment (a mapping holds at most 2 GB)
+	 */
+	private static final int SEGMENT = 1 << 26;
+
+	/**
+	 * Outcomes of the games
+	 */
+	public static final int BLACK_WON = GameState.BLACK;
+	public static final int WHITE_WON = GameState.WHITE;
+	public static final int DRAW = 2;
+	public static final int UNKNOWN = 3;
+
+	/**
+	 * Mapped entries
+	 */
+	private final ByteBuffer[] segments;
+	/**
+	 * Board pattern and variant of the indexed games
+	 */
+	private final int pattern;
+	private final Variant variant;
+	/**
+	 * Amount of entries
+	 */
+	private final long size;
+	/**
+	 * Key of the first entry of every block
+	 */
+	private final long[] directory;
+
+	/**
+	 * Games that reached a position and how they ended
+	 */
+	public static class Games {
+
+		/**
+		 * Amount of games by outcome
+		 */
+		private final long[] outcomes = new long[4];
+		/**
+		 * Byte offsets of the first games in the archive
+		 */
+		private final long[] offsets;
+		private int count = 0;
+
+		/**
+		 * @param limit games to keep the offset of
+		 */
+		Games(int limit) {
+			offsets = new long[limit];
+		}
+
+		/**
+		 * @param outcome outcome like {@link PositionIndex#DRAW}
+		 * @return amount of games with the outcome
+		 */
+		public long get(int outcome) {
+			return outcomes[outcome];
+		}
+
+		/**
+		 * @return amount of games
+		 */
+		public long size() {
+			return outcomes[BLACK_WON] + outcomes[WHITE_WON] + outcomes[DRAW] + outcomes[UNKNOWN];
+		}
+
+		/**
+		 * @return byte offsets of the first games in the archive, in the order of the archive
+		 */
+		public long[] getOffsets() {
+			long[] result = new long[count];
+			System.arraycopy(offsets, 0, result, 0, count);
+			return result;
+		}
+
+		/* (non-Javadoc)
+		 * @see java.lang.Object#toString()
+		 */
+		@Override
+		public String toString() {
+			return size() + " games, black " + outcomes[BLACK_WON] + ", white " + outcomes[WHITE_WON] + ", draw "
+					+ outcomes[DRAW] + ", unknown " + outcomes[UNKNOWN];
+		}
+	}
+
+	/**
+	 * @param header header of an index file
+	 * @param segments mapped entries
+	 * @throws IOException if the content isn't an index
+	 */
+	PositionIndex(ByteBuffer header, ByteBuffer[] segments) throws IOException {
+		if (header.limit() < HEADER || header.getInt(0) != MAGIC) {
+			throw new IOException("Not a position index");
+		}
+		this.segments = segments;
+		this.pattern = header.getInt(4);
+		this.variant = Variant.values()[header.getInt(8)];
+		this.size = header.getLong(16);
+
+		long mapped = 0;
+		for (ByteBuffer segment : segments) {
+			mapped += segment.limit() / ENTRY;
+		}
+		if (mapped < size) {
+			throw new IOException("Position index is truncated");
+		}
+
+		directory = new long[(int) ((size + BLOCK - 1) / BLOCK)];
+		for (int i = 0; i < directory.length; i++) {
+			directory[i] = keyAt((long) i * BLOCK);
+		}
+	}
+
+	/**
+	 * Map an index file into memory
+	 * @param file index file
+	 * @return position index
+	 * @throws IOException if the file can't be read or isn't an index
+	 */
+	public static PositionIndex open(File file) throws IOException {
+		try (RandomAccessFile input = new RandomAccessFile(file, "r"); FileChannel channel = input.getChannel()) {
+			long entries = Math.max(0, (channel.size() - HEADER) / ENTRY);
+			ByteBuffer[] segments = new ByteBuffer[(int) ((entries + SEGMENT - 1) / SEGMENT)];
+			for (int s = 0; s < segments.length; s++) {
+				long first = (long) s * SEGMENT;
+				long length = Math.min(SEGMENT, entries - first) * ENTRY;
+				segments[s] = channel.map(FileChannel.MapMode.READ_ONLY, HEADER + first * ENTRY, length);
+			}
+			// The mappings stay valid after the channel is closed
+			return new PositionIndex(channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(HEADER, channel.size())),
+					segments);
+		}
+	}
+
+	/**
+	 * @return board pattern of the indexed games
+	 */
+	public int getPattern() {
+		return pattern;
+	}
+
+	/**
+	 * @return variant of the indexed games
+	 */
+	public Variant getVariant() {
+		return variant;
+	}
+
+	/**
+	 * @return amount of entries, one for every position of every game
+	 */
+	public long size() {
+		return size;
+	}
+
+	/**
+	 * Find the games that reached a position
+	 * @param state game state, not in a kill chain
+	 * @param limit games to return the offset of
+	 * @return games with the position, none if the index is for another board or variant
+	 */
+	public Games lookup(GameState state, int limit) {
+		Games games = new Games(limit);
+		if (state.getPattern() != pattern || state.getVariant() != variant) {
+			return games;
+		}
+
+		long key = OpeningBook.key(state);
+		for (long i = first(key); i < size && keyAt(i) == key; i++) {
+			long value = valueAt(i);
+			games.outcomes[(int) (value & 3)]++;
+			if (games.count < limit) {
+				games.offsets[games.count++] = value >>> 2;
+			}
+		}
+		return games;
+	}
+
+	/**
+	 * Find the games that reached the positions after every allowed turn
+	 * @param state game state, not in a kill chain
+	 * @return games by turn, turns no game played are left out
+	 */
+	public Map<Path, Games> explore(GameState state) {
+		Map<Path, Games> turns = new LinkedHashMap<>();
+		List<Path> paths = state.getPaths();
+		for (Path path : paths) {
+			GameState next = new GameState(state);
+			for (int i = 0; i < path.length(); i++) {
+				next.make(path.get(i));
+			}
+			Games games = lookup(next, 0);
+			if (games.size() > 0) {
+				turns.put(path, games);
+			}
+		}
+		return turns;
+	}
+
+	/**
+	 * @param key key of a state
+	 * @return index of the first entry with the key or a larger one
+	 */
+	private long first(long key) {
+		// Last block starting with a smaller key, the key can only start there or after it
+		int low = 0;
+		int high = directory.length;
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (directory[middle] < key) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		if (low == 0) {
+			return 0;
+		}
+
+		long start = (long) (low - 1) * BLOCK;
+		long end = Math.min(start + BLOCK, size);
+		while (start < end) {
+			long middle = (start + end) >>> 1;
+			if (keyAt(middle) < key) {
+				start = middle + 1;
+			} else {
+				end = middle;
+			}
+		}
+		return start;
+	}
+
+	private long keyAt(long index) {
+		return segments[(int) (index / SEGMENT)].getLong((int) (index % SEGMENT) * ENTRY);
+	}
+
+	private long valueAt(long index) {
+		return segments[(int) (index / SEGMENT)].getLong((int) (index % SEGMENT) * ENTRY + 8);
+	}
+
+	/**
+	 * @param record game
+	 * @return outcome of the game like {@link #DRAW}
+	 */
+	static int outcome(GameRecord record) {
+		if (record.getResult().equals(GameRecord.UNKNOWN)) {
+			return UNKNOWN;
+		}
+		int winner = record.getWinner();
+		return winner == Match.DRAW ? DRAW : winner;
+	}
+
+	/**
+	 * Show the games of a position: its outcomes, the turns played from it
+	 * and the first games
+	 * @param args index file, archive, position in FEN (start position if left out)
+	 * @throws IOException if a file can't be read
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length < 2) {
+			System.out.println("Usage: PositionIndex index archive [fen] [-games n]");
+			return;
+		}
+
+		PositionIndex index = open(new File(args[0]));
+		File archive = new File(args[1]);
+		String fen = null;
+		int limit = 5;
+		for (int i = 2; i < args.length; i++) {
+			if (args[i].equals("-games")) {
+				limit = Integer.parseInt(args[++i]);
+			} else {
+				fen = args[i];
+			}
+		}
+		GameState state = fen != null ? Fen.parse(fen, index.getPattern(), index.getVariant())
+				: GameRecord.defaultStart(index.getVariant(), index.getPattern());
+
+		long start = System.nanoTime();
+		Games games = index.lookup(state, limit);
+		Map<Path, Games> turns = index.explore(state);
+		System.out.println(Fen.write(state) + ": " + games + " (" + (System.nanoTime() - start) / 1000 + " us)");
+		for (Map.Entry<Path, Games> turn : turns.entrySet()) {
+			System.out.println("  " + turn.getKey() + ": " + turn.getValue());
+		}
+		for (long offset : games.getOffsets()) {
+			GameRecord record = PdnReader.read(archive, offset);
+			System.out.println(offset + ": " + record.getTag("Event") + ", " + record.getTag("Date") + ", "
+					+ record.getResult() + ", " + record.getTurns().size() + " turns");
+		}
+	}
+}
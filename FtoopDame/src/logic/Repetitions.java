@@ -0,0 +1,114 @@
+package logic;
+
+/**
+ * Counts how often game states occurred, using their Zobrist hashes.
+ *
+ * Only states since the last kill or transformation are kept, older states
+ * can't occur again. Adding and counting a state takes constant time.
+ */
+public class Repetitions {
+
+	/**
+	 * Hashes in an open addressing table (0 = free slot)
+	 */
+	private long[] hashes = new long[128];
+	/**
+	 * Occurrences of every hash
+	 */
+	private int[] counts = new int[128];
+	/**
+	 * Used slots, so the table can be emptied without clearing every slot
+	 */
+	private int[] used = new int[128];
+	/**
+	 * Amount of used slots
+	 */
+	private int size = 0;
+
+	/**
+	 * Add a state
+	 * @param hash hash of the state
+	 * @return occurrences of the state, this one included
+	 */
+	public int add(long hash) {
+		// 0 marks a free slot
+		if (hash == 0) {
+			hash = 1;
+		}
+
+		if (2 * (size + 1) > hashes.length) {
+			grow();
+		}
+
+		int slot = slot(hash);
+		if (hashes[slot] == 0) {
+			hashes[slot] = hash;
+			used[size++] = slot;
+		}
+		return ++counts[slot];
+	}
+
+	/**
+	 * @param hash hash of the state
+	 * @return occurrences of the state
+	 */
+	public int count(long hash) {
+		if (hash == 0) {
+			hash = 1;
+		}
+		return counts[slot(hash)];
+	}
+
+	/**
+	 * Forget all states, called after a kill or a transformation
+	 */
+	public void reset() {
+		for (int i = 0; i < size; i++) {
+			hashes[used[i]] = 0;
+			counts[used[i]] = 0;
+		}
+		size = 0;
+	}
+
+	/**
+	 * @return amount of different states
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @param hash hash of the state
+	 * @return slot of the hash or the free slot where it belongs
+	 */
+	private int slot(long hash) {
+		int mask = hashes.length - 1;
+		int slot = (int) (hash ^ (hash >>> 32)) & mask;
+		while (hashes[slot] != 0 && hashes[slot] != hash) {
+			slot = (slot + 1) & mask;
+		}
+		return slot;
+	}
+
+	/**
+	 * Double the size of the table
+	 */
+	private void grow() {
+		long[] oldHashes = hashes;
+		int[] oldCounts = counts;
+		int[] oldUsed = used;
+		int oldSize = size;
+
+		hashes = new long[oldHashes.length * 2];
+		counts = new int[oldHashes.length * 2];
+		used = new int[oldHashes.length * 2];
+		size = 0;
+
+		for (int i = 0; i < oldSize; i++) {
+			int slot = slot(oldHashes[oldUsed[i]]);
+			hashes[slot] = oldHashes[oldUsed[i]];
+			counts[slot] = oldCounts[oldUsed[i]];
+			used[size++] = slot;
+		}
+	}
+}
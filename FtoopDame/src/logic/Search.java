@@ -0,0 +1,468 @@
+package logic;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Negamax alpha-beta search with iterative deepening, used by the bots.
+ *
+ * With a thread pool the search runs Lazy SMP: helper searches on the other
+ * threads search the same position and share their results through the
+ * transposition table, which lets the main search cut off sooner.
+ */
+public class Search {
+
+	/**
+	 * Score of a won game (reduced by the plies needed to win)
+	 */
+	public static final int WIN = 100000;
+	/**
+	 * Score of a position the tablebase knows as won (reduced by its distance)
+	 */
+	public static final int TABLEBASE = WIN / 2;
+	/**
+	 * Maximal plies searched, kill chains included
+	 */
+	static final int MAX_PLY = 128;
+
+	/**
+	 * Maximal depth in turns
+	 */
+	private int maxDepth;
+	/**
+	 * Time limit in milliseconds, 0 for no limit
+	 */
+	private long timeLimit;
+	/**
+	 * Time the search has to stop (System.nanoTime), 0 for no limit
+	 */
+	private volatile long deadline;
+	/**
+	 * Set if the search has to stop
+	 */
+	private volatile boolean stopped;
+	/**
+	 * Visited positions
+	 */
+	private long nodes;
+	/**
+	 * Table of searched positions, null if not used
+	 */
+	private TranspositionTable table;
+	/**
+	 * Evaluation of quiet states
+	 */
+	private Evaluation evaluation = new Evaluation();
+	/**
+	 * Results of positions with few stones, null if not used
+	 */
+	private Tablebase tablebase;
+
+	/**
+	 * Step lists for every ply
+	 */
+	private MoveList[] lists = new MoveList[MAX_PLY];
+	/**
+	 * Principal variation for every ply
+	 */
+	private int[][] pv = new int[MAX_PLY][MAX_PLY];
+	private int[] pvLength = new int[MAX_PLY];
+	/**
+	 * Principal variation of the last finished iteration
+	 */
+	private int[] lastPv = new int[0];
+
+	/**
+	 * @param maxDepth maximal depth in turns
+	 * @param timeLimit time limit in milliseconds, 0 for no limit
+	 */
+	public Search(int maxDepth, long timeLimit) {
+		this(maxDepth, timeLimit, null);
+	}
+
+	/**
+	 * @param maxDepth maximal depth in turns
+	 * @param timeLimit time limit in milliseconds, 0 for no limit
+	 * @param table table of searched positions, null if not used
+	 */
+	public Search(int maxDepth, long timeLimit, TranspositionTable table) {
+		this.maxDepth = maxDepth;
+		this.timeLimit = timeLimit;
+		this.table = table;
+	}
+
+	/**
+	 * @param evaluation evaluation of quiet states
+	 */
+	public void setEvaluation(Evaluation evaluation) {
+		this.evaluation = evaluation;
+	}
+
+	/**
+	 * @param tablebase results of positions with few stones, null to not use one
+	 */
+	public void setTablebase(Tablebase tablebase) {
+		this.tablebase = tablebase;
+	}
+
+	/**
+	 * Stop the search, the best step found so far is returned
+	 */
+	public void stop() {
+		stopped = true;
+	}
+
+	/**
+	 * Change the time limit of a running search, counted from now (used when
+	 * the opponent played the step a ponder search expected)
+	 * @param timeLimit time limit in milliseconds, 0 for no limit
+	 */
+	public synchronized void setTimeLimit(long timeLimit) {
+		this.timeLimit = timeLimit;
+		startClock();
+	}
+
+	/**
+	 * Start the time limit from now
+	 */
+	private synchronized void startClock() {
+		deadline = timeLimit > 0 ? System.nanoTime() + timeLimit * 1000000 : 0;
+	}
+
+	/**
+	 * Search the best step for the color playing
+	 * @param root state to search
+	 * @return result of the deepest finished iteration
+	 */
+	public Result search(GameState root) {
+		return search(root, null);
+	}
+
+	/**
+	 * Search the best step for the color playing, with helper searches on a
+	 * thread pool (the result is only deterministic without a pool)
+	 * @param root state to search
+	 * @param pool pool for the helper searches (one per thread), null to search alone
+	 * @return result of the deepest finished iteration
+	 */
+	public Result search(GameState root, ForkJoinPool pool) {
+		stopped = false;
+		if (table != null) {
+			table.newSearch();
+		}
+
+		// Helpers need the table to share their work
+		if (pool == null || table == null) {
+			return iterate(root, 1);
+		}
+
+		List<Search> helpers = new ArrayList<>();
+		List<ForkJoinTask<Result>> tasks = new ArrayList<>();
+		for (int i = 0; i < pool.getParallelism(); i++) {
+			// Half of the helpers search one turn ahead of the main search
+			Search helper = new Search(maxDepth, 0, table);
+			helper.setEvaluation(evaluation);
+			helper.setTablebase(tablebase);
+			int start = 1 + i % 2;
+			helpers.add(helper);
+			tasks.add(pool.submit(() -> helper.iterate(root, start)));
+		}
+
+		Result result = iterate(root, 1);
+
+		for (Search helper : helpers) {
+			helper.stop();
+		}
+		long helperNodes = 0;
+		for (int i = 0; i < tasks.size(); i++) {
+			Result other = tasks.get(i).join();
+			helperNodes += helpers.get(i).nodes;
+
+			// Use a deeper result of a helper
+			if (other != null && result != null && other.depth > result.depth && other.pv.length > 0) {
+				result = other;
+			}
+		}
+
+		return result == null ? null : new Result(result.pv, result.score, result.depth, nodes + helperNodes);
+	}
+
+	/**
+	 * Iterative deepening on a copy of the state
+	 * @param root state to search
+	 * @param start first depth to search
+	 * @return result of the deepest finished iteration
+	 */
+	private Result iterate(GameState root, int start) {
+		// Steps are run and taken back on a copy of the state
+		GameState state = new GameState(root);
+
+		nodes = 0;
+		lastPv = new int[0];
+		startClock();
+		long started = System.nanoTime();
+
+		Result result = null;
+		for (int depth = Math.min(start, maxDepth); depth <= maxDepth; depth++) {
+			int score = search(state, depth, -WIN - 1, WIN + 1, 0);
+
+			// Only use finished iterations
+			if (stopped && result != null) {
+				break;
+			}
+
+			lastPv = new int[pvLength[0]];
+			System.arraycopy(pv[0], 0, lastPv, 0, lastPv.length);
+			result = new Result(lastPv, score, depth, nodes);
+
+			// Stop if the game is decided or the time is up
+			if (stopped || Math.abs(score) > WIN - MAX_PLY) {
+				break;
+			}
+
+			// The next iteration takes longer than all before, don't start it if
+			// more than half of the time is used
+			long end = deadline;
+			if (end != 0 && System.nanoTime() - started > (end - started) / 2) {
+				break;
+			}
+		}
+
+		return result;
+	}
+
+	/**
+	 * @param state current state
+	 * @param depth remaining depth in turns
+	 * @param alpha lower bound
+	 * @param beta upper bound
+	 * @param ply plies from the root
+	 * @return score for the color playing
+	 */
+	private int search(GameState state, int depth, int alpha, int beta, int ply) {
+		pvLength[ply] = 0;
+
+		if ((++nodes & 1023) == 0 && deadline != 0 && System.nanoTime() > deadline) {
+			stopped = true;
+		}
+		if (stopped && ply > 0) {
+			return 0;
+		}
+
+		// Use the stored result of the position if it was searched deep enough
+		int hashStep = 0;
+		int alphaStart = alpha;
+		if (table != null) {
+			long data = table.probe(state.getHash());
+			if (data != 0) {
+				hashStep = TranspositionTable.step(data);
+				if (ply > 0 && TranspositionTable.depth(data) >= depth) {
+					int score = fromTable(TranspositionTable.score(data), ply);
+					int bound = TranspositionTable.bound(data);
+					if (bound == TranspositionTable.EXACT || (bound == TranspositionTable.LOWER && score >= beta)
+							|| (bound == TranspositionTable.UPPER && score <= alpha)) {
+						return score;
+					}
+				}
+			}
+		}
+
+		// Positions with few stones are looked up at the start of a turn
+		if (tablebase != null && ply > 0 && state.getMovedSquare() < 0
+				&& Tablebase.pieces(state) <= tablebase.getPieces()) {
+			int value = tablebase.probe(state);
+			if (value != Tablebase.UNKNOWN) {
+				return value > 0 ? TABLEBASE - value : value < 0 ? -TABLEBASE - value : 0;
+			}
+		}
+
+		if (lists[ply] == null) {
+			lists[ply] = new MoveList(state.maxSteps());
+		}
+		MoveList steps = lists[ply];
+		state.generate(steps);
+		int count = steps.size();
+
+		// No steps left, the color playing lost
+		if (count == 0) {
+			return -WIN + ply;
+		}
+
+		// Kills are mandatory, so only quiet positions are evaluated
+		if ((depth <= 0 && !Step.isKill(steps.get(0))) || ply == MAX_PLY - 1) {
+			return evaluate(state);
+		}
+
+		// Search the principal variation of the last iteration or the stored step first
+		int first = hashStep != 0 ? hashStep : ply < lastPv.length ? lastPv[ply] : 0;
+		if (first != 0) {
+			steps.moveToFront(first);
+		}
+
+		int color = state.getPlaying();
+		int best = -WIN - 1;
+		for (int i = 0; i < count; i++) {
+			long undo = state.make(steps.get(i));
+
+			// A kill chain is continued by the same color
+			int score;
+			if (state.getPlaying() == color) {
+				score = search(state, depth, alpha, beta, ply + 1);
+			} else {
+				score = -search(state, depth - 1, -beta, -alpha, ply + 1);
+			}
+
+			state.unmake(undo);
+
+			if (stopped && (ply > 0 || i > 0)) {
+				break;
+			}
+
+			if (score > best) {
+				best = score;
+
+				// Update principal variation
+				pv[ply][0] = steps.get(i);
+				System.arraycopy(pv[ply + 1], 0, pv[ply], 1, pvLength[ply + 1]);
+				pvLength[ply] = pvLength[ply + 1] + 1;
+
+				if (score > alpha) {
+					alpha = score;
+					if (alpha >= beta) {
+						break;
+					}
+				}
+			}
+		}
+
+		if (table != null && !stopped) {
+			int bound = best <= alphaStart ? TranspositionTable.UPPER
+					: best >= beta ? TranspositionTable.LOWER : TranspositionTable.EXACT;
+			table.store(state.getHash(), pv[ply][0], depth, bound, toTable(best, ply));
+		}
+
+		return best;
+	}
+
+	/**
+	 * Store win scores relative to the position instead of the root
+	 * @param score score relative to the root
+	 * @param ply plies from the root
+	 * @return score to store
+	 */
+	private static int toTable(int score, int ply) {
+		if (score > WIN - MAX_PLY) {
+			return score + ply;
+		} else if (score < -WIN + MAX_PLY) {
+			return score - ply;
+		}
+		return score;
+	}
+
+	/**
+	 * @param score stored score
+	 * @param ply plies from the root
+	 * @return score relative to the root
+	 */
+	private static int fromTable(int score, int ply) {
+		if (score > WIN - MAX_PLY) {
+			return score - ply;
+		} else if (score < -WIN + MAX_PLY) {
+			return score + ply;
+		}
+		return score;
+	}
+
+	/**
+	 * Evaluate a quiet state
+	 * @param state state to evaluate
+	 * @return score for the color playing
+	 */
+	int evaluate(GameState state) {
+		return evaluation.evaluate(state);
+	}
+
+	/**
+	 * Result of a search
+	 */
+	public static class Result {
+
+		/**
+		 * Principal variation (packed steps)
+		 */
+		private int[] pv;
+		/**
+		 * Score for the color playing
+		 */
+		private int score;
+		/**
+		 * Finished depth in turns
+		 */
+		private int depth;
+		/**
+		 * Visited positions
+		 */
+		private long nodes;
+
+		/**
+		 * @param pv principal variation
+		 * @param score score for the color playing
+		 * @param depth finished depth
+		 * @param nodes visited positions
+		 */
+		Result(int[] pv, int score, int depth, long nodes) {
+			this.pv = pv;
+			this.score = score;
+			this.depth = depth;
+			this.nodes = nodes;
+		}
+
+		/**
+		 * @return best step, null if there is no step
+		 */
+		public Step getBest() {
+			return pv.length > 0 ? new Step(pv[0]) : null;
+		}
+
+		/**
+		 * @return principal variation (packed steps)
+		 */
+		int[] getSteps() {
+			return pv;
+		}
+
+		/**
+		 * @return principal variation
+		 */
+		public List<Step> getPv() {
+			List<Step> steps = new ArrayList<>();
+			for (int step : pv) {
+				steps.add(new Step(step));
+			}
+			return steps;
+		}
+
+		/**
+		 * @return score for the color playing
+		 */
+		public int getScore() {
+			return score;
+		}
+
+		/**
+		 * @return finished depth in turns
+		 */
+		public int getDepth() {
+			return depth;
+		}
+
+		/**
+		 * @return visited positions
+		 */
+		public long getNodes() {
+			return nodes;
+		}
+	}
+}
@@ -0,0 +1,79 @@
+package logic;
+
+import java.util.Random;
+
+/**
+ * Agent choosing its steps with a search, like the bots of the board.
+ * It keeps its search and table, so it can only play one match at a time.
+ */
+public class SearchAgent implements Agent {
+
+	/**
+	 * Search used for every step
+	 */
+	private Search search;
+	/**
+	 * Allowed steps, reused for every step
+	 */
+	private MoveList steps = new MoveList();
+	/**
+	 * Opening book to play from before searching, null if there is none
+	 */
+	private OpeningBook book;
+	/**
+	 * Random numbers to choose steps of the book
+	 */
+	private Random random = new Random();
+
+	/**
+	 * @param depth maximal depth in turns
+	 * @param timeLimit time limit for every search in milliseconds, 0 for no limit
+	 * @param hash size of the table in MB, 0 for no table
+	 */
+	public SearchAgent(int depth, long timeLimit, int hash) {
+		search = new Search(depth, timeLimit, hash > 0 ? new TranspositionTable(hash) : null);
+	}
+
+	/**
+	 * @param evaluation evaluation of quiet states
+	 */
+	public void setEvaluation(Evaluation evaluation) {
+		search.setEvaluation(evaluation);
+	}
+
+	/**
+	 * @param book opening book to play from before searching, null for none
+	 * @param seed seed of the random numbers to choose steps of the book
+	 */
+	public void setBook(OpeningBook book, long seed) {
+		this.book = book;
+		this.random = new Random(seed);
+	}
+
+	/**
+	 * @param tablebase results of positions with few stones, null to not use one
+	 */
+	public void setTablebase(Tablebase tablebase) {
+		search.setTablebase(tablebase);
+	}
+
+	/* (non-Javadoc)
+	 * @see logic.Agent#choose(logic.GameState)
+	 */
+	@Override
+	public int choose(GameState state) {
+		state.generate(steps);
+		if (steps.size() == 1) {
+			return steps.get(0);
+		}
+		if (book != null) {
+			int step = book.probe(state, steps, random);
+			if (step != 0) {
+				return step;
+			}
+		}
+
+		Search.Result result = search.search(state);
+		return result.getBest().pack();
+	}
+}
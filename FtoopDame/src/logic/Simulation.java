@@ -1,153 +1,101 @@
 package logic;
 
-import java.util.Collections;
-import java.util.List;
-import java.util.stream.Collectors;
-
-import gui.Board;
-import gui.Field;
-import gui.Stone;
 import settings.Player;
 
 /**
- * Simulate a board to derminate best moves
+ * Simulate moves on a copy of the game state to derminate best moves
  */
-public class Simulation extends Board {
+public class Simulation {
 
 	/**
-	 * Real player on non-simulated board
+	 * Real player on the board
 	 */
 	Player realPlayer;
 	/**
-	 * Copy of the player
+	 * Copy of the game state, every simulated step is taken back afterwards
 	 */
-	Player player;
+	GameState state;
 	/**
-	 * Move that gets simulated
+	 * Step lists for every step of a kill chain
 	 */
-	Move move;
+	MoveList[] lists = new MoveList[Search.MAX_PLY];
 
 	/**
 	 * @param player
 	 */
 	public Simulation(Player player) {
-		super(player.getBoard().getGame());
-		this.simulation = true;
 		this.realPlayer = player;
-		// start simulation board
-		start();
-	}
-
-	/* (non-Javadoc)
-	 * @see gui.Board#start()
-	 */
-	public void start() {
-		super.start();
-		copy();
+		this.state = new GameState(player.getBoard().getState());
 	}
 
 	/**
-	 * 
+	 * Simulate on a position without a board (e.g. read with {@link Fen})
+	 * @param state game state, it isn't changed
 	 */
-	public void copy() {
-		// Copy everything from board
-		Board board = realPlayer.getBoard();
-		pattern = board.getPattern();
-
-		reset();
-
+	public Simulation(GameState state) {
+		this.state = new GameState(state);
 	}
 
 	/**
-	 * 
+	 * @param step packed step of the color playing
+	 * @return score of the step
 	 */
-	public void reset() {
-
-		// empty all fields
-		for (Field[] row : fields) {
-			for (Field field : row) {
-				field.setStone(null);
-			}
-		}
-
-		// set stone from simulated players like real player
-		for (int i = 0; i < players.length; i++) {
-			players[i].createBot(false);
-			players[i].clearStones();
-			List<Stone> stones = realPlayer.getBoard().getPlayers()[i].getStones();
-			for (Stone stone : stones) {
-				Stone stoneCopy = new Stone(players[i], stone.getX(), stone.getY());
-				players[i].addStone(stoneCopy);
-				fields[stone.getY()][stone.getX()].setStone(stoneCopy);
-			}
-
-			if (players[i].getColor() == realPlayer.getColor()) {
-				player = players[i];
-			}
-		}
-
-		setPlaying(player);
-
+	public int simulate(int step) {
+		return simulate(step, 0);
 	}
 
 	/**
 	 * @param move
 	 */
 	public void simulate(Move move) {
+		Step step = move.getStep();
+		move.setScore(simulate(step.pack(), 0));
+	}
 
-		// Original Field
-		Field orgOriginField = move.getStone().getField();
-		Field orgTargetField = move.getField();
-
-		// Simulated field
-		Field originField = fields[orgOriginField.getCoords().get("y")][orgOriginField.getCoords().get("x")];
-		Field targetField = fields[orgTargetField.getCoords().get("y")][orgTargetField.getCoords().get("x")];
+	/**
+	 * Run a step on the state, score it and take it back
+	 * @param step packed step to simulate
+	 * @param depth steps of the kill chain before this step
+	 * @return score of the step
+	 */
+	private int simulate(int step, int depth) {
+		int color = state.getPlaying();
+		int opponent = 1 - color;
 
 		int score = 0;
 
-		// Simulate move
-		Move sim = new Move(player, originField.getStone(), targetField);
-
-		Stone stone = sim.getStone();
-		boolean isQueen = stone.isQueen();
-		Player opponent = player.getOpponent();
 		// Get kill moves of opnnent before move got run
-		int opponentInitKills = opponent.getMoves().stream().filter(m -> m.getType() == Move.Type.KILL).collect(Collectors.toList()).size();
+		int opponentInitKills = state.countKills(opponent);
 
-		sim.run();
+		long undo = state.make(step);
 
 		// check if stone transformed after move
-		if (isQueen != stone.isQueen()) {
+		if (GameState.isTransformed(undo)) {
 			score += 20;
 		}
 
-		switch (sim.getType()) {
-		case MOVE:
+		if (!Step.isKill(step)) {
 			score += 1;
-			break;
-		case KILL:
-			// If simulated move has next moves run those
-			if (sim.getNextMoves().size() > 0) {
-				score += 1;
-				Simulation deep = new Simulation(player);
-				List<Move> nextMoves = sim.getNextMoves();
-				for (Move m : nextMoves) {
-					deep.simulate(m);
-				}
-
-				Collections.sort(nextMoves, Collections.reverseOrder());
-				score += nextMoves.get(0).getScore();
-			} else {
-				score += 5;
+		} else if (state.getPlaying() == color) {
+			// If simulated move has next moves run those and take the best
+			score += 1;
+			if (lists[depth] == null) {
+				lists[depth] = new MoveList(state.maxSteps());
 			}
+			MoveList steps = lists[depth];
+			state.generate(steps);
 
-			break;
-		default:
-			break;
+			int best = -9999;
+			for (int i = 0; i < steps.size(); i++) {
+				best = Math.max(best, simulate(steps.get(i), depth + 1));
+			}
+			score += best;
+		} else {
+			score += 5;
 		}
 
 		// Get kills of opnnenent after the move has run
-		int opponentNewKills = opponent.getMoves().stream().filter(m -> m.getType() == Move.Type.KILL).collect(Collectors.toList()).size();
+		int opponentNewKills = state.countKills(opponent);
 
 		// Check if amount of kills has changed
 		if (opponentInitKills > opponentNewKills) {
@@ -159,15 +107,8 @@ public class Simulation extends Board {
 		}
 
 		// Reset the simulation
-		reset();
-		move.setScore(score);
-	}
-
-	/* (non-Javadoc)
-	 * @see gui.Board#stop()
-	 */
-	public void stop() {
-		running = false;
+		state.unmake(undo);
+		return score;
 	}
 
 }
@@ -0,0 +1,178 @@
+package logic;
+
+/**
+ * A single step of a stone on the game state (one field or one jump).
+ *
+ * The move generators and the search use steps packed into an int:
+ * start square (8 bits), destination square (8 bits), killed square + 1
+ * (8 bits, 0 if nothing gets killed) and the transformation flag (1 bit).
+ */
+public class Step {
+
+	/**
+	 * Flag of a packed step that transforms the stone to a queen
+	 */
+	public static final int TRANSFORM = 1 << 24;
+
+	/**
+	 * Square the stone starts on
+	 */
+	final int from;
+	/**
+	 * Square the stone lands on
+	 */
+	final int to;
+	/**
+	 * Square of the killed stone, -1 if nothing gets killed
+	 */
+	final int killed;
+	/**
+	 * If the stone gets transformed to a queen
+	 */
+	final boolean transforms;
+
+	/**
+	 * @param from start square
+	 * @param to destination square
+	 * @param killed square of the killed stone or -1
+	 * @param transforms if the stone gets transformed to a queen
+	 */
+	public Step(int from, int to, int killed, boolean transforms) {
+		this.from = from;
+		this.to = to;
+		this.killed = killed;
+		this.transforms = transforms;
+	}
+
+	/**
+	 * @param packed packed step
+	 */
+	public Step(int packed) {
+		this(from(packed), to(packed), killed(packed), transforms(packed));
+	}
+
+	/**
+	 * Pack a step into an int
+	 * @param from start square
+	 * @param to destination square
+	 * @param killed square of the killed stone or -1
+	 * @return packed step
+	 */
+	public static int pack(int from, int to, int killed) {
+		return from | to << 8 | (killed + 1) << 16;
+	}
+
+	/**
+	 * @return this step packed into an int
+	 */
+	public int pack() {
+		return pack(from, to, killed) | (transforms ? TRANSFORM : 0);
+	}
+
+	/**
+	 * @param packed packed step
+	 * @return start square
+	 */
+	public static int from(int packed) {
+		return packed & 0xFF;
+	}
+
+	/**
+	 * @param packed packed step
+	 * @return destination square
+	 */
+	public static int to(int packed) {
+		return (packed >>> 8) & 0xFF;
+	}
+
+	/**
+	 * @param packed packed step
+	 * @return square of the killed stone or -1
+	 */
+	public static int killed(int packed) {
+		return ((packed >>> 16) & 0xFF) - 1;
+	}
+
+	/**
+	 * @param packed packed step
+	 * @return if the packed step kills a stone
+	 */
+	public static boolean isKill(int packed) {
+		return (packed & 0xFF0000) != 0;
+	}
+
+	/**
+	 * @param packed packed step
+	 * @return if the stone gets transformed to a queen
+	 */
+	public static boolean transforms(int packed) {
+		return (packed & TRANSFORM) != 0;
+	}
+
+	/**
+	 * @return start square
+	 */
+	public int getFrom() {
+		return from;
+	}
+
+	/**
+	 * @return destination square
+	 */
+	public int getTo() {
+		return to;
+	}
+
+	/**
+	 * @return square of the killed stone or -1
+	 */
+	public int getKilled() {
+		return killed;
+	}
+
+	/**
+	 * @return if this step kills a stone
+	 */
+	public boolean isKill() {
+		return killed >= 0;
+	}
+
+	/**
+	 * @return if the stone gets transformed to a queen
+	 */
+	public boolean transforms() {
+		return transforms;
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#equals(java.lang.Object)
+	 */
+	@Override
+	public boolean equals(Object o) {
+		if (this == o) {
+			return true;
+		}
+		if (o == null || getClass() != o.getClass()) {
+			return false;
+		}
+
+		Step step = (Step) o;
+		return from == step.from && to == step.to;
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#hashCode()
+	 */
+	@Override
+	public int hashCode() {
+		return from * 256 + to;
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return (from + 1) + (isKill() ? "x" : "-") + (to + 1);
+	}
+}
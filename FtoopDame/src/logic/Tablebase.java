@@ -0,0 +1,522 @@
+package logic;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Endgame tablebase: the result of every position with a few stones, read
+ * from files written by {@link TablebaseGenerator}.
+ *
+ * Every material (regular stones and queens of both colors) has a file with
+ * a value for every placement of the stones and every color playing. The
+ * values are compressed in blocks, the file is mapped into memory and a block
+ * is only inflated when a position of it is looked up.
+ *
+ * Values are for the color playing at the start of a turn: 0 for a draw, a
+ * positive value for a win and a negative value for a loss. The magnitude is
+ * one more than the turns until the losing color has no steps left, at most
+ * {@link #LONGEST}: a longer game runs into the draw rule and is stored as a
+ * draw. Positions are stored with black moving down.
+ */
+public class Tablebase {
+
+	/**
+	 * Value of positions the tablebase doesn't know
+	 */
+	public static final int UNKNOWN = Integer.MIN_VALUE;
+	/**
+	 * Largest magnitude of a value, the game ends within {@link Match#THRESHOLD}
+	 * turns without a kill or a transformation
+	 */
+	public static final int LONGEST = Match.THRESHOLD + 1;
+	/**
+	 * First int of every tablebase file
+	 */
+	static final int MAGIC = 0x444D5442;
+	/**
+	 * Positions per compressed block
+	 */
+	static final int BLOCK = 4096;
+	/**
+	 * Most stones of a material
+	 */
+	static final int MAX_PIECES = 8;
+	/**
+	 * Groups of stones of a material, in the order they are indexed
+	 */
+	static final byte[] GROUPS = { GameState.BLACK_MAN, GameState.BLACK_QUEEN, GameState.WHITE_MAN,
+			GameState.WHITE_QUEEN };
+
+	/**
+	 * Binomial coefficients to number the placements of stones
+	 */
+	private static final long[][] BINOMIAL = new long[Zobrist.MAX_SQUARES + 1][MAX_PIECES + 1];
+
+	static {
+		for (int n = 0; n <= Zobrist.MAX_SQUARES; n++) {
+			BINOMIAL[n][0] = 1;
+			for (int k = 1; k <= MAX_PIECES && k <= n; k++) {
+				BINOMIAL[n][k] = BINOMIAL[n - 1][k - 1] + BINOMIAL[n - 1][k];
+			}
+		}
+	}
+
+	/**
+	 * Board pattern of the tables
+	 */
+	private final int pattern;
+	/**
+	 * Tables by material
+	 */
+	private final Map<Integer, Table> tables = new HashMap<>();
+	/**
+	 * Most stones of a loaded table
+	 */
+	private int pieces = 0;
+
+	/**
+	 * @param pattern board pattern of the tables
+	 */
+	private Tablebase(int pattern) {
+		this.pattern = pattern;
+	}
+
+	/**
+	 * Map all tables of a directory into memory
+	 * @param directory directory with the tablebase files
+	 * @return tablebase
+	 * @throws IOException if a file can't be read or the files don't belong together
+	 */
+	public static Tablebase open(File directory) throws IOException {
+		File[] files = directory.listFiles((dir, name) -> name.endsWith(".tb"));
+		if (files == null || files.length == 0) {
+			throw new IOException("No tablebase files in " + directory);
+		}
+
+		Tablebase tablebase = null;
+		for (File file : files) {
+			Table table;
+			try (RandomAccessFile input = new RandomAccessFile(file, "r"); FileChannel channel = input.getChannel()) {
+				// The mapping stays valid after the channel is closed
+				table = new Table(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+			}
+			if (tablebase == null) {
+				tablebase = new Tablebase(table.pattern);
+			} else if (table.pattern != tablebase.pattern) {
+				throw new IOException("Tablebase file " + file + " is for another board");
+			}
+			tablebase.tables.put(table.material, table);
+			tablebase.pieces = Math.max(tablebase.pieces, pieces(table.material));
+		}
+		return tablebase;
+	}
+
+	/**
+	 * @return board pattern of the tables
+	 */
+	public int getPattern() {
+		return pattern;
+	}
+
+	/**
+	 * @return most stones of a position the tablebase could know
+	 */
+	public int getPieces() {
+		return pieces;
+	}
+
+	/**
+	 * Look up a position at the start of a turn
+	 * @param state game state
+	 * @return value for the color playing, {@link #UNKNOWN} if the tablebase doesn't know it
+	 */
+	public int probe(GameState state) {
+		// Generated with the standard rules
+		if (state.getPattern() != pattern || state.getMovedSquare() >= 0 || state.getVariant() != Variant.STANDARD) {
+			return UNKNOWN;
+		}
+
+		int material = material(state);
+		int playing = state.getPlaying();
+		if (count(material, playing) == 0) {
+			// No stones left, the color playing lost
+			return -1;
+		}
+
+		Table table = tables.get(material);
+		if (table == null) {
+			return UNKNOWN;
+		}
+		return table.value(index(state, material, OpeningBook.isRotated(state)));
+	}
+
+	/**
+	 * Find the best turn of a known position: the fastest win, a draw or the
+	 * slowest loss
+	 * @param state game state
+	 * @return best turn, null if the tablebase doesn't know the position
+	 */
+	public Path best(GameState state) {
+		if (probe(state) == UNKNOWN) {
+			return null;
+		}
+
+		Path best = null;
+		int bestScore = Integer.MIN_VALUE;
+		GameState copy = new GameState(state);
+		List<Path> paths = copy.getPaths();
+		for (Path path : paths) {
+			long[] undo = new long[path.length()];
+			for (int i = 0; i < path.length(); i++) {
+				undo[i] = copy.make(path.get(i));
+			}
+			int value = probe(copy);
+			for (int i = path.length() - 1; i >= 0; i--) {
+				copy.unmake(undo[i]);
+			}
+			if (value == UNKNOWN) {
+				return null;
+			}
+
+			int score = score(-value);
+			if (score > bestScore) {
+				best = path;
+				bestScore = score;
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * @param value tablebase value
+	 * @return score to compare values, higher is better
+	 */
+	static int score(int value) {
+		if (value > 0) {
+			return 1000 - value;
+		} else if (value < 0) {
+			return -1000 - value;
+		}
+		return 0;
+	}
+
+	/**
+	 * @param state game state
+	 * @return amount of stones
+	 */
+	static int pieces(GameState state) {
+		return state.count(GameState.BLACK, false) + state.count(GameState.BLACK, true)
+				+ state.count(GameState.WHITE, false) + state.count(GameState.WHITE, true);
+	}
+
+	/**
+	 * @param state game state
+	 * @return material of the state: amount of stones of every group, 4 bits each
+	 */
+	static int material(GameState state) {
+		return material(state.count(GameState.BLACK, false), state.count(GameState.BLACK, true),
+				state.count(GameState.WHITE, false), state.count(GameState.WHITE, true));
+	}
+
+	/**
+	 * @param blackMen regular black stones
+	 * @param blackQueens black queens
+	 * @param whiteMen regular white stones
+	 * @param whiteQueens white queens
+	 * @return material
+	 */
+	static int material(int blackMen, int blackQueens, int whiteMen, int whiteQueens) {
+		return blackMen | blackQueens << 4 | whiteMen << 8 | whiteQueens << 12;
+	}
+
+	/**
+	 * @param material material
+	 * @param group group index (see {@link #GROUPS})
+	 * @return amount of stones of the group
+	 */
+	static int group(int material, int group) {
+		return (material >>> (4 * group)) & 0xF;
+	}
+
+	/**
+	 * @param material material
+	 * @return amount of stones
+	 */
+	static int pieces(int material) {
+		return group(material, 0) + group(material, 1) + group(material, 2) + group(material, 3);
+	}
+
+	/**
+	 * @param material material
+	 * @param color color index
+	 * @return amount of stones of the color
+	 */
+	static int count(int material, int color) {
+		return group(material, 2 * color) + group(material, 2 * color + 1);
+	}
+
+	/**
+	 * @param material material
+	 * @return file name of the table
+	 */
+	static String name(int material) {
+		return group(material, 0) + "m" + group(material, 1) + "q-" + group(material, 2) + "m" + group(material, 3)
+				+ "q.tb";
+	}
+
+	/**
+	 * @param material material
+	 * @param squares amount of dark squares
+	 * @return placements of the stones for one color playing
+	 */
+	static long placements(int material, int squares) {
+		long placements = 1;
+		int free = squares;
+		for (int group = 0; group < GROUPS.length; group++) {
+			placements *= BINOMIAL[free][group(material, group)];
+			free -= group(material, group);
+		}
+		return placements;
+	}
+
+	/**
+	 * @param material material
+	 * @param squares amount of dark squares
+	 * @return amount of positions of the table
+	 */
+	static long size(int material, int squares) {
+		return 2 * placements(material, squares);
+	}
+
+	/**
+	 * Number a position: the color playing, then the squares of every group
+	 * counted without the squares of the groups before
+	 * @param state game state with the material
+	 * @param material material of the state
+	 * @param rotated if the state is read rotated by 180 degrees
+	 * @return index of the position in its table
+	 */
+	static long index(GameState state, int material, boolean rotated) {
+		int squares = state.getSquares();
+		int[] taken = new int[MAX_PIECES];
+		int placed = 0;
+
+		long index = 0;
+		for (int group = 0; group < GROUPS.length; group++) {
+			int free = squares - placed;
+			int stones = group(material, group);
+			int start = placed;
+			long rank = 0;
+			for (int square = 0, k = 0; square < squares && k < stones; square++) {
+				if (state.getPiece(rotated ? squares - 1 - square : square) == GROUPS[group]) {
+					rank += BINOMIAL[square - below(taken, start, square)][++k];
+					taken[placed++] = square;
+				}
+			}
+			index = index * BINOMIAL[free][stones] + rank;
+		}
+		return state.getPlaying() * placements(material, squares) + index;
+	}
+
+	/**
+	 * Place the stones of a position on an empty state
+	 * @param state state without stones
+	 * @param material material of the table
+	 * @param index index of the position
+	 * @param placed squares of the placed stones
+	 */
+	static void place(GameState state, int material, long index, int[] placed) {
+		int squares = state.getSquares();
+		long placements = placements(material, squares);
+		state.setPlaying((int) (index / placements));
+
+		// Split the index into the ranks of the groups
+		long[] ranks = new long[GROUPS.length];
+		long rest = index % placements;
+		int free = squares - pieces(material);
+		for (int group = GROUPS.length - 1; group >= 0; group--) {
+			int stones = group(material, group);
+			free += stones;
+			ranks[group] = rest % BINOMIAL[free][stones];
+			rest /= BINOMIAL[free][stones];
+		}
+
+		int count = 0;
+		for (int group = 0; group < GROUPS.length; group++) {
+			int start = count;
+			long rank = ranks[group];
+			int relative = squares - start;
+			for (int k = group(material, group); k > 0; k--) {
+				// Largest relative square with a coefficient that fits
+				relative--;
+				while (BINOMIAL[relative][k] > rank) {
+					relative--;
+				}
+				rank -= BINOMIAL[relative][k];
+				placed[count++] = absolute(placed, start, relative);
+			}
+			for (int i = start; i < count; i++) {
+				state.setPiece(placed[i], GROUPS[group]);
+			}
+		}
+	}
+
+	/**
+	 * @param taken squares of the stones placed before
+	 * @param count amount of those stones
+	 * @param square square index
+	 * @return amount of taken squares below the square
+	 */
+	private static int below(int[] taken, int count, int square) {
+		int below = 0;
+		for (int i = 0; i < count; i++) {
+			if (taken[i] < square) {
+				below++;
+			}
+		}
+		return below;
+	}
+
+	/**
+	 * @param taken squares of the stones placed before
+	 * @param count amount of those stones
+	 * @param relative square counted without the taken squares
+	 * @return square index
+	 */
+	private static int absolute(int[] taken, int count, int relative) {
+		int square = relative;
+		for (boolean moved = true; moved;) {
+			// Skip every taken square up to the square
+			moved = false;
+			int skipped = square - relative;
+			int below = 0;
+			for (int i = 0; i < count; i++) {
+				if (taken[i] <= square) {
+					below++;
+				}
+			}
+			if (below != skipped) {
+				square = relative + below;
+				moved = true;
+			}
+		}
+		return square;
+	}
+
+	/**
+	 * Table of one material, mapped into memory
+	 */
+	static class Table {
+
+		/**
+		 * Board pattern and material of the table
+		 */
+		final int pattern;
+		final int material;
+		/**
+		 * Amount of positions
+		 */
+		final long size;
+		/**
+		 * Start of every compressed block and the end of the last one
+		 */
+		private final long[] offsets;
+		/**
+		 * Content of the file
+		 */
+		private final ByteBuffer buffer;
+		/**
+		 * Last inflated block of every thread
+		 */
+		private final ThreadLocal<Block> cache = ThreadLocal.withInitial(Block::new);
+
+		/**
+		 * File layout (big endian): magic, pattern and material as ints, the
+		 * amount of positions as a long, the amount of blocks as an int, the
+		 * offsets of the blocks and their end as longs, then the blocks
+		 * @param buffer content of a table file
+		 * @throws IOException if the content isn't a table
+		 */
+		Table(ByteBuffer buffer) throws IOException {
+			if (buffer.limit() < 24 || buffer.getInt(0) != MAGIC) {
+				throw new IOException("Not a tablebase file");
+			}
+			this.buffer = buffer;
+			this.pattern = buffer.getInt(4);
+			this.material = buffer.getInt(8);
+			this.size = buffer.getLong(12);
+			int blocks = buffer.getInt(20);
+			offsets = new long[blocks + 1];
+			for (int i = 0; i <= blocks; i++) {
+				offsets[i] = buffer.getLong(24 + 8 * i);
+			}
+			if (offsets[blocks] > buffer.limit()) {
+				throw new IOException("Tablebase file is truncated");
+			}
+		}
+
+		/**
+		 * @param index index of a position
+		 * @return value of the position
+		 */
+		int value(long index) {
+			int number = (int) (index / BLOCK);
+			Block block = cache.get();
+			if (block.number != number) {
+				block.inflate(buffer, offsets[number], (int) (offsets[number + 1] - offsets[number]));
+				block.number = number;
+			}
+			return block.values[(int) (index % BLOCK)];
+		}
+	}
+
+	/**
+	 * Inflated block of values
+	 */
+	private static class Block {
+
+		/**
+		 * Number of the block, -1 if none is inflated
+		 */
+		int number = -1;
+		/**
+		 * Values of the block
+		 */
+		final byte[] values = new byte[BLOCK];
+		/**
+		 * Compressed block
+		 */
+		byte[] input = new byte[0];
+		final Inflater inflater = new Inflater();
+
+		/**
+		 * @param buffer content of the file
+		 * @param offset start of the compressed block
+		 * @param length length of the compressed block
+		 */
+		void inflate(ByteBuffer buffer, long offset, int length) {
+			if (input.length < length) {
+				input = new byte[length];
+			}
+			ByteBuffer block = buffer.duplicate();
+			block.position((int) offset);
+			block.get(input, 0, length);
+
+			inflater.reset();
+			inflater.setInput(input, 0, length);
+			try {
+				inflater.inflate(values);
+			} catch (DataFormatException e) {
+				throw new IllegalStateException("Tablebase block is broken", e);
+			}
+		}
+	}
+}
@@ -0,0 +1,523 @@
+package logic;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+import java.util.zip.Deflater;
+
+/**
+ * Generates the tables of a {@link Tablebase} with retrograde analysis.
+ *
+ * The tables are generated from the fewest stones up, so the table after a
+ * kill or a transformation is always known already. For every material the
+ * turns of all positions are generated once on a thread pool, then the
+ * results are spread backwards from the positions without steps: a position
+ * wins if a turn leads to a loss of the opponent and loses once all turns
+ * lead to wins of the opponent. Positions that are left are draws.
+ *
+ * A table has no kills and no transformations, so a game staying in it longer
+ * than {@link Match#THRESHOLD} turns is a draw by the draw rule. Results are
+ * only spread up to {@link Tablebase#LONGEST}, wins and losses taking longer
+ * are stored as draws (even if a kill on the way would reset the count).
+ *
+ * Usage: TablebaseGenerator directory [-pieces n] [-pattern n] [-threads n]
+ */
+public class TablebaseGenerator {
+
+	/**
+	 * Position of a table without a result yet
+	 */
+	private static final int OPEN = Integer.MIN_VALUE;
+
+	/**
+	 * Board pattern of the tables
+	 */
+	private final int pattern;
+	/**
+	 * Amount of dark squares
+	 */
+	private final int squares;
+	/**
+	 * Pool the turns are generated on
+	 */
+	private final ForkJoinPool pool;
+	/**
+	 * Values of the generated tables by material (see {@link Tablebase})
+	 */
+	private final Map<Integer, int[]> values = new HashMap<>();
+
+	/**
+	 * @param pattern board pattern
+	 * @param pool pool to generate the turns on
+	 */
+	public TablebaseGenerator(int pattern, ForkJoinPool pool) {
+		this.pattern = pattern;
+		this.squares = new GameState(pattern).getSquares();
+		this.pool = pool;
+	}
+
+	/**
+	 * All materials with both colors on the board, in the order they have to
+	 * be generated: fewer stones first, then fewer regular stones (they get
+	 * transformed to queens)
+	 * @param pieces most stones
+	 * @return materials
+	 */
+	static List<Integer> materials(int pieces) {
+		List<Integer> materials = new ArrayList<>();
+		for (int total = 2; total <= pieces; total++) {
+			for (int men = 0; men <= total; men++) {
+				for (int blackMen = 0; blackMen <= men; blackMen++) {
+					int whiteMen = men - blackMen;
+					for (int blackQueens = 0; blackQueens <= total - men; blackQueens++) {
+						int whiteQueens = total - men - blackQueens;
+						if (blackMen + blackQueens > 0 && whiteMen + whiteQueens > 0) {
+							materials.add(Tablebase.material(blackMen, blackQueens, whiteMen, whiteQueens));
+						}
+					}
+				}
+			}
+		}
+		return materials;
+	}
+
+	/**
+	 * Generate the table of a material, the tables it depends on have to be
+	 * generated already
+	 * @param material material
+	 * @return values of all positions
+	 */
+	public int[] generate(int material) {
+		long size = Tablebase.size(material, squares);
+		if (size >= 1 << 30) {
+			throw new IllegalArgumentException("Table " + Tablebase.name(material) + " is too large");
+		}
+		int positions = (int) size;
+
+		// Generate the turns of all positions in chunks
+		int chunks = Math.max(1, (positions + Tablebase.BLOCK - 1) / Tablebase.BLOCK);
+		Turns[] turns = new Turns[chunks];
+		pool.submit(() -> IntStream.range(0, chunks).parallel().forEach(chunk -> {
+			int first = chunk * Tablebase.BLOCK;
+			turns[chunk] = new Turns(material, first, Math.min(positions, first + Tablebase.BLOCK));
+		})).join();
+
+		// Turns staying in the table, backwards
+		int[] remaining = new int[positions];
+		int[] predecessorStart = new int[positions + 1];
+		for (Turns chunk : turns) {
+			for (int i = 0; i < chunk.count(); i++) {
+				remaining[chunk.first + i] = chunk.degree(i);
+				for (int j = chunk.begin(i); j < chunk.begin(i + 1); j++) {
+					predecessorStart[chunk.successors[j] + 1]++;
+				}
+			}
+		}
+		for (int i = 0; i < positions; i++) {
+			predecessorStart[i + 1] += predecessorStart[i];
+		}
+		int[] predecessors = new int[predecessorStart[positions]];
+		int[] filled = Arrays.copyOf(predecessorStart, positions);
+		for (Turns chunk : turns) {
+			for (int i = 0; i < chunk.count(); i++) {
+				for (int j = chunk.begin(i); j < chunk.begin(i + 1); j++) {
+					predecessors[filled[chunk.successors[j]]++] = chunk.first + i;
+				}
+			}
+		}
+
+		// Positions are resolved in the order of their distance, a win with the
+		// first one found and a loss once all turns are known to lose, until the
+		// draw rule ends the game
+		int[] result = new int[positions];
+		Arrays.fill(result, OPEN);
+		int[] longestLoss = new int[positions];
+		Queue queue = new Queue();
+		for (Turns chunk : turns) {
+			for (int i = 0; i < chunk.count(); i++) {
+				int position = chunk.first + i;
+				longestLoss[position] = chunk.longestLoss[i];
+				if (chunk.fastestWin[i] > 0) {
+					queue.add(chunk.fastestWin[i], position);
+				} else if (remaining[position] == 0 && !chunk.draw[i]) {
+					// Without any steps the position is lost right away
+					queue.add(-Math.max(1, chunk.longestLoss[i]), position);
+				}
+			}
+		}
+
+		for (int distance = 1; distance < queue.size() && distance <= Tablebase.LONGEST; distance++) {
+			for (int i = 0; i < queue.size(distance); i++) {
+				int position = queue.get(distance, i);
+				boolean win = position >= 0;
+				position = win ? position : ~position;
+				if (result[position] != OPEN) {
+					continue;
+				}
+				result[position] = win ? distance : -distance;
+
+				for (int j = predecessorStart[position]; j < predecessorStart[position + 1]; j++) {
+					int predecessor = predecessors[j];
+					if (result[predecessor] != OPEN) {
+						continue;
+					}
+					if (!win) {
+						// A turn to a loss of the opponent wins
+						queue.add(distance + 1, predecessor);
+					} else {
+						longestLoss[predecessor] = Math.max(longestLoss[predecessor], distance + 1);
+						if (--remaining[predecessor] == 0 && !turns[predecessor / Tablebase.BLOCK].canWinOrDraw(predecessor)) {
+							queue.add(-longestLoss[predecessor], predecessor);
+						}
+					}
+				}
+			}
+		}
+
+		// Positions without a result are draws, also the ones taking too long
+		for (int i = 0; i < positions; i++) {
+			if (result[i] == OPEN) {
+				result[i] = 0;
+			}
+		}
+		values.put(material, result);
+		return result;
+	}
+
+	/**
+	 * Generate and write all tables up to an amount of stones
+	 * @param pieces most stones
+	 * @param directory directory to write the files to
+	 * @param log gets a line with the results of every table, null for none
+	 * @throws IOException if a file can't be written
+	 */
+	public void generateAll(int pieces, File directory, PrintStream log) throws IOException {
+		directory.mkdirs();
+		for (int material : materials(pieces)) {
+			long start = System.nanoTime();
+			int[] result = generate(material);
+			File file = new File(directory, Tablebase.name(material));
+			write(file, material, result);
+			if (log == null) {
+				continue;
+			}
+
+			int[] counts = new int[3];
+			for (int value : result) {
+				counts[Integer.signum(value) + 1]++;
+			}
+			log.printf("%-12s %10d positions %9d wins %9d draws %9d losses %6d ms%n", file.getName(), result.length,
+					counts[2], counts[1], counts[0], (System.nanoTime() - start) / 1000000);
+		}
+	}
+
+	/**
+	 * Write a table, values are stored as bytes and compressed in blocks
+	 * @param file table file
+	 * @param material material of the table
+	 * @param result values of all positions
+	 * @throws IOException if the file can't be written
+	 */
+	void write(File file, int material, int[] result) throws IOException {
+		int blocks = (result.length + Tablebase.BLOCK - 1) / Tablebase.BLOCK;
+		ByteArrayOutputStream data = new ByteArrayOutputStream();
+		long[] offsets = new long[blocks + 1];
+		long header = 24 + 8L * (blocks + 1);
+
+		Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+		byte[] block = new byte[Tablebase.BLOCK];
+		byte[] compressed = new byte[2 * Tablebase.BLOCK + 64];
+		for (int i = 0; i < blocks; i++) {
+			offsets[i] = header + data.size();
+			int length = Math.min(Tablebase.BLOCK, result.length - i * Tablebase.BLOCK);
+			for (int j = 0; j < length; j++) {
+				// Never more than the longest result, the draw rule keeps it small
+				int value = result[i * Tablebase.BLOCK + j];
+				if (Math.abs(value) > Tablebase.LONGEST) {
+					throw new IllegalStateException("Value " + value + " of " + file.getName() + " doesn't fit the table");
+				}
+				block[j] = (byte) value;
+			}
+
+			deflater.reset();
+			deflater.setInput(block, 0, length);
+			deflater.finish();
+			while (!deflater.finished()) {
+				data.write(compressed, 0, deflater.deflate(compressed));
+			}
+		}
+		offsets[blocks] = header + data.size();
+		deflater.end();
+
+		try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+			output.writeInt(Tablebase.MAGIC);
+			output.writeInt(pattern);
+			output.writeInt(material);
+			output.writeLong(result.length);
+			output.writeInt(blocks);
+			for (long offset : offsets) {
+				output.writeLong(offset);
+			}
+			data.writeTo(output);
+		}
+	}
+
+	/**
+	 * Turns of a chunk of positions: successors in the same table and the
+	 * best and worst results of the turns to other tables
+	 */
+	private class Turns {
+
+		/**
+		 * First position of the chunk
+		 */
+		final int first;
+		/**
+		 * Start of the successors of every position and the end of the last ones
+		 */
+		private int[] starts;
+		/**
+		 * Successors in the same table
+		 */
+		int[] successors = new int[0];
+		private int size = 0;
+		/**
+		 * Distance of the fastest win by a turn to another table, 0 if there is none
+		 */
+		final int[] fastestWin;
+		/**
+		 * Distance of the slowest loss by a turn to another table
+		 */
+		final int[] longestLoss;
+		/**
+		 * If a turn to another table is a draw
+		 */
+		final boolean[] draw;
+
+		/**
+		 * @param material material of the table
+		 * @param first first position
+		 * @param end end of the positions
+		 */
+		Turns(int material, int first, int end) {
+			this.first = first;
+			int count = end - first;
+			starts = new int[count + 1];
+			fastestWin = new int[count];
+			longestLoss = new int[count];
+			draw = new boolean[count];
+
+			GameState state = new GameState(pattern);
+			int[] placed = new int[Tablebase.MAX_PIECES];
+			MoveList[] lists = new MoveList[Search.MAX_PLY];
+			for (int i = 0; i < count; i++) {
+				Tablebase.place(state, material, first + i, placed);
+				starts[i] = size;
+				turns(state, material, i, lists, 0);
+				for (int j = 0; j < Tablebase.pieces(material); j++) {
+					state.setPiece(placed[j], GameState.EMPTY);
+				}
+			}
+			starts[count] = size;
+		}
+
+		/**
+		 * Walk all turns of a position, kill chains depth first
+		 * @param state state of the position
+		 * @param material material of the table
+		 * @param i position in the chunk
+		 * @param lists step lists for every step of a chain
+		 * @param length steps of the chain so far
+		 */
+		private void turns(GameState state, int material, int i, MoveList[] lists, int length) {
+			if (lists[length] == null) {
+				lists[length] = new MoveList(state.maxSteps());
+			}
+			MoveList steps = lists[length];
+			state.generate(steps);
+
+			int color = state.getPlaying();
+			for (int s = 0; s < steps.size(); s++) {
+				long undo = state.make(steps.get(s));
+				if (state.getPlaying() == color) {
+					// The same stone kills again
+					turns(state, material, i, lists, length + 1);
+				} else {
+					successor(state, material, i);
+				}
+				state.unmake(undo);
+			}
+		}
+
+		/**
+		 * Add the state after a turn
+		 * @param state state after the turn
+		 * @param material material of the table
+		 * @param i position in the chunk
+		 */
+		private void successor(GameState state, int material, int i) {
+			int after = Tablebase.material(state);
+			if (after == material) {
+				if (size == successors.length) {
+					successors = Arrays.copyOf(successors, Math.max(64, 2 * size));
+				}
+				successors[size++] = (int) Tablebase.index(state, material, false);
+				return;
+			}
+
+			// Value of the opponent in the other table
+			int value;
+			if (Tablebase.count(after, state.getPlaying()) == 0) {
+				value = -1;
+			} else {
+				value = values.get(after)[(int) Tablebase.index(state, after, false)];
+			}
+
+			if (value < 0) {
+				int win = 1 - value;
+				fastestWin[i] = fastestWin[i] == 0 ? win : Math.min(fastestWin[i], win);
+			} else if (value > 0) {
+				longestLoss[i] = Math.max(longestLoss[i], value + 1);
+			} else {
+				draw[i] = true;
+			}
+		}
+
+		/**
+		 * @return amount of positions
+		 */
+		int count() {
+			return starts.length - 1;
+		}
+
+		/**
+		 * @param i position in the chunk
+		 * @return start of the successors of the position
+		 */
+		int begin(int i) {
+			return starts[i];
+		}
+
+		/**
+		 * @param i position in the chunk
+		 * @return amount of successors in the same table
+		 */
+		int degree(int i) {
+			return starts[i + 1] - starts[i];
+		}
+
+		/**
+		 * @param position position of the table
+		 * @return if a turn to another table wins or is a draw
+		 */
+		boolean canWinOrDraw(int position) {
+			return fastestWin[position - first] > 0 || draw[position - first];
+		}
+	}
+
+	/**
+	 * Positions by distance, wins as their index and losses inverted
+	 */
+	private static class Queue {
+
+		/**
+		 * Positions of every distance
+		 */
+		private final List<int[]> entries = new ArrayList<>();
+		private final List<Integer> sizes = new ArrayList<>();
+
+		/**
+		 * @param distance distance of the result, negative for a loss
+		 * @param position position of the table
+		 */
+		void add(int distance, int position) {
+			boolean win = distance > 0;
+			distance = Math.abs(distance);
+			while (entries.size() <= distance) {
+				entries.add(new int[16]);
+				sizes.add(0);
+			}
+			int[] positions = entries.get(distance);
+			int size = sizes.get(distance);
+			if (size == positions.length) {
+				positions = Arrays.copyOf(positions, 2 * size);
+				entries.set(distance, positions);
+			}
+			positions[size] = win ? position : ~position;
+			sizes.set(distance, size + 1);
+		}
+
+		/**
+		 * @return distances up to the largest one
+		 */
+		int size() {
+			return entries.size();
+		}
+
+		/**
+		 * @param distance distance
+		 * @return amount of positions with the distance
+		 */
+		int size(int distance) {
+			return sizes.get(distance);
+		}
+
+		/**
+		 * @param distance distance
+		 * @param i index of the position
+		 * @return position, inverted for a loss
+		 */
+		int get(int distance, int i) {
+			return entries.get(distance)[i];
+		}
+	}
+
+	/**
+	 * @param args command line arguments
+	 * @throws IOException if a file can't be written
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length == 0) {
+			System.out.println("Usage: TablebaseGenerator directory [-pieces n] [-pattern n] [-threads n]");
+			return;
+		}
+
+		File directory = new File(args[0]);
+		int pieces = 4;
+		int pattern = 8;
+		int threads = Runtime.getRuntime().availableProcessors();
+		for (int i = 1; i < args.length; i++) {
+			switch (args[i]) {
+			case "-pieces":
+				pieces = Integer.parseInt(args[++i]);
+				break;
+			case "-pattern":
+				pattern = Integer.parseInt(args[++i]);
+				break;
+			case "-threads":
+				threads = Integer.parseInt(args[++i]);
+				break;
+			default:
+				throw new IllegalArgumentException("Unknown option " + args[i]);
+			}
+		}
+		if (pieces > Tablebase.MAX_PIECES) {
+			throw new IllegalArgumentException("At most " + Tablebase.MAX_PIECES + " stones are supported");
+		}
+
+		long start = System.nanoTime();
+		new TablebaseGenerator(pattern, new ForkJoinPool(threads)).generateAll(pieces, directory, System.out);
+		System.out.println("done in " + (System.nanoTime() - start) / 1000000 + " ms");
+	}
+}
@@ -0,0 +1,452 @@
+package logic;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Tournament between engine configurations without the board: round robin
+ * or a gauntlet of the first engine against all others, the games are
+ * played in parallel on a {@link GameHost}. Only a few games are played at
+ * once, the agents of a game (and their transposition tables) are created
+ * when it starts and its result is recorded as soon as it is over.
+ *
+ * Every opening starts with a few random turns and is played twice, once
+ * with each engine as black. The results are printed as a crosstable with
+ * Elo estimates.
+ *
+ * An engine is given as "name;option=value;...", the options are depth,
+ * level (depth of a bot difficulty), time (milliseconds per search), hash
+ * (MB), weights (like "man=100,queen=300"), book (opening book file) and
+ * tablebase (tablebase directory).
+ *
+ * Usage: Tournament -engine spec -engine spec... [-gauntlet] [-games n]
+ * [-random n] [-pattern n] [-variant name] [-threads n] [-seed n]
+ */
+public class Tournament {
+
+	/**
+	 * Random games tried for every opening needed before giving up
+	 */
+	private static final int OPENING_TRIES = 100;
+
+	/**
+	 * Engines taking part
+	 */
+	private final List<Engine> engines = new ArrayList<>();
+	/**
+	 * Points (a draw is half a point) and games of every engine against every other
+	 */
+	private double[][] points;
+	private int[][] games;
+	/**
+	 * Wins, draws and losses of every engine
+	 */
+	private int[][] results;
+
+	/**
+	 * @param engine engine to take part
+	 */
+	public void add(Engine engine) {
+		engines.add(engine);
+	}
+
+	/**
+	 * Play all games of the tournament
+	 * @param gauntlet if only the first engine plays against the others
+	 * @param rounds games of every pairing, half of them with each engine as black
+	 * @param random random turns of every opening
+	 * @param pattern board pattern
+	 * @param variant rules of the games
+	 * @param threads threads to play on
+	 * @param seed seed of the openings
+	 * @return played turns
+	 */
+	public long play(boolean gauntlet, int rounds, int random, int pattern, Variant variant, int threads, long seed) {
+		int size = engines.size();
+		points = new double[size][size];
+		games = new int[size][size];
+		results = new int[size][3];
+
+		// The same openings for every pairing
+		List<GameState> openings = new ArrayList<>();
+		int needed = (rounds + 1) / 2;
+		for (long i = 0; openings.size() < needed; i++) {
+			if (i >= (long) OPENING_TRIES * needed) {
+				throw new IllegalArgumentException("Only " + openings.size() + " of " + needed + " openings found in " + i
+						+ " tries, the games are over within " + random + " random turns");
+			}
+			GameState opening = opening(pattern, variant, random, seed + i);
+			if (opening != null) {
+				openings.add(opening);
+			}
+		}
+
+		GameHost host = new GameHost(threads);
+		Semaphore running = new Semaphore(2 * threads);
+		AtomicReference<Throwable> failed = new AtomicReference<>();
+		long[] turns = new long[1];
+		long gameSeed = seed;
+		for (int a = 0; a < size; a++) {
+			for (int b = a + 1; b < size; b++) {
+				if (gauntlet && a > 0) {
+					continue;
+				}
+				for (int round = 0; round < rounds && failed.get() == null; round++) {
+					// Colors alternate, every opening is played by both engines as black
+					int black = round % 2 == 0 ? a : b;
+					int white = round % 2 == 0 ? b : a;
+					running.acquireUninterruptibly();
+					Match match = new Match(openings.get(round / 2), engines.get(black).create(gameSeed),
+							engines.get(white).create(gameSeed + 1));
+					gameSeed++;
+					host.submit(match).whenComplete((played, e) -> {
+						try {
+							if (e != null) {
+								failed.compareAndSet(null, e);
+							} else {
+								double score = played.getWinner() == GameState.BLACK ? 1
+										: played.getWinner() == GameState.WHITE ? 0 : 0.5;
+								synchronized (this) {
+									turns[0] += played.getTurns();
+									record(black, white, score);
+									record(white, black, 1 - score);
+								}
+							}
+						} finally {
+							running.release();
+						}
+					});
+				}
+			}
+		}
+
+		// Wait for the last games
+		running.acquireUninterruptibly(2 * threads);
+		host.shutdown();
+		if (failed.get() != null) {
+			throw new IllegalStateException("Tournament game failed", failed.get());
+		}
+		return turns[0];
+	}
+
+	/**
+	 * @param pattern board pattern
+	 * @param variant rules of the game
+	 * @param random random turns
+	 * @param seed seed of the random turns
+	 * @return start position after the random turns, null if the game is over by then
+	 */
+	static GameState opening(int pattern, Variant variant, int random, long seed) {
+		GameState opening = GameState.start(pattern, variant);
+		Agent agent = Agent.random(seed);
+		MoveList steps = new MoveList();
+		for (int turn = 0; turn < random; turn++) {
+			int color = opening.getPlaying();
+			while (opening.getPlaying() == color) {
+				opening.generate(steps);
+				if (steps.size() == 0) {
+					return null;
+				}
+				opening.make(agent.choose(opening));
+			}
+		}
+		opening.generate(steps);
+		return steps.size() > 0 ? opening : null;
+	}
+
+	/**
+	 * @param engine engine index
+	 * @param opponent opponent index
+	 * @param score score of the engine in the game
+	 */
+	private void record(int engine, int opponent, double score) {
+		points[engine][opponent] += score;
+		games[engine][opponent]++;
+		results[engine][score == 1 ? 0 : score == 0 ? 2 : 1]++;
+	}
+
+	/**
+	 * @param engine engine index
+	 * @param opponent opponent index
+	 * @return points of the engine against the opponent
+	 */
+	public double getPoints(int engine, int opponent) {
+		return points[engine][opponent];
+	}
+
+	/**
+	 * @param engine engine index
+	 * @param opponent opponent index
+	 * @return games of the engine against the opponent
+	 */
+	public int getGames(int engine, int opponent) {
+		return games[engine][opponent];
+	}
+
+	/**
+	 * Estimate the Elo ratings from all games (maximum likelihood of the
+	 * Bradley-Terry model, every pairing counts one draw more so no rating is
+	 * infinite), the average rating is 0
+	 * @return ratings of the engines
+	 */
+	public double[] elo() {
+		int size = engines.size();
+		double[] strength = new double[size];
+		Arrays.fill(strength, 1);
+
+		for (int iteration = 0; iteration < 1000; iteration++) {
+			double[] next = new double[size];
+			for (int i = 0; i < size; i++) {
+				double won = 0;
+				double expected = 0;
+				for (int j = 0; j < size; j++) {
+					if (games[i][j] > 0) {
+						won += points[i][j] + 0.5;
+						expected += (games[i][j] + 1) / (strength[i] + strength[j]);
+					}
+				}
+				next[i] = expected > 0 ? won / expected : 1;
+			}
+			strength = next;
+		}
+
+		double[] elo = new double[size];
+		double average = 0;
+		for (int i = 0; i < size; i++) {
+			elo[i] = 400 * Math.log10(strength[i]);
+			average += elo[i] / size;
+		}
+		for (int i = 0; i < size; i++) {
+			elo[i] -= average;
+		}
+		return elo;
+	}
+
+	/**
+	 * Print the crosstable: points of the row against the column
+	 */
+	public void print() {
+		int size = engines.size();
+		int width = 8;
+		for (Engine engine : engines) {
+			width = Math.max(width, engine.name.length() + 1);
+		}
+
+		StringBuilder header = new StringBuilder(String.format("%-" + width + "s", ""));
+		for (Engine engine : engines) {
+			header.append(String.format("%" + width + "s", engine.name));
+		}
+		header.append(String.format("%9s%7s%13s%7s", "points", "games", "w-d-l", "elo"));
+		System.out.println(header);
+
+		double[] elo = elo();
+		for (int i = 0; i < size; i++) {
+			StringBuilder row = new StringBuilder(String.format("%-" + width + "s", engines.get(i).name));
+			double total = 0;
+			int played = 0;
+			for (int j = 0; j < size; j++) {
+				String cell = i == j ? "-" : games[i][j] == 0 ? "" : format(points[i][j]) + "/" + games[i][j];
+				row.append(String.format("%" + width + "s", cell));
+				total += points[i][j];
+				played += games[i][j];
+			}
+			row.append(String.format("%9s%7d%13s%7.0f", format(total), played,
+					results[i][0] + "-" + results[i][1] + "-" + results[i][2], elo[i]));
+			System.out.println(row);
+		}
+	}
+
+	/**
+	 * @param points points
+	 * @return points without a fraction if there is none
+	 */
+	private static String format(double points) {
+		return points == Math.floor(points) ? String.valueOf((long) points) : String.valueOf(points);
+	}
+
+	/**
+	 * Configuration of a search agent
+	 */
+	public static class Engine {
+
+		/**
+		 * Opened books and tablebases by file, shared by all engines
+		 */
+		private static final Map<String, Object> FILES = new HashMap<>();
+
+		/**
+		 * Name in the crosstable
+		 */
+		final String name;
+		/**
+		 * Search depth in turns, time limit in milliseconds and table size in MB
+		 */
+		int depth = 5;
+		long time = 0;
+		int hash = 1;
+		/**
+		 * Evaluation weights, default weights if null
+		 */
+		String weights;
+		/**
+		 * Opening book and tablebase, null if not used
+		 */
+		OpeningBook book;
+		Tablebase tablebase;
+
+		/**
+		 * @param name name in the crosstable
+		 */
+		public Engine(String name) {
+			this.name = name;
+		}
+
+		/**
+		 * Parse an engine like "name;depth=5;time=100"
+		 * @param spec engine configuration
+		 * @return engine
+		 * @throws IOException if a book or tablebase can't be read
+		 */
+		public static Engine parse(String spec) throws IOException {
+			String[] parts = spec.split(";");
+			Engine engine = new Engine(parts[0].trim());
+			for (int i = 1; i < parts.length; i++) {
+				int split = parts[i].indexOf('=');
+				if (split < 0) {
+					throw new IllegalArgumentException("Option has to be name=value: " + parts[i]);
+				}
+				String key = parts[i].substring(0, split).trim();
+				String value = parts[i].substring(split + 1).trim();
+				switch (key) {
+				case "depth":
+					engine.depth = Integer.parseInt(value);
+					break;
+				case "level":
+					// Same depth as a bot of the difficulty
+					engine.depth = 2 * Integer.parseInt(value) - 1;
+					break;
+				case "time":
+					engine.time = Long.parseLong(value);
+					break;
+				case "hash":
+					engine.hash = Integer.parseInt(value);
+					break;
+				case "weights":
+					Evaluation.parse(value);
+					engine.weights = value;
+					break;
+				case "book":
+					engine.book = (OpeningBook) open(value, true);
+					break;
+				case "tablebase":
+					engine.tablebase = (Tablebase) open(value, false);
+					break;
+				default:
+					throw new IllegalArgumentException("Unknown engine option " + key);
+				}
+			}
+			return engine;
+		}
+
+		/**
+		 * @param path file of a book or directory of a tablebase
+		 * @param book if it's a book
+		 * @return opened book or tablebase
+		 * @throws IOException if it can't be read
+		 */
+		private static synchronized Object open(String path, boolean book) throws IOException {
+			Object opened = FILES.get(path);
+			if (opened == null) {
+				opened = book ? OpeningBook.open(new File(path)) : Tablebase.open(new File(path));
+				FILES.put(path, opened);
+			}
+			return opened;
+		}
+
+		/**
+		 * @param seed seed to choose steps of the book
+		 * @return agent for one game
+		 */
+		public Agent create(long seed) {
+			SearchAgent agent = new SearchAgent(depth, time, hash);
+			if (weights != null) {
+				agent.setEvaluation(Evaluation.parse(weights));
+			}
+			if (book != null) {
+				agent.setBook(book, seed);
+			}
+			agent.setTablebase(tablebase);
+			return agent;
+		}
+	}
+
+	/**
+	 * @param args command line arguments
+	 * @throws IOException if a book or tablebase can't be read
+	 */
+	public static void main(String[] args) throws IOException {
+		Tournament tournament = new Tournament();
+		boolean gauntlet = false;
+		int rounds = 10;
+		int random = 2;
+		int pattern = 0;
+		Variant variant = Variant.STANDARD;
+		int threads = Runtime.getRuntime().availableProcessors();
+		long seed = 0;
+		for (int i = 0; i < args.length; i++) {
+			switch (args[i]) {
+			case "-engine":
+				tournament.add(Engine.parse(args[++i]));
+				break;
+			case "-gauntlet":
+				gauntlet = true;
+				break;
+			case "-games":
+				rounds = Integer.parseInt(args[++i]);
+				break;
+			case "-random":
+				random = Integer.parseInt(args[++i]);
+				break;
+			case "-pattern":
+				pattern = Integer.parseInt(args[++i]);
+				break;
+			case "-variant":
+				variant = Variant.parse(args[++i]);
+				break;
+			case "-threads":
+				threads = Integer.parseInt(args[++i]);
+				break;
+			case "-seed":
+				seed = Long.parseLong(args[++i]);
+				break;
+			default:
+				throw new IllegalArgumentException("Unknown option " + args[i]);
+			}
+		}
+		if (tournament.engines.size() < 2) {
+			System.out.println("Usage: Tournament -engine name;option=value... -engine ... [-gauntlet] [-games n]"
+					+ " [-random n] [-pattern n] [-variant name] [-threads n] [-seed n]");
+			return;
+		}
+
+		long start = System.nanoTime();
+		long turns = tournament.play(gauntlet, rounds, random, pattern > 0 ? pattern : variant.getPattern(), variant,
+				threads, seed);
+		double seconds = (System.nanoTime() - start) / 1e9;
+
+		int played = 0;
+		for (int[] engine : tournament.results) {
+			played += engine[0] + engine[1] + engine[2];
+		}
+		played /= 2;
+		tournament.print();
+		System.out.printf("%d games, %d turns in %.1f s, %.2f games/s%n", played, turns, seconds, played / seconds);
+	}
+}
@@ -0,0 +1,196 @@
+package logic;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Fixed size hash table for searched positions, stored outside of the java heap.
+ *
+ * Every bucket holds two entries of 16 bytes: the first one is only replaced by
+ * deeper or newer results, the second one is always replaced. An entry stores
+ * the key xor the data, so entries torn by concurrent writes are never used.
+ */
+public class TranspositionTable {
+
+	/**
+	 * Bound types of a stored score
+	 */
+	public static final int EXACT = 0;
+	public static final int LOWER = 1;
+	public static final int UPPER = 2;
+
+	/**
+	 * Bytes per entry and bucket
+	 */
+	static final int ENTRY = 16;
+	static final int BUCKET = 2 * ENTRY;
+	/**
+	 * Bytes per direct buffer (buffers can't be larger than 2 GB)
+	 */
+	static final int CHUNK_BITS = 30;
+
+	/**
+	 * Memory of the table
+	 */
+	private final ByteBuffer[] chunks;
+	/**
+	 * Mask for the bucket index
+	 */
+	private final long mask;
+	/**
+	 * Age of the current search, older entries get replaced first
+	 */
+	private int age = 0;
+
+	/**
+	 * @param megabytes size of the table in MB (rounded down to a power of two)
+	 */
+	public TranspositionTable(int megabytes) {
+		long bytes = Long.highestOneBit(Math.max(1, megabytes) * 1024L * 1024L);
+		long buckets = bytes / BUCKET;
+		mask = buckets - 1;
+
+		int chunkSize = (int) Math.min(bytes, 1L << CHUNK_BITS);
+		chunks = new ByteBuffer[(int) (bytes / chunkSize)];
+		for (int i = 0; i < chunks.length; i++) {
+			chunks[i] = ByteBuffer.allocateDirect(chunkSize).order(ByteOrder.nativeOrder());
+		}
+	}
+
+	/**
+	 * @return size of the table in bytes
+	 */
+	public long getSize() {
+		return (mask + 1) * BUCKET;
+	}
+
+	/**
+	 * Start a new search, entries of older searches get replaced first
+	 */
+	public void newSearch() {
+		age = (age + 1) & 0x3F;
+	}
+
+	/**
+	 * Remove all entries
+	 */
+	public void clear() {
+		for (ByteBuffer chunk : chunks) {
+			for (int i = 0; i < chunk.capacity(); i += 8) {
+				chunk.putLong(i, 0);
+			}
+		}
+	}
+
+	/**
+	 * @param hash hash of the position
+	 * @return stored data or 0 if the position isn't stored
+	 */
+	public long probe(long hash) {
+		long offset = (hash & mask) * BUCKET;
+		for (int i = 0; i < 2; i++) {
+			long data = getLong(offset + i * ENTRY + 8);
+			if ((getLong(offset + i * ENTRY) ^ data) == hash && data != 0) {
+				return data;
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * @param hash hash of the position
+	 * @param step best step (packed)
+	 * @param depth searched depth
+	 * @param bound bound type of the score
+	 * @param score score of the position
+	 */
+	public void store(long hash, int step, int depth, int bound, int score) {
+		long data = pack(step, depth, bound, score);
+		long offset = (hash & mask) * BUCKET;
+
+		// Replace the first entry if its the same position, older or less deep
+		long first = getLong(offset + 8);
+		boolean same = (getLong(offset) ^ first) == hash;
+		if (first == 0 || same || age(first) != age || depth(first) <= depth) {
+			// Keep the best step of the same position if there is no new one
+			if (same && step == 0) {
+				data |= step(first);
+			}
+			putLong(offset, hash ^ data);
+			putLong(offset + 8, data);
+		} else {
+			putLong(offset + ENTRY, hash ^ data);
+			putLong(offset + ENTRY + 8, data);
+		}
+	}
+
+	/**
+	 * Pack the data of an entry: step (25 bits), depth (8 bits), bound (2 bits),
+	 * age (6 bits), score (23 bits)
+	 * @param step best step (packed)
+	 * @param depth searched depth
+	 * @param bound bound type of the score
+	 * @param score score of the position
+	 * @return packed data
+	 */
+	private long pack(int step, int depth, int bound, int score) {
+		return (step & 0x1FFFFFFL) | (long) Math.max(0, Math.min(255, depth)) << 25 | (long) bound << 33
+				| (long) age << 35 | (long) score << 41;
+	}
+
+	/**
+	 * @param data stored data
+	 * @return best step (packed)
+	 */
+	public static int step(long data) {
+		return (int) (data & 0x1FFFFFF);
+	}
+
+	/**
+	 * @param data stored data
+	 * @return searched depth
+	 */
+	public static int depth(long data) {
+		return (int) (data >>> 25 & 0xFF);
+	}
+
+	/**
+	 * @param data stored data
+	 * @return bound type of the score
+	 */
+	public static int bound(long data) {
+		return (int) (data >>> 33 & 0x3);
+	}
+
+	/**
+	 * @param data stored data
+	 * @return score of the position
+	 */
+	public static int score(long data) {
+		return (int) (data >> 41);
+	}
+
+	/**
+	 * @param data stored data
+	 * @return age of the entry
+	 */
+	private static int age(long data) {
+		return (int) (data >>> 35 & 0x3F);
+	}
+
+	/**
+	 * @param offset byte offset in the table
+	 * @return long stored at the offset
+	 */
+	private long getLong(long offset) {
+		return chunks[(int) (offset >>> CHUNK_BITS)].getLong((int) (offset & ((1 << CHUNK_BITS) - 1)));
+	}
+
+	/**
+	 * @param offset byte offset in the table
+	 * @param value long to store at the offset
+	 */
+	private void putLong(long offset, long value) {
+		chunks[(int) (offset >>> CHUNK_BITS)].putLong((int) (offset & ((1 << CHUNK_BITS) - 1)), value);
+	}
+}
@@ -0,0 +1,74 @@
+package logic;
+
+/**
+ * Rule sets the game can be played with.
+ *
+ * The standard rules are the original rules of this game: regular stones only
+ * move and kill forward, queens fly but land directly behind the killed
+ * stone, every kill is allowed and killed stones are removed immediately.
+ * In all other variants killed stones stay on the board until the kill chain
+ * is complete, so they can't be jumped twice and block the way (their steps
+ * are generated by a {@link CaptureTree}).
+ */
+public enum Variant {
+	STANDARD(8, false, true, false, false, false),
+	RUSSIAN(8, true, true, false, true, false),
+	BRAZILIAN(8, true, true, true, false, false),
+	INTERNATIONAL(10, true, true, true, false, false),
+	POOL(8, true, true, false, false, false),
+	ITALIAN(8, false, false, true, false, true);
+
+	/**
+	 * Board pattern the variant is played on
+	 */
+	final int pattern;
+	/**
+	 * If regular stones kill backwards too
+	 */
+	final boolean backward;
+	/**
+	 * If queens move and kill over any distance and may land on any empty
+	 * field behind the killed stone
+	 */
+	final boolean flying;
+	/**
+	 * If the turn has to kill the most stones possible
+	 */
+	final boolean majority;
+	/**
+	 * If a regular stone reaching the last row in a kill chain becomes a queen
+	 * immediately and continues as queen (otherwise only if the chain ends there)
+	 */
+	final boolean promoteInChain;
+	/**
+	 * Italian rules: regular stones can't kill queens and between turns killing
+	 * the same amount, a queen has to kill, then the most queens have to be
+	 * killed, then the queen killed first
+	 */
+	final boolean italian;
+
+	Variant(int pattern, boolean backward, boolean flying, boolean majority, boolean promoteInChain,
+			boolean italian) {
+		this.pattern = pattern;
+		this.backward = backward;
+		this.flying = flying;
+		this.majority = majority;
+		this.promoteInChain = promoteInChain;
+		this.italian = italian;
+	}
+
+	/**
+	 * @return board pattern the variant is played on
+	 */
+	public int getPattern() {
+		return pattern;
+	}
+
+	/**
+	 * @param name name of the variant, case is ignored
+	 * @return variant
+	 */
+	public static Variant parse(String name) {
+		return valueOf(name.trim().toUpperCase());
+	}
+}
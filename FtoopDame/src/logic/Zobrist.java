@@ -0,0 +1,73 @@
+package logic;
+
+import java.util.Random;
+
+/**
+ * Random keys to hash game states (Zobrist hashing).
+ * The hash of a state is updated with every stone placed or removed.
+ */
+public class Zobrist {
+
+	/**
+	 * Most squares supported (16x16 board)
+	 */
+	static final int MAX_SQUARES = 128;
+
+	/**
+	 * Key for every stone on every square
+	 */
+	private static final long[][] pieces = new long[MAX_SQUARES][5];
+	/**
+	 * Key for the stone that has to continue a kill chain
+	 */
+	private static final long[] moved = new long[MAX_SQUARES];
+	/**
+	 * Key for a stone killed in the running kill chain (rule variants)
+	 */
+	private static final long[] killed = new long[MAX_SQUARES];
+	/**
+	 * Key added if white is playing
+	 */
+	static final long WHITE;
+
+	static {
+		// Fixed seed, so hashes are the same in every run (opening book, archives)
+		Random random = new Random(0x44616d65L);
+		for (int square = 0; square < MAX_SQUARES; square++) {
+			for (int piece = 1; piece < 5; piece++) {
+				pieces[square][piece] = random.nextLong();
+			}
+			moved[square] = random.nextLong();
+		}
+		WHITE = random.nextLong();
+		// Drawn last, so the other keys stay the same
+		for (int square = 0; square < MAX_SQUARES; square++) {
+			killed[square] = random.nextLong();
+		}
+	}
+
+	/**
+	 * @param square square index
+	 * @param piece value of the stone
+	 * @return key of the stone on the square
+	 */
+	static long piece(int square, byte piece) {
+		return pieces[square][piece];
+	}
+
+	/**
+	 * @param square square of the stone that has to continue killing
+	 * @return key of the kill chain
+	 */
+	static long moved(int square) {
+		return moved[square];
+	}
+
+	/**
+	 * @param square square of a stone killed in the running kill chain
+	 * @return key of the killed stone
+	 */
+	static long killed(int square) {
+		return killed[square];
+	}
+}
@@ -4,7 +4,6 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.Random;
-import java.util.stream.Collectors;
 
 import gui.Board;
 import gui.Field;
@@ -19,7 +18,11 @@ import javafx.scene.shape.MoveTo;
 import javafx.scene.shape.Path;
 import javafx.util.Duration;
 import logic.Bot;
+import logic.GameState;
+import logic.LegalMoves;
 import logic.Move;
+import logic.MoveList;
+import logic.Step;
 
 /**
  * Player of the game
@@ -46,14 +49,14 @@ public class Player {
 	 */
 	private List<Stone> stones = new ArrayList<>();
 
-	/**
-	 * Last moved stone
-	 */
-	private Stone movedStone = null;
 	/**
 	 * All avaiable moves
 	 */
 	private List<Move> moves = new ArrayList<>();
+	/**
+	 * Allowed steps on the game state, generated once per position
+	 */
+	private LegalMoves legalMoves = new LegalMoves();
 	/**
 	 * The board the player belongs to
 	 */
@@ -103,6 +106,13 @@ public class Player {
 		return this.color;
 	}
 
+	/**
+	 * @return color index of the player in the game state
+	 */
+	public int getIndex() {
+		return color == Theme.BLACK ? GameState.BLACK : GameState.WHITE;
+	}
+
 	/**
 	 * @return
 	 */
@@ -199,25 +209,18 @@ public class Player {
 		});
 	}
 
-	/**
-	 * @param stone that has been moved
-	 */
-	public void setMovedStone(Stone stone) {
-		this.movedStone = stone;
-	}
-
 	/**
 	 * Show a random hint for this player
 	 */
 	public void showRandomHint() {
-		List<Move> moves = getMoves();
+		MoveList steps = getMoveList();
 
 		Random rand = new Random();
-		Move move = moves.get(rand.nextInt(moves.size()));
+		int step = steps.get(rand.nextInt(steps.size()));
 
 		hintsShowing = 1;
 
-		showHint(move, 0);
+		showHint(step, 0);
 	}
 
 	/**
@@ -225,25 +228,30 @@ public class Player {
 	 */
 	public void showAllHints() {
 
-		List<Move> moves = getMoves();
-		hintsShowing = moves.size();
+		MoveList steps = getMoveList();
+		hintsShowing = steps.size();
 
-		for (int i = 0; i < moves.size(); i++) {
-			Move move = moves.get(i);
+		for (int i = 0; i < steps.size(); i++) {
+			int step = steps.get(i);
 			int delay = i * 1000;
 
-			showHint(move, delay);
+			showHint(step, delay);
 		}
 	}
 
 	/**
-	 * @param move that should be shown
+	 * @param step packed step that should be shown
 	 * @param delay 
 	 */
-	public void showHint(Move move, int delay) {
+	public void showHint(int step, int delay) {
 
-		Stone stone = move.getStone();
-		Field field = move.getField();
+		GameState state = board.getState();
+		Field[][] fields = board.getFields();
+		int from = Step.from(step);
+		int to = Step.to(step);
+
+		Stone stone = fields[state.getY(from)][state.getX(from)].getStone();
+		Field field = fields[state.getY(to)][state.getX(to)];
 
 		stone.getLayoutX();
 		stone.toFront();
@@ -278,30 +286,35 @@ public class Player {
 	 * @return
 	 */
 	public List<Move> getMoves() {
-		moves.clear();
-		// If a stone is already moved, only this stone can be played again
-		if (movedStone != null) {
-			// select only kill moves
-			moves = movedStone.getMoves().stream().filter(move -> move.getType() == Move.Type.KILL)
-					.collect(Collectors.toList());
-		} else {
-			List<Move> allMoves = new ArrayList<>();
-			for (Stone stone : stones) {
-				allMoves.addAll(stone.getMoves());
-			}
+		MoveList steps = getMoveList();
 
-			// Check if any kill moves are avaiable
-			List<Move> killMoves = allMoves.parallelStream().filter(move -> move.getType() == Move.Type.KILL)
-					.collect(Collectors.toList());
-
-			// let player only make kill moves
-			moves = killMoves.size() > 0 ? killMoves : allMoves;
+		moves = new ArrayList<>(steps.size());
+		for (int i = 0; i < steps.size(); i++) {
+			moves.add(new Move(this, new Step(steps.get(i))));
 		}
 
-		// playable = stones;
 		return moves;
 	}
 
+	/**
+	 * Allowed steps without creating moves, they are only generated again
+	 * after the game state changed
+	 * @return packed steps, only valid until the game state changes
+	 */
+	public MoveList getMoveList() {
+		// Allowed steps on the game state (kill moves and kill chains are already handled there)
+		return legalMoves.get(board.getState(), getIndex());
+	}
+
+	/**
+	 * @param from start square
+	 * @param to destination square
+	 * @return if the player is allowed to move from the start to the destination square
+	 */
+	public boolean isAllowed(int from, int to) {
+		return legalMoves.contains(board.getState(), getIndex(), from, to);
+	}
+
 	/**
 	 * @return
 	 */